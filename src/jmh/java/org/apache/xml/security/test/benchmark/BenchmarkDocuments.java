@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.benchmark;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Generates the documents the benchmarks operate on. The number of elements is the
+ * parameterised size, the shape determines how they are arranged.
+ */
+public final class BenchmarkDocuments {
+
+    public static final String NS = "urn:example:benchmark";
+
+    /** many sibling elements with attributes and text */
+    public static final String FLAT = "flat";
+    /** elements nested in each other */
+    public static final String DEEP = "deep";
+    /** sibling elements with their own namespace declarations and qualified attributes */
+    public static final String NAMESPACES = "namespaces";
+
+    private static final int MAX_DEPTH = 256;
+
+    private BenchmarkDocuments() {
+    }
+
+    public static Document create(String shape, int size) throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(NS, "bench:root");
+        root.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:bench", NS);
+        root.setAttributeNS(null, "Id", "root");
+        root.setIdAttributeNS(null, "Id", true);
+        doc.appendChild(root);
+
+        Element parent = root;
+        for (int i = 0; i < size; i++) {
+            Element element;
+            if (NAMESPACES.equals(shape)) {
+                String ns = "urn:example:ns" + (i % 16);
+                element = doc.createElementNS(ns, "p" + (i % 16) + ":item");
+                element.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:p" + (i % 16), ns);
+                element.setAttributeNS(ns, "p" + (i % 16) + ":b", "value" + i);
+                element.setAttributeNS(null, "a", Integer.toString(i));
+            } else {
+                element = doc.createElementNS(NS, "bench:item");
+                element.setAttributeNS(null, "b", "value" + i);
+                element.setAttributeNS(null, "a", Integer.toString(i));
+            }
+            element.appendChild(doc.createTextNode("Lorem ipsum dolor sit amet & <" + i + ">"));
+            parent.appendChild(element);
+            if (DEEP.equals(shape)) {
+                // restart at the root to keep the recursion of the DOM implementations bounded
+                parent = (i + 1) % MAX_DEPTH == 0 ? root : element;
+            }
+        }
+        return doc;
+    }
+
+    public static byte[] serialize(Document doc) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLUtils.outputDOM(doc, baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Canonicalizes a DOM subtree and the serialized document with each canonicalization algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CanonicalizationBenchmark {
+
+    @Param({
+        Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N_WITH_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N_PHYSICAL
+    })
+    public String algorithm;
+
+    @Param({BenchmarkDocuments.FLAT, BenchmarkDocuments.DEEP, BenchmarkDocuments.NAMESPACES})
+    public String shape;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private Document document;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws Exception {
+        Init.init();
+        document = BenchmarkDocuments.create(shape, size);
+        serialized = BenchmarkDocuments.serialize(document);
+    }
+
+    @Benchmark
+    public byte[] canonicalizeSubtree() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(serialized.length);
+        Canonicalizer.getInstance(algorithm).canonicalizeSubtree(document, baos);
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] canonicalizeBytes() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(serialized.length);
+        Canonicalizer.getInstance(algorithm).canonicalize(serialized, baos, false);
+        return baos.toByteArray();
+    }
+}
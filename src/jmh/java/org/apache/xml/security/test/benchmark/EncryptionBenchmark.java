@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.encryption.EncryptedData;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Encrypts and decrypts an element, element content or binary data with the DOM API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionBenchmark {
+
+    @Param({"element", "content", "binary"})
+    public String mode;
+
+    @Param({XMLCipher.AES_128_GCM, XMLCipher.AES_128})
+    public String algorithm;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private SecretKey key;
+    private Document document;
+    private byte[] binary;
+    private Document encryptedDocument;
+
+    @Setup
+    public void setUp() throws Exception {
+        Init.init();
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        key = keygen.generateKey();
+
+        document = BenchmarkDocuments.create(BenchmarkDocuments.FLAT, size);
+        binary = new byte[BenchmarkDocuments.serialize(document).length];
+        new SecureRandom().nextBytes(binary);
+        encryptedDocument = encrypt();
+    }
+
+    @Benchmark
+    public Document encrypt() throws Exception {
+        XMLCipher cipher = XMLCipher.getInstance(algorithm);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        Document doc = (Document) document.cloneNode(true);
+        if ("binary".equals(mode)) {
+            EncryptedData encryptedData =
+                cipher.encryptData(doc, null, new ByteArrayInputStream(binary));
+            doc.replaceChild(cipher.martial(doc, encryptedData), doc.getDocumentElement());
+            return doc;
+        }
+        return cipher.doFinal(doc, doc.getDocumentElement(), "content".equals(mode));
+    }
+
+    @Benchmark
+    public Object decrypt() throws Exception {
+        XMLCipher cipher = XMLCipher.getInstance(algorithm);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        Document doc = (Document) encryptedDocument.cloneNode(true);
+        Element encryptedData = (Element) doc.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+        if ("binary".equals(mode)) {
+            return cipher.decryptToByteArray(encryptedData);
+        }
+        return cipher.doFinal(doc, encryptedData);
+    }
+}
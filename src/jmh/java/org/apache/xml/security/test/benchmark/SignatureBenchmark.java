@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Creates and verifies an enveloped signature over the whole document with the DOM API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    @Param({
+        XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256,
+        XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256,
+        XMLSignature.ALGO_ID_MAC_HMAC_SHA256
+    })
+    public String algorithm;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private Key signingKey;
+    private Key verificationKey;
+    private Document document;
+    private Document signedDocument;
+
+    @Setup
+    public void setUp() throws Exception {
+        Init.init();
+        if (XMLSignature.ALGO_ID_MAC_HMAC_SHA256.equals(algorithm)) {
+            signingKey = new SecretKeySpec("benchmark-secret-benchmark-secret".getBytes(StandardCharsets.US_ASCII),
+                                           "HmacSHA256");
+            verificationKey = signingKey;
+        } else {
+            KeyPairGenerator kpg;
+            if (XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256.equals(algorithm)) {
+                kpg = KeyPairGenerator.getInstance("EC");
+                kpg.initialize(256);
+            } else {
+                kpg = KeyPairGenerator.getInstance("RSA");
+                kpg.initialize(2048);
+            }
+            KeyPair keyPair = kpg.generateKeyPair();
+            signingKey = keyPair.getPrivate();
+            verificationKey = keyPair.getPublic();
+        }
+        document = BenchmarkDocuments.create(BenchmarkDocuments.FLAT, size);
+        signedDocument = (Document) document.cloneNode(true);
+        sign(signedDocument);
+    }
+
+    @Benchmark
+    public Element sign() throws Exception {
+        return sign((Document) document.cloneNode(true));
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        Element sigElement = (Element) signedDocument.getElementsByTagNameNS(
+            Constants.SignatureSpecNS, Constants._TAG_SIGNATURE).item(0);
+        XMLSignature signature = new XMLSignature(sigElement, "");
+        if (!signature.checkSignatureValue(verificationKey)) {
+            throw new IllegalStateException("Signature verification failed");
+        }
+        return true;
+    }
+
+    private Element sign(Document doc) throws Exception {
+        XMLSignature sig = new XMLSignature(doc, "", algorithm);
+        doc.getDocumentElement().appendChild(sig.getElement());
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        sig.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        sig.sign(signingKey);
+        return sig.getElement();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.OutboundXMLSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.test.stax.utils.XmlReaderToWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signs / encrypts a document with OutboundXMLSec and verifies / decrypts it with InboundXMLSec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingBenchmark {
+
+    private static final QName ROOT = new QName(BenchmarkDocuments.NS, "root");
+
+    @Param({"signature", "encryption"})
+    public String action;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private XMLInputFactory xmlInputFactory;
+    private OutboundXMLSec outboundXMLSec;
+    private InboundXMLSec inboundXMLSec;
+    private byte[] document;
+    private byte[] securedDocument;
+
+    @Setup
+    public void setUp() throws Exception {
+        Init.init();
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        XMLSecurityProperties outboundProperties = new XMLSecurityProperties();
+        XMLSecurityProperties inboundProperties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        if ("signature".equals(action)) {
+            KeyStore keyStore = KeyStore.getInstance("jks");
+            keyStore.load(
+                this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+                "default".toCharArray()
+            );
+            Key key = keyStore.getKey("transmitter", "default".toCharArray());
+            X509Certificate cert = (X509Certificate) keyStore.getCertificate("transmitter");
+
+            actions.add(XMLSecurityConstants.SIGNATURE);
+            outboundProperties.setSignatureKeyIdentifier(SecurityTokenConstants.KeyIdentifier_X509KeyIdentifier);
+            outboundProperties.setSignatureKey(key);
+            outboundProperties.setSignatureCerts(new X509Certificate[]{cert});
+            outboundProperties.setSignatureAlgorithm("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256");
+            outboundProperties.addSignaturePart(new SecurePart(
+                ROOT, SecurePart.Modifier.Element,
+                new String[]{
+                    "http://www.w3.org/2000/09/xmldsig#enveloped-signature",
+                    "http://www.w3.org/2001/10/xml-exc-c14n#"
+                },
+                "http://www.w3.org/2001/04/xmlenc#sha256"
+            ));
+            inboundProperties.setSignatureVerificationKey(cert.getPublicKey());
+        } else {
+            KeyGenerator keygen = KeyGenerator.getInstance("AES");
+            keygen.init(128);
+            Key key = keygen.generateKey();
+
+            actions.add(XMLSecurityConstants.ENCRYPTION);
+            outboundProperties.setEncryptionKey(key);
+            outboundProperties.setEncryptionSymAlgorithm("http://www.w3.org/2009/xmlenc11#aes128-gcm");
+            outboundProperties.addEncryptionPart(new SecurePart(ROOT, SecurePart.Modifier.Content));
+            inboundProperties.setDecryptionKey(key);
+        }
+        outboundProperties.setActions(actions);
+        outboundXMLSec = XMLSec.getOutboundXMLSec(outboundProperties);
+        inboundXMLSec = XMLSec.getInboundWSSec(inboundProperties);
+
+        document = BenchmarkDocuments.serialize(BenchmarkDocuments.create(BenchmarkDocuments.FLAT, size));
+        securedDocument = outbound();
+    }
+
+    @Benchmark
+    public byte[] outbound() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(document.length * 2);
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(document));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public int inbound() throws Exception {
+        XMLStreamReader xmlStreamReader =
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(securedDocument));
+        XMLStreamReader securityStreamReader = inboundXMLSec.processInMessage(xmlStreamReader);
+        int events = 0;
+        while (securityStreamReader.hasNext()) {
+            securityStreamReader.next();
+            events++;
+        }
+        securityStreamReader.close();
+        xmlStreamReader.close();
+        return events;
+    }
+}
@@ -22,27 +22,44 @@
 package org.apache.jcp.xml.dsig.internal;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 
+import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 
 /**
  * This class has been modified slightly to use java.security.MessageDigest
  * objects as input, rather than
  * org.apache.xml.security.algorithms.MessageDigestAlgorithm objects.
- * It also optionally caches the input bytes.
+ * It also optionally caches the input bytes. Once the cached bytes exceed
+ * a threshold they are moved to a temporary file. The file is deleted when the
+ * stream is closed, unless the cache is retained with {@link #retainCache()}.
+ * A retained file is deleted when a stream opened by
+ * {@link CachedInput#openStream()} is read to the end or closed, or when the
+ * CachedInput is closed by its owner.
  *
  */
-public class DigesterOutputStream extends OutputStream {
+public class DigesterOutputStream extends OutputStream implements WritableByteChannel {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(DigesterOutputStream.class);
 
     private final boolean buffer;
+    private final long spillThreshold;
+    private long cachedBytes;
     private UnsyncByteArrayOutputStream bos;
+    private Path spillFile;
+    private OutputStream spillStream;
+    private boolean retained;
     private final MessageDigest md;
+    private long digestedBytes;
 
     /**
      * Creates a DigesterOutputStream.
@@ -60,24 +77,48 @@ public class DigesterOutputStream extends OutputStream {
      * @param buffer if true, caches the input bytes
      */
     public DigesterOutputStream(MessageDigest md, boolean buffer) {
+        this(md, buffer, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a DigesterOutputStream.
+     *
+     * @param md the MessageDigest
+     * @param buffer if true, caches the input bytes
+     * @param spillThreshold the number of cached bytes above which the cache
+     *    is moved from memory to a temporary file
+     */
+    public DigesterOutputStream(MessageDigest md, boolean buffer, long spillThreshold) {
         this.md = md;
         this.buffer = buffer;
+        this.spillThreshold = spillThreshold;
         if (buffer) {
             bos = new UnsyncByteArrayOutputStream();
         }
     }
 
-    public void write(int input) {
+    public void write(int input) throws IOException {
         if (buffer) {
-            bos.write(input);
+            prepareCache(1);
+            if (spillStream != null) {
+                spillStream.write(input);
+            } else {
+                bos.write(input);
+            }
         }
+        digestedBytes++;
         md.update((byte)input);
     }
 
     @Override
-    public void write(byte[] input, int offset, int len) {
+    public void write(byte[] input, int offset, int len) throws IOException {
         if (buffer) {
-            bos.write(input, offset, len);
+            prepareCache(len);
+            if (spillStream != null) {
+                spillStream.write(input, offset, len);
+            } else {
+                bos.write(input, offset, len);
+            }
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Pre-digested input:");
@@ -87,9 +128,50 @@ public class DigesterOutputStream extends OutputStream {
             }
             LOG.debug(sb.toString());
         }
+        digestedBytes += len;
         md.update(input, offset, len);
     }
 
+    /**
+     * Digests the remaining bytes of the buffer, e.g. a direct buffer the octets of a file were read into.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int len = src.remaining();
+        if (buffer) {
+            prepareCache(len);
+            OutputStream cache = spillStream != null ? spillStream : bos;
+            ByteBuffer copy = src.duplicate();
+            byte[] chunk = new byte[Math.min(len, 8192)];
+            while (copy.hasRemaining()) {
+                int n = Math.min(chunk.length, copy.remaining());
+                copy.get(chunk, 0, n);
+                cache.write(chunk, 0, n);
+            }
+        }
+        digestedBytes += len;
+        md.update(src);
+        return len;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    private void prepareCache(int len) throws IOException {
+        cachedBytes += len;
+        if (spillStream == null && cachedBytes > spillThreshold) {
+            spillFile = Files.createTempFile("xmlsec-reference", ".tmp");
+            // only a fallback, the file is deleted when the cache is closed
+            spillFile.toFile().deleteOnExit();
+            LOG.debug("Moving cached pre-digested input to {}", spillFile);
+            spillStream = new UnsyncBufferedOutputStream(Files.newOutputStream(spillFile));
+            bos.writeTo(spillStream);
+            bos = null;
+        }
+    }
+
     /**
      * @return the digest value
      */
@@ -97,22 +179,152 @@ public class DigesterOutputStream extends OutputStream {
          return md.digest();
     }
 
+    /**
+     * @return the number of bytes digested so far
+     */
+    public long getByteCount() {
+        return digestedBytes;
+    }
+
     /**
      * @return an input stream containing the cached bytes, or
      *    null if not cached
+     * @throws IOException
      */
-    public InputStream getInputStream() {
-        if (buffer) {
-            return new ByteArrayInputStream(bos.toByteArray());
-        } else {
+    public InputStream getInputStream() throws IOException {
+        CachedInput cachedInput = retainCache();
+        return cachedInput != null ? cachedInput.openStream() : null;
+    }
+
+    /**
+     * Keeps the cached bytes after the stream is closed, without reading them.
+     *
+     * @return the cached bytes, or null if not cached
+     * @throws IOException
+     */
+    public CachedInput retainCache() throws IOException {
+        if (!buffer) {
             return null;
+        } else if (spillStream != null) {
+            spillStream.flush();
+            retained = true;
+            return new CachedInput(null, spillFile);
+        } else {
+            return new CachedInput(bos, null);
         }
     }
 
     @Override
     public void close() throws IOException {
-        if (buffer) {
+        if (spillStream != null) {
+            spillStream.close();
+            if (!retained) {
+                Files.deleteIfExists(spillFile);
+            }
+        } else if (buffer) {
             bos.close();
         }
     }
+
+    /**
+     * The cached bytes, in memory or in a temporary file. The owner closes it
+     * when the bytes are no longer needed, which deletes a temporary file.
+     */
+    public static final class CachedInput implements Closeable {
+        private final UnsyncByteArrayOutputStream bytes;
+        private final Path file;
+        private boolean closed;
+
+        CachedInput(UnsyncByteArrayOutputStream bytes, Path file) {
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        /**
+         * @return a stream of the cached bytes. A temporary file is only opened on the first
+         *    read, and it is deleted when the end of the file is reached or the stream is closed,
+         *    so the bytes of a file can only be read once.
+         * @throws IOException if the cached bytes were deleted already
+         */
+        public InputStream openStream() throws IOException {
+            if (file != null) {
+                if (closed) {
+                    throw new IOException("The cached bytes were deleted");
+                }
+                return new TempFileInputStream(this);
+            }
+            return new ByteArrayInputStream(bytes.toByteArray());
+        }
+
+        /**
+         * Deletes a temporary file.
+         */
+        @Override
+        public void close() throws IOException {
+            if (file != null && !closed) {
+                closed = true;
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Reads a temporary file, which is only opened on the first read and
+     * deleted when the end of the file is reached or the stream is closed.
+     */
+    private static final class TempFileInputStream extends InputStream {
+        private final CachedInput cachedInput;
+        private InputStream in;
+        private boolean closed;
+
+        TempFileInputStream(CachedInput cachedInput) {
+            this.cachedInput = cachedInput;
+        }
+
+        private InputStream getIn() throws IOException {
+            if (in == null) {
+                in = Files.newInputStream(cachedInput.file);
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (closed) {
+                return -1;
+            }
+            int read = getIn().read();
+            if (read == -1) {
+                close();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                return -1;
+            }
+            int read = getIn().read(b, off, len);
+            if (read == -1) {
+                close();
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } finally {
+                cachedInput.close();
+            }
+        }
+    }
 }
@@ -140,6 +140,9 @@ public abstract class ApacheCanonicalizer extends TransformService {
                     canonicalizer.canonicalize(Utils.readBytesFromStream(in.getOctetStream()), writer, secVal);
                     return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
                 }
+            } else if (data instanceof DOMSubTreeData
+                && ((DOMSubTreeData)data).getExcludeNode() != null) {
+                nodeSet = ((DOMSubTreeData)data).getNodeSet();
             } else if (data instanceof DOMSubTreeData) {
                 DOMSubTreeData subTree = (DOMSubTreeData)data;
                 if (inclusiveNamespaces != null) {
@@ -149,6 +152,8 @@ public abstract class ApacheCanonicalizer extends TransformService {
                     canonicalizer.canonicalizeSubtree(subTree.getRoot(), writer);
                     return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
                 }
+            } else if (data instanceof XPathNodeSetData) {
+                nodeSet = ((XPathNodeSetData)data).getNodeSet();
             } else if (data instanceof NodeSetData) {
                 NodeSetData nsd = (NodeSetData)data;
                 // convert Iterator to Set
@@ -212,16 +217,7 @@ public abstract class ApacheCanonicalizer extends TransformService {
             in = ((ApacheData)data).getXMLSignatureInput();
         } else if (data instanceof NodeSetData) {
             LOG.debug("isNodeSet() = true");
-            if (data instanceof DOMSubTreeData) {
-                DOMSubTreeData subTree = (DOMSubTreeData)data;
-                in = new XMLSignatureInput(subTree.getRoot());
-                in.setExcludeComments(subTree.excludeComments());
-            } else {
-                @SuppressWarnings("unchecked")
-                Set<Node> nodeSet =
-                    Utils.toNodeSet(((NodeSetData)data).iterator());
-                in = new XMLSignatureInput(nodeSet);
-            }
+            in = Utils.toXMLSignatureInput((NodeSetData)data);
         } else {
             LOG.debug("isNodeSet() = false");
             try {
@@ -24,11 +24,9 @@ package org.apache.jcp.xml.dsig.internal.dom;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.spec.AlgorithmParameterSpec;
-import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.Transform;
 import org.apache.xml.security.transforms.Transforms;
@@ -152,17 +150,7 @@ public abstract class ApacheTransform extends TransformService {
             in = ((ApacheData)data).getXMLSignatureInput();
         } else if (data instanceof NodeSetData) {
             LOG.debug("isNodeSet() = true");
-            if (data instanceof DOMSubTreeData) {
-                LOG.debug("DOMSubTreeData = true");
-                DOMSubTreeData subTree = (DOMSubTreeData)data;
-                in = new XMLSignatureInput(subTree.getRoot());
-                in.setExcludeComments(subTree.excludeComments());
-            } else {
-                @SuppressWarnings("unchecked")
-                Set<Node> nodeSet =
-                    Utils.toNodeSet(((NodeSetData)data).iterator());
-                in = new XMLSignatureInput(nodeSet);
-            }
+            in = Utils.toXMLSignatureInput((NodeSetData)data);
         } else {
             LOG.debug("isNodeSet() = false");
             try {
@@ -48,7 +48,11 @@ import org.apache.xml.security.utils.XMLUtils;
 
 import org.apache.jcp.xml.dsig.internal.DigesterOutputStream;
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.signature.ReferenceDigestCache;
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 
 /**
@@ -77,6 +81,8 @@ public final class DOMReference extends DOMStructure
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(DOMReference.class);
 
+    private static final long DEFAULT_CACHE_SPILL_THRESHOLD = 1024L * 1024L;
+
     private final DigestMethod digestMethod;
     private final String id;
     private final List<Transform> transforms;
@@ -93,6 +99,7 @@ public final class DOMReference extends DOMStructure
     private boolean validationStatus;
     private Data derefData;
     private InputStream dis;
+    private DigesterOutputStream.CachedInput cachedInput;
     private MessageDigest md;
     private Provider provider;
 
@@ -377,7 +384,21 @@ public final class DOMReference extends DOMStructure
             return validationStatus;
         }
         Data data = dereference(validateContext);
-        calcDigestValue = transform(data, validateContext);
+
+        ReferenceDigestCache digestCache = getReferenceDigestCache(validateContext);
+        Object digestCacheKey = null;
+        if (digestCache != null) {
+            digestCacheKey = createDigestCacheKey(digestCache, data);
+            calcDigestValue = digestCacheKey == null ? null : digestCache.get(digestCacheKey);
+        }
+        if (calcDigestValue == null) {
+            calcDigestValue = transform(data, validateContext);
+            if (digestCacheKey != null) {
+                digestCache.put(digestCacheKey, calcDigestValue);
+            }
+        } else {
+            LOG.debug("Using cached digest value for URI \"{}\"", uri);
+        }
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Expected digest: " + XMLUtils.encodeToString(digestValue));
@@ -389,14 +410,79 @@ public final class DOMReference extends DOMStructure
         return validationStatus;
     }
 
+    /**
+     * The digest cache is only used when set explicitly on the context, and not when the
+     * dereferenced data has to be cached for the caller.
+     */
+    private static ReferenceDigestCache getReferenceDigestCache(XMLValidateContext context) {
+        Object digestCache = context.getProperty("org.apache.jcp.xml.dsig.referenceDigestCache");
+        if (!(digestCache instanceof ReferenceDigestCache)) {
+            return null;
+        }
+        Boolean cache = (Boolean)
+            context.getProperty("javax.xml.crypto.dsig.cacheReference");
+        if (cache != null && cache) {
+            return null;
+        }
+        ReferenceDigestCache referenceDigestCache = (ReferenceDigestCache)digestCache;
+        return referenceDigestCache.isEnabled(Utils.secureValidation(context)) ? referenceDigestCache : null;
+    }
+
+    private Object createDigestCacheKey(ReferenceDigestCache digestCache, Data data)
+        throws XMLSignatureException
+    {
+        Element transformsElem = null;
+        if (refElem != null) {
+            transformsElem = XMLUtils.selectDsNode(refElem.getFirstChild(), "Transforms", 0);
+        }
+        String digestAlgorithm = digestMethod.getAlgorithm();
+        try {
+            if (data instanceof ApacheData) {
+                return digestCache.createKey(((ApacheData)data).getXMLSignatureInput(),
+                                             transformsElem, digestAlgorithm);
+            } else if (data instanceof DOMSubTreeData) {
+                DOMSubTreeData subTree = (DOMSubTreeData)data;
+                return digestCache.createKey(subTree.getRoot(), subTree.getExcludeNode(), subTree.excludeComments(),
+                                             transformsElem, digestAlgorithm);
+            }
+            return null;
+        } catch (XMLSecurityException ex) {
+            throw new XMLSignatureException(ex);
+        }
+    }
+
     public Data getDereferencedData() {
         return derefData;
     }
 
     public InputStream getDigestInputStream() {
+        // The stream is only created when it is requested, a temporary file is deleted
+        // when the stream is read or closed, or when the reference is digested again
+        if (dis == null && cachedInput != null) {
+            try {
+                dis = cachedInput.openStream();
+            } catch (IOException e) {
+                LOG.debug("Cannot read the cached digest input: {}", e.getMessage());
+            }
+        }
         return dis;
     }
 
+    /**
+     * Deletes the pre-digested input cached by the previous digest operation.
+     */
+    private void releaseDigestInput() {
+        if (cachedInput != null) {
+            try {
+                cachedInput.close();
+            } catch (IOException e) {
+                LOG.debug("Cannot delete the cached digest input: {}", e.getMessage());
+            }
+            cachedInput = null;
+        }
+        dis = null;
+    }
+
     private Data dereference(XMLCryptoContext context)
         throws XMLSignatureException
     {
@@ -408,7 +494,9 @@ public final class DOMReference extends DOMStructure
             deref = DOMURIDereferencer.INSTANCE;
         }
         try {
+            long start = InstrumentationSupport.start(Phase.DEREFERENCE);
             data = deref.dereference(this, context);
+            InstrumentationSupport.end(Phase.DEREFERENCE, getURI(), start, -1);
             LOG.debug("URIDereferencer class name: {}", deref.getClass().getName());
             LOG.debug("Data class name: {}", data.getClass().getName());
         } catch (URIReferenceException ure) {
@@ -431,16 +519,18 @@ public final class DOMReference extends DOMStructure
             }
         }
         md.reset();
+        releaseDigestInput();
         DigesterOutputStream dos;
         Boolean cache = (Boolean)
             context.getProperty("javax.xml.crypto.dsig.cacheReference");
         if (cache != null && cache) {
             this.derefData = copyDerefData(dereferencedData);
-            dos = new DigesterOutputStream(md, true);
+            dos = new DigesterOutputStream(md, true, getCacheSpillThreshold(context));
         } else {
             dos = new DigesterOutputStream(md);
         }
         Data data = dereferencedData;
+        long start = InstrumentationSupport.start(Phase.DIGEST);
         try (OutputStream os = new UnsyncBufferedOutputStream(dos)) {
             for (int i = 0, size = transforms.size(); i < size; i++) {
                 DOMTransform transform = (DOMTransform)transforms.get(i);
@@ -523,15 +613,21 @@ public final class DOMReference extends DOMStructure
                               (DOMCryptoContext)context);
                     allTransforms.add(t);
                     xi.updateOutputStream(os, true);
+                } else if (xi.isFile()) {
+                    // digest the file directly instead of copying it through the buffer
+                    os.flush();
+                    xi.updateOutputStream(dos);
                 } else {
                     xi.updateOutputStream(os);
                 }
             }
             os.flush();
             if (cache != null && cache) {
-                this.dis = dos.getInputStream();
+                this.cachedInput = dos.retainCache();
             }
-            return dos.getDigestValue();
+            byte[] digest = dos.getDigestValue();
+            InstrumentationSupport.end(Phase.DIGEST, digestMethod.getAlgorithm(), start, dos.getByteCount());
+            return digest;
         } catch (NoSuchAlgorithmException e) {
             throw new XMLSignatureException(e);
         } catch (TransformException e) {
@@ -553,6 +649,26 @@ public final class DOMReference extends DOMStructure
         }
     }
 
+    /**
+     * The pre-digested input cached for "javax.xml.crypto.dsig.cacheReference" is moved to a
+     * temporary file above this size, which can be configured with the
+     * "org.apache.jcp.xml.dsig.cacheReference.spillThreshold" property.
+     */
+    private static long getCacheSpillThreshold(XMLCryptoContext context) {
+        Object threshold = context.getProperty("org.apache.jcp.xml.dsig.cacheReference.spillThreshold");
+        if (threshold instanceof Number) {
+            return ((Number)threshold).longValue();
+        } else if (threshold instanceof String) {
+            try {
+                return Long.parseLong(((String)threshold).trim());
+            } catch (NumberFormatException ex) {
+                LOG.warn("Invalid value \"{}\" of org.apache.jcp.xml.dsig.cacheReference.spillThreshold, "
+                         + "using the default of {} bytes", threshold, DEFAULT_CACHE_SPILL_THRESHOLD);
+            }
+        }
+        return DEFAULT_CACHE_SPILL_THRESHOLD;
+    }
+
     public Node getHere() {
         return here;
     }
@@ -614,9 +730,28 @@ public final class DOMReference extends DOMStructure
             XMLSignatureInput xsi = ad.getXMLSignatureInput();
             if (xsi.isNodeSet()) {
                 try {
-                    final Set<Node> s = xsi.getNodeSet();
-                    return new NodeSetData() {
-                        public Iterator<Node> iterator() { return s.iterator(); }
+                    // hold the nodes in a list rather than in the (much larger) Set,
+                    // which isn't built at all if the input is defined by a subtree
+                    final List<Node> nodes;
+                    if (xsi.getInputNodeSet() == null && xsi.getSubNode() != null
+                        && xsi.getOctetStreamReal() == null) {
+                        List<Node> list = new ArrayList<>();
+                        XMLUtils.getNodes(xsi.getSubNode(), list, xsi.getExcludeNode(),
+                                          xsi.isExcludeComments());
+                        nodes = list;
+                    } else {
+                        nodes = Arrays.asList(xsi.getNodeSet().toArray(new Node[0]));
+                    }
+                    return new XPathNodeSetData() {
+                        private Set<Node> nodeSet;
+                        public Iterator<Node> iterator() { return nodes.iterator(); }
+                        public Set<Node> getNodeSet() {
+                            // built once, when a transform needs membership checks
+                            if (nodeSet == null) {
+                                nodeSet = Collections.unmodifiableSet(new LinkedHashSet<>(nodes));
+                            }
+                            return nodeSet;
+                        }
                     };
                 } catch (Exception e) {
                     // LOG a warning
@@ -625,7 +760,7 @@ public final class DOMReference extends DOMStructure
                 }
             } else if (xsi.isElement()) {
                 return new DOMSubTreeData
-                    (xsi.getSubNode(), xsi.isExcludeComments());
+                    (xsi.getSubNode(), xsi.getExcludeNode(), xsi.isExcludeComments());
             } else if (xsi.isOctetStream() || xsi.isByteArray()) {
                 try {
                     return new OctetStreamData
@@ -21,12 +21,11 @@
  */
 package org.apache.jcp.xml.dsig.internal.dom;
 
-import javax.xml.crypto.NodeSetData;
-import java.util.ArrayList;
+import java.util.AbstractSet;
 import java.util.Iterator;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import org.w3c.dom.Attr;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
@@ -35,141 +34,261 @@ import org.w3c.dom.Node;
  * same-document URI as the root of a subdocument. The main reason is
  * for efficiency and performance, as some transforms can operate
  * directly on the subdocument and there is no need to convert it
- * first to an XPath node-set.
+ * first to an XPath node-set. A subtree of the subdocument (e.g. an
+ * enveloped signature) may be excluded.
  */
-public class DOMSubTreeData implements NodeSetData {
+public class DOMSubTreeData implements XPathNodeSetData {
 
     private boolean excludeComments;
     private Node root;
+    private Node excludeNode;
+    private Set<Node> nodeSet;
 
     public DOMSubTreeData(Node root, boolean excludeComments) {
+        this(root, null, excludeComments);
+    }
+
+    public DOMSubTreeData(Node root, Node excludeNode, boolean excludeComments) {
         this.root = root;
+        this.excludeNode = excludeNode;
         this.excludeComments = excludeComments;
     }
 
     @Override
     public Iterator<Node> iterator() {
-        return new DelayedNodeIterator(root, excludeComments);
+        return new DelayedNodeIterator(root, excludeNode, excludeComments);
+    }
+
+    /**
+     * Returns a view of the nodes of {@link #iterator()}. Membership is
+     * decided from the ancestors of a node, so the nodes are not collected.
+     */
+    @Override
+    public Set<Node> getNodeSet() {
+        if (nodeSet == null) {
+            nodeSet = new NodeSetView();
+        }
+        return nodeSet;
     }
 
     public Node getRoot() {
         return root;
     }
 
+    /**
+     * @return the root of the excluded subtree, or null
+     */
+    public Node getExcludeNode() {
+        return excludeNode;
+    }
+
     public boolean excludeComments() {
         return excludeComments;
     }
 
     /**
-     * This is an Iterator that contains a backing node-set that is
-     * not populated until the caller first attempts to advance the iterator.
+     * @return whether the iterator returns the given node
+     */
+    private boolean includes(Node node) {
+        Node n = node;
+        switch (n.getNodeType()) {
+            case Node.ATTRIBUTE_NODE :
+                n = ((Attr)n).getOwnerElement();
+                if (n == null) {
+                    return false;
+                }
+                break;
+            case Node.ELEMENT_NODE :
+            case Node.PROCESSING_INSTRUCTION_NODE :
+                break;
+            case Node.COMMENT_NODE :
+                if (excludeComments) {
+                    return false;
+                }
+                break;
+            case Node.TEXT_NODE :
+            case Node.CDATA_SECTION_NODE :
+                // only the first node of contiguous text/cdata nodes
+                Node prevSibling = n.getPreviousSibling();
+                if (n != root && prevSibling != null &&
+                    (prevSibling.getNodeType() == Node.TEXT_NODE ||
+                     prevSibling.getNodeType() == Node.CDATA_SECTION_NODE)) {
+                    return false;
+                }
+                break;
+            default :
+                return false;
+        }
+        if (root == null || root == excludeNode) {
+            return false;
+        }
+        // the node must be reached from the root by descending into
+        // elements and documents, without entering the excluded subtree
+        Node current = n;
+        while (current != root) {
+            if (current == excludeNode) {
+                return false;
+            }
+            current = current.getParentNode();
+            if (current == null) {
+                return false;
+            }
+            int type = current.getNodeType();
+            if (type != Node.ELEMENT_NODE && type != Node.DOCUMENT_NODE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class NodeSetView extends AbstractSet<Node> {
+        private int size = -1;
+
+        @Override
+        public Iterator<Node> iterator() {
+            return DOMSubTreeData.this.iterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Node && includes((Node)o);
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                int count = 0;
+                for (Iterator<Node> i = iterator(); i.hasNext(); i.next()) {
+                    count++;
+                }
+                size = count;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * This is an Iterator that walks the subdocument as it is advanced,
+     * returning an XPath-equivalent node-set of all nodes traversed,
+     * excluding any comment nodes, if specified.
      */
     static class DelayedNodeIterator implements Iterator<Node> {
-        private Node root;
-        private List<Node> nodeSet;
-        private ListIterator<Node> li;
-        private boolean withComments;
+        private final Node root;
+        private final Node excludeNode;
+        private final boolean withComments;
+
+        /** the next node of the subdocument to examine, in document order */
+        private Node cursor;
+        /** an element whose attributes are returned before the element itself */
+        private Node pendingElement;
+        private NamedNodeMap attrs;
+        private int attrIndex;
+        private Node next;
 
         DelayedNodeIterator(Node root, boolean excludeComments) {
+            this(root, null, excludeComments);
+        }
+
+        DelayedNodeIterator(Node root, Node excludeNode, boolean excludeComments) {
             this.root = root;
+            this.excludeNode = excludeNode;
             this.withComments = !excludeComments;
+            if (root != null && root != excludeNode) {
+                cursor = root;
+            }
         }
 
         public boolean hasNext() {
-            if (nodeSet == null) {
-                nodeSet = dereferenceSameDocumentURI(root);
-                li = nodeSet.listIterator();
+            if (next == null) {
+                next = advance();
             }
-            return li.hasNext();
+            return next != null;
         }
 
         public Node next() {
-            if (nodeSet == null) {
-                nodeSet = dereferenceSameDocumentURI(root);
-                li = nodeSet.listIterator();
-            }
-            if (li.hasNext()) {
-                return li.next();
-            } else {
+            if (!hasNext()) {
                 throw new NoSuchElementException();
             }
+            Node node = next;
+            next = null;
+            return node;
         }
 
         public void remove() {
             throw new UnsupportedOperationException();
         }
 
-        /**
-         * Dereferences a same-document URI fragment.
-         *
-         * @param node the node (document or element) referenced by the
-         *	 URI fragment. If null, returns an empty set.
-         * @return a set of nodes (minus any comment nodes)
-         */
-        private List<Node> dereferenceSameDocumentURI(Node node) {
-            List<Node> nodes = new ArrayList<>();
-            if (node != null) {
-                nodeSetMinusCommentNodes(node, nodes, null);
+        private Node advance() {
+            while (true) {
+                if (pendingElement != null) {
+                    if (attrs != null && attrIndex < attrs.getLength()) {
+                        return attrs.item(attrIndex++);
+                    }
+                    Node element = pendingElement;
+                    pendingElement = null;
+                    attrs = null;
+                    return element;
+                }
+                if (cursor == null) {
+                    return null;
+                }
+                Node node = cursor;
+                cursor = following(node, true);
+
+                switch (node.getNodeType()) {
+                    case Node.ELEMENT_NODE :
+                        pendingElement = node;
+                        attrs = node.getAttributes();
+                        attrIndex = 0;
+                        break;
+                    case Node.TEXT_NODE :
+                    case Node.CDATA_SECTION_NODE:
+                        // emulate XPath which only returns the first node in
+                        // contiguous text/cdata nodes
+                        Node prevSibling = node.getPreviousSibling();
+                        if (node != root && prevSibling != null &&
+                            (prevSibling.getNodeType() == Node.TEXT_NODE ||
+                             prevSibling.getNodeType() == Node.CDATA_SECTION_NODE)) {
+                            break;
+                        }
+                        return node;
+                    case Node.PROCESSING_INSTRUCTION_NODE :
+                        return node;
+                    case Node.COMMENT_NODE:
+                        if (withComments) {
+                            return node;
+                        }
+                        break;
+                    default:
+                        break;
+                }
             }
-            return nodes;
         }
 
         /**
-         * Recursively traverses the subtree, and returns an XPath-equivalent
-         * node-set of all nodes traversed, excluding any comment nodes,
-         * if specified.
-         *
-         * @param node the node to traverse
-         * @param nodeSet the set of nodes traversed so far
-         * @param prevSibling the previous sibling node
+         * @return the node following the given node in document order
+         * within the subdocument, skipping the excluded subtree
          */
-        @SuppressWarnings("fallthrough")
-        private void nodeSetMinusCommentNodes(Node node, List<Node> nodeSet,
-                                              Node prevSibling)
-        {
-            switch (node.getNodeType()) {
-                case Node.ELEMENT_NODE :
-                    NamedNodeMap attrs = node.getAttributes();
-                    if (attrs != null) {
-                        for (int i = 0, len = attrs.getLength(); i < len; i++) {
-                            nodeSet.add(attrs.item(i));
-                        }
-                    }
-                    nodeSet.add(node);
-                    Node pSibling = null;
-                    for (Node child = node.getFirstChild(); child != null;
-                        child = child.getNextSibling()) {
-                        nodeSetMinusCommentNodes(child, nodeSet, pSibling);
-                        pSibling = child;
-                    }
-                    break;
-                case Node.DOCUMENT_NODE :
-                    pSibling = null;
-                    for (Node child = node.getFirstChild(); child != null;
-                        child = child.getNextSibling()) {
-                        nodeSetMinusCommentNodes(child, nodeSet, pSibling);
-                        pSibling = child;
-                    }
-                    break;
-                case Node.TEXT_NODE :
-                case Node.CDATA_SECTION_NODE:
-                    // emulate XPath which only returns the first node in
-                    // contiguous text/cdata nodes
-                    if (prevSibling != null &&
-                        (prevSibling.getNodeType() == Node.TEXT_NODE ||
-                         prevSibling.getNodeType() == Node.CDATA_SECTION_NODE)) {
-                        return;
-                    }
-                    nodeSet.add(node);
-                    break;
-                case Node.PROCESSING_INSTRUCTION_NODE :
-                    nodeSet.add(node);
-                    break;
-                case Node.COMMENT_NODE:
-                    if (withComments) {
-                        nodeSet.add(node);
+        private Node following(Node node, boolean descend) {
+            Node following = null;
+            int type = node.getNodeType();
+            if (descend && (type == Node.ELEMENT_NODE || type == Node.DOCUMENT_NODE)) {
+                following = node.getFirstChild();
+            }
+            Node current = node;
+            while (following == null && current != root) {
+                following = current.getNextSibling();
+                if (following == null) {
+                    current = current.getParentNode();
+                    if (current == null) {
+                        return null;
                     }
+                }
+            }
+            if (following != null && following == excludeNode) {
+                return following(following, false);
             }
+            return following;
         }
     }
 }
@@ -46,6 +46,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import org.apache.xml.security.keys.content.x509.X509CertificateCache;
 import org.apache.xml.security.utils.XMLUtils;
 
 /**
@@ -219,12 +220,11 @@ public final class DOMX509Data extends DOMStructure implements X509Data {
     private X509Certificate unmarshalX509Certificate(Element elem)
         throws MarshalException
     {
-        try (ByteArrayInputStream bs = unmarshalBase64Binary(elem)) {
-            return (X509Certificate)cf.generateCertificate(bs);
+        try {
+            String content = XMLUtils.getFullTextChildrenFromNode(elem);
+            return X509CertificateCache.getCertificate(XMLUtils.decode(content));
         } catch (CertificateException e) {
             throw new MarshalException("Cannot create X509Certificate", e);
-        } catch (IOException e) {
-            throw new MarshalException("Error closing stream", e);
         }
     }
 
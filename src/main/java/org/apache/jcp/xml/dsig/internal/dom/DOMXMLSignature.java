@@ -35,6 +35,7 @@ import javax.xml.crypto.dsig.dom.DOMSignContext;
 import javax.xml.crypto.dsig.dom.DOMValidateContext;
 import javax.xml.crypto.dsig.keyinfo.KeyInfo;
 
+import java.io.ByteArrayOutputStream;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.Provider;
@@ -49,6 +50,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import org.apache.xml.security.signature.SignatureVerificationCache;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.XMLUtils;
 
 /**
@@ -240,6 +244,13 @@ public final class DOMXMLSignature extends DOMStructure
         parent.insertBefore(sigElem, nextSibling);
     }
 
+    private static SignatureVerificationCache getSignatureVerificationCache(XMLValidateContext context) {
+        Object verificationCache =
+            context.getProperty("org.apache.jcp.xml.dsig.signatureVerificationCache");
+        return verificationCache instanceof SignatureVerificationCache
+            ? (SignatureVerificationCache)verificationCache : null;
+    }
+
     @Override
     public boolean validate(XMLValidateContext vc)
         throws XMLSignatureException
@@ -378,10 +389,12 @@ public final class DOMXMLSignature extends DOMStructure
 
         Key signingKey = null;
         try {
+            long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
             KeySelectorResult keySelectorResult = signContext.getKeySelector().select(ki,
                                                       KeySelector.Purpose.SIGN,
                                                       si.getSignatureMethod(),
                                                       signContext);
+            InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
             signingKey = keySelectorResult.getKey();
             if (signingKey == null) {
                 throw new XMLSignatureException("the keySelector did not " +
@@ -394,8 +407,10 @@ public final class DOMXMLSignature extends DOMStructure
 
         // calculate signature value
         try {
+            long start = InstrumentationSupport.start(Phase.SIGNATURE);
             byte[] val = ((AbstractDOMSignatureMethod)
                 si.getSignatureMethod()).sign(signingKey, si, signContext);
+            InstrumentationSupport.end(Phase.SIGNATURE, si.getSignatureMethod().getAlgorithm(), start, -1);
             ((DOMSignatureValue)sv).setValue(val);
         } catch (InvalidKeyException ike) {
             throw new XMLSignatureException(ike);
@@ -545,8 +560,10 @@ public final class DOMXMLSignature extends DOMStructure
             try {
                 KeySelector keySelector = validateContext.getKeySelector();
                 if (keySelector != null) {
+                    long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
                     ksResult = keySelector.select
                         (ki, KeySelector.Purpose.VERIFY, sm, validateContext);
+                    InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
                     if (ksResult != null) {
                         validationKey = ksResult.getKey();
                     }
@@ -561,9 +578,27 @@ public final class DOMXMLSignature extends DOMStructure
             }
 
             // canonicalize SignedInfo and verify signature
+            SignatureVerificationCache verificationCache = getSignatureVerificationCache(validateContext);
+            Object verificationCacheKey = null;
             try {
-                validationStatus = ((AbstractDOMSignatureMethod)sm).verify
-                    (validationKey, si, value, validateContext);
+                if (verificationCache != null) {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    ((DOMSignedInfo)si).canonicalize(validateContext, bos);
+                    verificationCacheKey = verificationCache.createKey
+                        (sm.getAlgorithm(), bos.toByteArray(), value, validationKey);
+                }
+                if (verificationCacheKey != null && verificationCache.isVerified(verificationCacheKey)) {
+                    LOG.debug("SignatureValue was verified before");
+                    validationStatus = true;
+                } else {
+                    long start = InstrumentationSupport.start(Phase.SIGNATURE);
+                    validationStatus = ((AbstractDOMSignatureMethod)sm).verify
+                        (validationKey, si, value, validateContext);
+                    InstrumentationSupport.end(Phase.SIGNATURE, sm.getAlgorithm(), start, -1);
+                    if (validationStatus && verificationCacheKey != null) {
+                        verificationCache.putVerified(verificationCacheKey);
+                    }
+                }
             } catch (Exception e) {
                 throw new XMLSignatureException(e);
             }
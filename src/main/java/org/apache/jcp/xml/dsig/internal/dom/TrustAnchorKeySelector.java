@@ -0,0 +1,460 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jcp.xml.dsig.internal.dom;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.x500.X500Principal;
+import javax.xml.crypto.AlgorithmMethod;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.KeySelectorResult;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dom.DOMStructure;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyName;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.keyinfo.X509IssuerSerial;
+
+import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.keys.content.x509.XMLX509SKI;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Element;
+
+/**
+ * A KeySelector that returns the public keys of a set of trusted X.509 certificates, e.g. the
+ * certificates of the partners whose signatures are accepted.
+ *
+ * The certificates are indexed by the SHA-256 digest of their encoding, subject key identifier,
+ * issuer and serial number, subject and name, so the X509Certificate, X509SKI, X509IssuerSerial,
+ * X509SubjectName and dsig11:X509Digest entries of an X509Data and KeyName elements are looked up
+ * without scanning the certificates. A KeyName matches the alias of a KeyStore entry or the name of
+ * a certificate file without its extension, ignoring case.
+ *
+ * The certificates are loaded from a KeyStore or a directory of certificate files. Loading builds
+ * a new index which replaces the current one atomically, so the certificates can be reloaded while
+ * signatures are validated. Certificate files which are unchanged since the previous load are not
+ * parsed again.
+ *
+ * This class is thread-safe.
+ */
+public final class TrustAnchorKeySelector extends KeySelector {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(TrustAnchorKeySelector.class);
+
+    private static final String[] CERTIFICATE_FILE_EXTENSIONS = {".crt", ".cer", ".pem", ".der"};
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    private volatile Index index = new Index(Collections.emptyList(), Collections.emptyMap());
+
+    /**
+     * Replaces the certificates with the certificates of a KeyStore.
+     *
+     * @param keyStore the KeyStore, only certificates which are X.509 certificates are used
+     * @throws KeyStoreException if the KeyStore is not loaded or a certificate can't be encoded
+     */
+    public void load(KeyStore keyStore) throws KeyStoreException {
+        List<Entry> entries = new ArrayList<>();
+        Enumeration<String> aliases = keyStore.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            Certificate cert = keyStore.getCertificate(alias);
+            if (cert instanceof X509Certificate) {
+                try {
+                    entries.add(new Entry(alias, (X509Certificate) cert));
+                } catch (CertificateEncodingException e) {
+                    throw new KeyStoreException(e);
+                }
+            }
+        }
+        index = new Index(entries, Collections.emptyMap());
+        LOG.debug("Loaded {} trusted certificates from KeyStore", entries.size());
+    }
+
+    /**
+     * Replaces the certificates with the certificates in the .crt, .cer, .pem and .der files of a
+     * directory. A file can hold several DER or PEM encoded certificates.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory or a file can't be read
+     * @throws CertificateException if a file can't be parsed
+     */
+    public void load(Path directory) throws IOException, CertificateException {
+        Map<Octets, List<X509Certificate>> previousFiles = index.parsedFiles;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && certificateFileName(file) != null) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+
+        CertificateFactory cf = null;
+        List<Entry> entries = new ArrayList<>();
+        Map<Octets, List<X509Certificate>> parsedFiles = new HashMap<>();
+        for (Path file : files) {
+            byte[] bytes = Files.readAllBytes(file);
+            Octets contentDigest = new Octets(sha256(bytes));
+            List<X509Certificate> certs = previousFiles.get(contentDigest);
+            if (certs == null) {
+                if (cf == null) {
+                    cf = CertificateFactory.getInstance("X.509");
+                }
+                certs = new ArrayList<>();
+                try (ByteArrayInputStream is = new ByteArrayInputStream(bytes)) {
+                    for (Certificate cert : cf.generateCertificates(is)) {
+                        if (cert instanceof X509Certificate) {
+                            certs.add((X509Certificate) cert);
+                        }
+                    }
+                } catch (CertificateException e) {
+                    throw new CertificateException("Cannot parse certificate file " + file, e);
+                }
+            }
+            parsedFiles.put(contentDigest, certs);
+            String name = certificateFileName(file);
+            for (X509Certificate cert : certs) {
+                entries.add(new Entry(name, cert));
+            }
+        }
+        index = new Index(entries, parsedFiles);
+        LOG.debug("Loaded {} trusted certificates from {}", entries.size(), directory);
+    }
+
+    /**
+     * @return the file name without its extension, or null if it has none of the certificate file extensions
+     */
+    private static String certificateFileName(Path file) {
+        String fileName = file.getFileName().toString();
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        for (String extension : CERTIFICATE_FILE_EXTENSIONS) {
+            if (lowerCase.endsWith(extension) && lowerCase.length() > extension.length()) {
+                return fileName.substring(0, fileName.length() - extension.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of trusted certificates
+     */
+    public int size() {
+        return index.entries.size();
+    }
+
+    /**
+     * Selects the public key of the first trusted certificate matched by the KeyInfo, which is
+     * compatible with the signature method.
+     *
+     * @throws KeySelectorException if the purpose is not verification or no trusted certificate matches
+     */
+    @Override
+    public Result select(KeyInfo keyInfo, KeySelector.Purpose purpose, AlgorithmMethod method,
+                         XMLCryptoContext context) throws KeySelectorException {
+        if (keyInfo == null) {
+            throw new KeySelectorException("Null KeyInfo object!");
+        }
+        if (purpose != KeySelector.Purpose.VERIFY) {
+            throw new KeySelectorException("Only verification keys can be selected, not " + purpose);
+        }
+        String keyAlgorithm = null;
+        if (method instanceof AbstractDOMSignatureMethod) {
+            keyAlgorithm = keyAlgorithm(((AbstractDOMSignatureMethod) method).getAlgorithmType());
+        }
+
+        Index current = index;
+        for (Object keyInfoType : keyInfo.getContent()) {
+            if (keyInfoType instanceof X509Data) {
+                for (Object x509Type : ((X509Data) keyInfoType).getContent()) {
+                    Result result = current.select(x509Type, keyAlgorithm);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } else if (keyInfoType instanceof KeyName) {
+                String name = ((KeyName) keyInfoType).getName();
+                Result result = select(current.byName.get(name.toLowerCase(Locale.ROOT)), keyAlgorithm);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        throw new KeySelectorException("No trusted certificate matches the KeyInfo");
+    }
+
+    private static String keyAlgorithm(AbstractDOMSignatureMethod.Type type) {
+        switch (type) {
+        case DSA:
+            return "DSA";
+        case RSA:
+            return "RSA";
+        case ECDSA:
+            return "EC";
+        default:
+            return type.name();
+        }
+    }
+
+    private static Result select(Collection<Entry> candidates, String keyAlgorithm) {
+        if (candidates != null) {
+            for (Entry candidate : candidates) {
+                if (candidate.isCompatible(keyAlgorithm)) {
+                    return new Result(candidate.cert);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The result of a selection, which also holds the trusted certificate of the key.
+     */
+    public static final class Result implements KeySelectorResult {
+        private final X509Certificate cert;
+
+        Result(X509Certificate cert) {
+            this.cert = cert;
+        }
+
+        @Override
+        public Key getKey() {
+            return cert.getPublicKey();
+        }
+
+        public X509Certificate getCertificate() {
+            return cert;
+        }
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final X509Certificate cert;
+        private final Octets derDigest;
+        private final String publicKeyAlgorithm;
+
+        Entry(String name, X509Certificate cert) throws CertificateEncodingException {
+            this.name = name;
+            this.cert = cert;
+            this.derDigest = new Octets(sha256(cert.getEncoded()));
+            this.publicKeyAlgorithm = cert.getPublicKey().getAlgorithm();
+        }
+
+        boolean isCompatible(String keyAlgorithm) {
+            return keyAlgorithm == null || keyAlgorithm.equalsIgnoreCase(publicKeyAlgorithm)
+                || "RSA".equals(keyAlgorithm) && "RSASSA-PSS".equalsIgnoreCase(publicKeyAlgorithm);
+        }
+    }
+
+    /**
+     * An immutable snapshot of the trusted certificates and their indexes. Only the indexes of
+     * X509Digest algorithms are created on demand.
+     */
+    private static final class Index {
+        private final List<Entry> entries;
+        private final Map<Octets, List<X509Certificate>> parsedFiles;
+        private final Map<Octets, Entry> byDerDigest = new HashMap<>();
+        private final Map<Octets, List<Entry>> bySki = new HashMap<>();
+        private final Map<IssuerSerial, List<Entry>> byIssuerSerial = new HashMap<>();
+        private final Map<X500Principal, List<Entry>> bySubject = new HashMap<>();
+        private final Map<String, List<Entry>> byName = new HashMap<>();
+        private final ConcurrentMap<String, Map<Octets, Entry>> byDigest = new ConcurrentHashMap<>();
+
+        Index(List<Entry> entries, Map<Octets, List<X509Certificate>> parsedFiles) {
+            this.entries = entries;
+            this.parsedFiles = parsedFiles;
+            for (Entry entry : entries) {
+                X509Certificate cert = entry.cert;
+                byDerDigest.putIfAbsent(entry.derDigest, entry);
+                if (cert.getExtensionValue(XMLX509SKI.SKI_OID) != null) {
+                    try {
+                        add(bySki, new Octets(XMLX509SKI.getSKIBytesFromCert(cert)), entry);
+                    } catch (XMLSecurityException e) {
+                        LOG.debug("Cannot get the SKI of {}: {}", cert.getSubjectX500Principal(), e.getMessage());
+                    }
+                }
+                add(byIssuerSerial, new IssuerSerial(cert.getIssuerX500Principal(), cert.getSerialNumber()), entry);
+                add(bySubject, cert.getSubjectX500Principal(), entry);
+                add(byName, entry.name.toLowerCase(Locale.ROOT), entry);
+            }
+        }
+
+        private static <K> void add(Map<K, List<Entry>> map, K key, Entry entry) {
+            map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entry);
+        }
+
+        Result select(Object x509Type, String keyAlgorithm) throws KeySelectorException {
+            if (x509Type instanceof X509Certificate) {
+                Entry entry;
+                try {
+                    entry = byDerDigest.get(new Octets(sha256(((X509Certificate) x509Type).getEncoded())));
+                } catch (CertificateEncodingException e) {
+                    throw new KeySelectorException(e);
+                }
+                return entry != null ? TrustAnchorKeySelector.select(Collections.singletonList(entry), keyAlgorithm) : null;
+            } else if (x509Type instanceof byte[]) {
+                return TrustAnchorKeySelector.select(bySki.get(new Octets((byte[]) x509Type)), keyAlgorithm);
+            } else if (x509Type instanceof X509IssuerSerial) {
+                X509IssuerSerial issuerSerial = (X509IssuerSerial) x509Type;
+                X500Principal issuer = principal(issuerSerial.getIssuerName());
+                if (issuer == null) {
+                    return null;
+                }
+                return TrustAnchorKeySelector.select(
+                    byIssuerSerial.get(new IssuerSerial(issuer, issuerSerial.getSerialNumber())), keyAlgorithm);
+            } else if (x509Type instanceof String) {
+                X500Principal subject = principal((String) x509Type);
+                return subject != null ? TrustAnchorKeySelector.select(bySubject.get(subject), keyAlgorithm) : null;
+            } else if (x509Type instanceof DOMStructure) {
+                return selectByDigest(((DOMStructure) x509Type).getNode(), keyAlgorithm);
+            }
+            return null;
+        }
+
+        private Result selectByDigest(Object node, String keyAlgorithm) throws KeySelectorException {
+            if (!(node instanceof Element)) {
+                return null;
+            }
+            Element element = (Element) node;
+            if (!Constants._TAG_X509DIGEST.equals(element.getLocalName())
+                || !Constants.SignatureSpec11NS.equals(element.getNamespaceURI())) {
+                return null;
+            }
+            String algorithmURI = element.getAttributeNS(null, Constants._ATT_ALGORITHM);
+            String jceAlgorithm = JCEMapper.translateURItoJCEID(algorithmURI);
+            if (jceAlgorithm == null) {
+                LOG.debug("Unknown X509Digest algorithm {}", algorithmURI);
+                return null;
+            }
+            Map<Octets, Entry> digests = byDigest.get(algorithmURI);
+            if (digests == null) {
+                digests = new HashMap<>();
+                try {
+                    MessageDigest md = MessageDigest.getInstance(jceAlgorithm);
+                    for (Entry entry : entries) {
+                        digests.putIfAbsent(new Octets(md.digest(entry.cert.getEncoded())), entry);
+                    }
+                } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+                    throw new KeySelectorException(e);
+                }
+                Map<Octets, Entry> existing = byDigest.putIfAbsent(algorithmURI, digests);
+                if (existing != null) {
+                    digests = existing;
+                }
+            }
+            Entry entry = digests.get(new Octets(XMLUtils.decode(XMLUtils.getFullTextChildrenFromNode(element))));
+            return entry != null ? TrustAnchorKeySelector.select(Collections.singletonList(entry), keyAlgorithm) : null;
+        }
+
+        private static X500Principal principal(String name) {
+            try {
+                return new X500Principal(name);
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Cannot parse distinguished name {}: {}", name, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static final class IssuerSerial {
+        private final X500Principal issuer;
+        private final BigInteger serialNumber;
+
+        IssuerSerial(X500Principal issuer, BigInteger serialNumber) {
+            this.issuer = issuer;
+            this.serialNumber = serialNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof IssuerSerial)) {
+                return false;
+            }
+            IssuerSerial other = (IssuerSerial) obj;
+            return issuer.equals(other.issuer) && Objects.equals(serialNumber, other.serialNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * issuer.hashCode() + Objects.hashCode(serialNumber);
+        }
+    }
+
+    private static final class Octets {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        Octets(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Octets && Arrays.equals(bytes, ((Octets) obj).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -25,7 +25,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.*;
+import javax.xml.crypto.NodeSetData;
 import javax.xml.crypto.XMLCryptoContext;
+import org.apache.xml.security.signature.XMLSignatureInput;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
@@ -79,6 +81,28 @@ public final class Utils {
         return nodeSet;
     }
 
+    /**
+     * Converts a NodeSetData to an XMLSignatureInput. A subtree or an XPath
+     * node-set is used as is, any other node-set is copied to a Set.
+     *
+     * @param data the NodeSetData
+     * @return the XMLSignatureInput
+     */
+    static XMLSignatureInput toXMLSignatureInput(NodeSetData data) {
+        if (data instanceof DOMSubTreeData) {
+            DOMSubTreeData subTree = (DOMSubTreeData)data;
+            XMLSignatureInput in = new XMLSignatureInput(subTree.getRoot());
+            in.setExcludeNode(subTree.getExcludeNode());
+            in.setExcludeComments(subTree.excludeComments());
+            return in;
+        } else if (data instanceof XPathNodeSetData) {
+            return new XMLSignatureInput(((XPathNodeSetData)data).getNodeSet());
+        }
+        @SuppressWarnings("unchecked")
+        Set<Node> nodeSet = toNodeSet(data.iterator());
+        return new XMLSignatureInput(nodeSet);
+    }
+
     /**
      * Returns the ID from a same-document URI (ex: "#id")
      */
@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jcp.xml.dsig.internal.dom;
+
+import java.util.Set;
+
+import javax.xml.crypto.NodeSetData;
+import org.w3c.dom.Node;
+
+/**
+ * A NodeSetData which can also supply its nodes as a Set with constant time
+ * membership checks. Such a node-set is handed to the transforms and
+ * canonicalizers as is, rather than being copied to a new Set first.
+ *
+ */
+public interface XPathNodeSetData extends NodeSetData {
+
+    /**
+     * Returns the nodes according to the XPath Data Model, i.e. including
+     * the attribute nodes of the included elements. The Set must not be
+     * modified.
+     */
+    Set<Node> getNodeSet();
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.algorithms;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -251,6 +252,16 @@ public final class MessageDigestAlgorithm extends Algorithm {
         algorithm.update(buf, offset, len);
     }
 
+    /**
+     * Proxy method for {@link java.security.MessageDigest#update(java.nio.ByteBuffer)}
+     * which is executed on the internal {@link java.security.MessageDigest} object.
+     *
+     * @param input
+     */
+    public void update(ByteBuffer input) {
+        algorithm.update(input);
+    }
+
     /** {@inheritDoc} */
     public String getBaseNamespace() {
         return Constants.SignatureSpecNS;
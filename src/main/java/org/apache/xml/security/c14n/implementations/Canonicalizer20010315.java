@@ -22,13 +22,15 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.helper.C14nHelper;
 import org.apache.xml.security.parser.XMLParserException;
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.stax.ext.Transformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer11;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_OmitCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_WithCommentsTransformer;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -47,6 +49,8 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
     private boolean firstCall = true;
 
     private final XmlAttrStack xmlattrStack;
+    /** the attributes of the current element, reused for all elements */
+    private final SortedAttrList sortedAttributes = new SortedAttrList();
     private final boolean c14n11;
 
     /**
@@ -71,6 +75,16 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
     }
 
 
+    @Override
+    protected Transformer createStreamingCanonicalizer(boolean includeComments) {
+        if (c14n11) {
+            return new Canonicalizer11(includeComments);
+        }
+        return includeComments
+            ? new Canonicalizer20010315_WithCommentsTransformer()
+            : new Canonicalizer20010315_OmitCommentsTransformer();
+    }
+
     /**
      * Always throws a CanonicalizationException because this is inclusive c14n.
      *
@@ -140,7 +154,8 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
             return;
         }
         // result will contain the attrs which have to be output
-        SortedSet<Attr> result = new TreeSet<>(COMPARE);
+        SortedAttrList result = sortedAttributes;
+        result.clear();
 
         if (element.hasAttributes()) {
             NamedNodeMap attrs = element.getAttributes();
@@ -183,9 +198,11 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
         }
 
         //we output all Attrs which are available
-        for (Attr attr : result) {
+        for (int i = 0; i < result.size(); i++) {
+            Attr attr = result.get(i);
             outputAttrToWriter(attr.getNodeName(), attr.getNodeValue(), writer, cache);
         }
+        result.clear();
     }
 
     /**
@@ -208,7 +225,8 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
         // result will contain the attrs which have to be output
         xmlattrStack.push(ns.getLevel());
         boolean isRealVisible = isVisibleDO(element, ns.getLevel()) == 1;
-        SortedSet<Attr> result = new TreeSet<>(COMPARE);
+        SortedAttrList result = sortedAttributes;
+        result.clear();
 
         if (element.hasAttributes()) {
             NamedNodeMap attrs = element.getAttributes();
@@ -288,9 +306,11 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
         }
 
         //we output all Attrs which are available
-        for (Attr attr : result) {
+        for (int i = 0; i < result.size(); i++) {
+            Attr attr = result.get(i);
             outputAttrToWriter(attr.getNodeName(), attr.getNodeValue(), writer, cache);
         }
+        result.clear();
     }
 
     protected void circumventBugIfNeeded(XMLSignatureInput input)
@@ -20,16 +20,20 @@ package org.apache.xml.security.c14n.implementations;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.helper.C14nHelper;
 import org.apache.xml.security.parser.XMLParserException;
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.stax.ext.Transformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_ExclOmitCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_ExclWithCommentsTransformer;
 import org.apache.xml.security.transforms.params.InclusiveNamespaces;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
@@ -62,6 +66,11 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
     private SortedSet<String> inclusiveNSSet = Collections.emptySortedSet();
     private boolean propagateDefaultNamespace = false;
 
+    /** the attributes of the current element, reused for all elements */
+    private final SortedAttrList sortedAttributes = new SortedAttrList();
+    /** the prefixes utilized by the current element, reused for all elements */
+    private final List<String> visiblyUtilizedPrefixes = new ArrayList<>();
+
     /**
      * Constructor Canonicalizer20010315Excl
      *
@@ -71,6 +80,17 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
         super(includeComments);
     }
 
+    /**
+     * {@inheritDoc}
+     * The InclusiveNamespaces PrefixList does not apply to octet streams.
+     */
+    @Override
+    protected Transformer createStreamingCanonicalizer(boolean includeComments) {
+        return includeComments
+            ? new Canonicalizer20010315_ExclWithCommentsTransformer()
+            : new Canonicalizer20010315_ExclOmitCommentsTransformer();
+    }
+
     /**
      * Method engineCanonicalizeSubTree
      * {@inheritDoc}
@@ -163,14 +183,13 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
                                            Map<String, byte[]> cache, OutputStream writer)
         throws CanonicalizationException, DOMException, IOException {
         // result will contain the attrs which have to be output
-        SortedSet<Attr> result = new TreeSet<>(COMPARE);
+        SortedAttrList result = sortedAttributes;
+        result.clear();
 
         // The prefix visibly utilized (in the attribute or in the name) in
-        // the element
-        SortedSet<String> visiblyUtilized = new TreeSet<>();
-        if (!inclusiveNSSet.isEmpty()) {
-            visiblyUtilized.addAll(inclusiveNSSet);
-        }
+        // the element, besides the inclusive namespaces
+        List<String> visiblyUtilized = visiblyUtilizedPrefixes;
+        visiblyUtilized.clear();
 
         if (element.hasAttributes()) {
             NamedNodeMap attrs = element.getAttributes();
@@ -217,18 +236,14 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
             prefix = XMLNS;
         }
         visiblyUtilized.add(prefix);
-
-        for (String s : visiblyUtilized) {
-            Attr key = ns.getMapping(s);
-            if (key != null) {
-                result.add(key);
-            }
-        }
+        addUtilizedMappings(visiblyUtilized, ns, result);
 
         //we output all Attrs which are available
-        for (Attr attr : result) {
+        for (int i = 0; i < result.size(); i++) {
+            Attr attr = result.get(i);
             outputAttrToWriter(attr.getNodeName(), attr.getNodeValue(), writer, cache);
         }
+        result.clear();
     }
 
     @Override
@@ -236,19 +251,15 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
                                     Map<String, byte[]> cache, OutputStream writer)
         throws CanonicalizationException, DOMException, IOException {
         // result will contain the attrs which have to be output
-        SortedSet<Attr> result = new TreeSet<>(COMPARE);
+        SortedAttrList result = sortedAttributes;
+        result.clear();
 
         // The prefix visibly utilized (in the attribute or in the name) in
-        // the element
-        Set<String> visiblyUtilized = null;
+        // the element, besides the inclusive namespaces
+        List<String> visiblyUtilized = visiblyUtilizedPrefixes;
+        visiblyUtilized.clear();
         // It's the output selected.
         boolean isOutputElement = isVisibleDO(element, ns.getLevel()) == 1;
-        if (isOutputElement) {
-            visiblyUtilized = new TreeSet<>();
-            if (!inclusiveNSSet.isEmpty()) {
-                visiblyUtilized.addAll(inclusiveNSSet);
-            }
-        }
 
         if (element.hasAttributes()) {
             NamedNodeMap attrs = element.getAttributes();
@@ -317,18 +328,36 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
                 prefix = XMLNS;
             }
             visiblyUtilized.add(prefix);
+            addUtilizedMappings(visiblyUtilized, ns, result);
+        }
+
+        //we output all Attrs which are available
+        for (int i = 0; i < result.size(); i++) {
+            Attr attr = result.get(i);
+            outputAttrToWriter(attr.getNodeName(), attr.getNodeValue(), writer, cache);
+        }
+        result.clear();
+    }
 
-            for (String s : visiblyUtilized) {
+    /**
+     * Adds the namespace declarations to render for the inclusive namespaces and the visibly
+     * utilized prefixes. A prefix which is listed twice is rendered once, as it is marked as
+     * rendered by the first lookup.
+     */
+    private void addUtilizedMappings(List<String> visiblyUtilized, NameSpaceSymbTable ns, SortedAttrList result) {
+        if (!inclusiveNSSet.isEmpty()) {
+            for (String s : inclusiveNSSet) {
                 Attr key = ns.getMapping(s);
                 if (key != null) {
                     result.add(key);
                 }
             }
         }
-
-        //we output all Attrs which are available
-        for (Attr attr : result) {
-            outputAttrToWriter(attr.getNodeName(), attr.getNodeValue(), writer, cache);
+        for (int i = 0; i < visiblyUtilized.size(); i++) {
+            Attr key = ns.getMapping(visiblyUtilized.get(i));
+            if (key != null) {
+                result.add(key);
+            }
         }
     }
 
@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.c14n.implementations;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
@@ -29,13 +30,25 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.CanonicalizerSpi;
 import org.apache.xml.security.c14n.helper.AttrCompare;
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.parser.XMLParserException;
 import org.apache.xml.security.signature.NodeFilter;
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.stax.ext.Transformer;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Comment;
@@ -52,6 +65,10 @@ import org.w3c.dom.ProcessingInstruction;
  * https://issues.apache.org/jira/browse/SANTUARIO-463
  */
 public abstract class CanonicalizerBase extends CanonicalizerSpi {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(CanonicalizerBase.class);
+
     public static final String XML = "xml";
     public static final String XMLNS = "xmlns";
     public static final String XMLNS_URI = Constants.NamespaceSpecNS;
@@ -78,6 +95,10 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
     private static final byte[] AMP = {'&','a','m','p',';'};
     private static final byte[] EQUALS_STR = {'=','\"'};
 
+    private static final int TEXT_BUFFER_SIZE = 8192;
+
+    private static XMLInputFactory xmlInputFactory;
+
     private boolean includeComments;
     private List<NodeFilter> nodeFilter;
 
@@ -88,6 +109,11 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      */
     private Attr nullNode;
 
+    /**
+     * Scratch buffer for the output of text nodes.
+     */
+    private byte[] textBuffer;
+
     /**
      * Constructor CanonicalizerBase
      *
@@ -158,6 +184,127 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
         }
     }
 
+    /**
+     * Canonicalizes an octet stream. If {@link #createStreamingCanonicalizer} returns a StAX
+     * implementation of the algorithm, the events of the parser are canonicalized directly instead
+     * of building a DOM first. Documents with a DTD are always parsed into a DOM, as the DTD may
+     * define default attributes and entities.
+     *
+     * @param inputBytes
+     * @param writer OutputStream to write the canonicalization result
+     * @param secureValidation Whether secure validation is enabled
+     * @throws XMLParserException
+     * @throws IOException
+     * @throws CanonicalizationException
+     */
+    @Override
+    public void engineCanonicalize(byte[] inputBytes, OutputStream writer, boolean secureValidation)
+        throws XMLParserException, IOException, CanonicalizationException {
+        Transformer streamingCanonicalizer = createStreamingCanonicalizer(includeComments);
+        if (streamingCanonicalizer == null || !canonicalizeStream(streamingCanonicalizer, inputBytes, writer)) {
+            super.engineCanonicalize(inputBytes, writer, secureValidation);
+        }
+    }
+
+    /**
+     * Returns the StAX implementation of this algorithm, which is used to canonicalize octet streams
+     * (complete documents without any node filters).
+     *
+     * @param includeComments whether comments are canonicalized
+     * @return the StAX implementation, or null if octet streams are parsed into a DOM
+     */
+    protected Transformer createStreamingCanonicalizer(boolean includeComments) {
+        return null;
+    }
+
+    /**
+     * @return false if the document has a DTD, in which case nothing was written
+     */
+    private boolean canonicalizeStream(Transformer canonicalizer, byte[] inputBytes, OutputStream writer)
+        throws XMLParserException, IOException, CanonicalizationException {
+        long start = InstrumentationSupport.start(Phase.CANONICALIZATION);
+        XMLStreamReader xmlStreamReader = null;
+        try {
+            canonicalizer.setOutputStream(writer);
+            xmlStreamReader = getXMLInputFactory().createXMLStreamReader(new ByteArrayInputStream(inputBytes));
+
+            // the events before the document element are held back until it is clear there is no DTD
+            List<XMLSecEvent> prolog = new ArrayList<>();
+            XMLSecStartElement parentElement = null;
+            while (true) {
+                int eventType = xmlStreamReader.getEventType();
+                if (eventType == XMLStreamConstants.DTD) {
+                    return false;
+                }
+                XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentElement);
+                if (eventType == XMLStreamConstants.START_ELEMENT) {
+                    if (prolog != null) {
+                        for (XMLSecEvent prologEvent : prolog) {
+                            transform(canonicalizer, prologEvent);
+                        }
+                        prolog = null;
+                    }
+                    parentElement = xmlSecEvent.asStartElement();
+                } else if (eventType == XMLStreamConstants.END_ELEMENT && parentElement != null) {
+                    parentElement = parentElement.getParentXMLSecStartElement();
+                }
+                if (prolog != null) {
+                    prolog.add(xmlSecEvent);
+                } else {
+                    transform(canonicalizer, xmlSecEvent);
+                }
+                if (!xmlStreamReader.hasNext()) {
+                    break;
+                }
+                xmlStreamReader.next();
+            }
+            try {
+                canonicalizer.doFinal();
+            } catch (XMLStreamException ex) {
+                throw new CanonicalizationException(ex);
+            }
+            writer.flush();
+            InstrumentationSupport.end(Phase.CANONICALIZATION, engineGetURI(), start, inputBytes.length);
+            return true;
+        } catch (XMLStreamException ex) {
+            throw new XMLParserException(ex, "empty", new Object[] {"Error parsing the inputstream"});
+        } catch (XMLSecurityException ex) {
+            throw new CanonicalizationException(ex);
+        } finally {
+            if (xmlStreamReader != null) {
+                try {
+                    xmlStreamReader.close();
+                } catch (XMLStreamException e) {
+                    LOG.debug(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes an event to the canonicalizer, whose errors are distinguished from parser errors.
+     */
+    private static void transform(Transformer canonicalizer, XMLSecEvent xmlSecEvent)
+        throws CanonicalizationException {
+        try {
+            canonicalizer.transform(xmlSecEvent);
+        } catch (XMLStreamException ex) {
+            throw new CanonicalizationException(ex);
+        }
+    }
+
+    private static XMLInputFactory getXMLInputFactory() {
+        synchronized (CanonicalizerBase.class) {
+            if (xmlInputFactory == null) {
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+                xmlInputFactory = factory;
+            }
+            return xmlInputFactory;
+        }
+    }
+
     /**
      * Canonicalizes a Subtree node.
      *
@@ -170,6 +317,7 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      */
     protected void engineCanonicalizeSubTree(Node rootNode, Node excludeNode, OutputStream writer)
         throws CanonicalizationException {
+        long start = InstrumentationSupport.start(Phase.CANONICALIZATION);
         try {
             NameSpaceSymbTable ns = new NameSpaceSymbTable();
             int nodeLevel = NODE_BEFORE_DOCUMENT_ELEMENT;
@@ -180,6 +328,7 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
             }
             this.canonicalizeSubTree(rootNode, ns, rootNode, nodeLevel, excludeNode, writer);
             writer.flush();
+            InstrumentationSupport.end(Phase.CANONICALIZATION, engineGetURI(), start, -1);
         } catch (UnsupportedEncodingException ex) {
             throw new CanonicalizationException(ex);
         } catch (IOException ex) {
@@ -302,9 +451,11 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
 
     private void engineCanonicalizeXPathNodeSetInternal(Node doc, OutputStream writer)
         throws CanonicalizationException {
+        long start = InstrumentationSupport.start(Phase.CANONICALIZATION);
         try {
             this.canonicalizeXPathNodeSet(doc, doc, writer);
             writer.flush();
+            InstrumentationSupport.end(Phase.CANONICALIZATION, engineGetURI(), start, -1);
         } catch (IOException ex) {
             throw new CanonicalizationException(ex);
         }
@@ -764,16 +915,39 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
     /**
      * Outputs a Text of CDATA section to the internal Writer.
      *
+     * Runs of ASCII characters that need no escaping are collected in a scratch buffer and
+     * written in one call, so that large text nodes reach the digest in big blocks.
+     *
      * @param text
      * @param writer writer where to write the things
      * @throws IOException
      */
-    private static final void outputTextToWriter(
+    private void outputTextToWriter(
         final String text, final OutputStream writer
     ) throws IOException {
+        if (textBuffer == null) {
+            textBuffer = new byte[TEXT_BUFFER_SIZE];
+        }
+        final byte[] buffer = textBuffer;
+        int count = 0;
         final int length = text.length();
         byte[] toWrite;
         for (int i = 0; i < length; ) {
+            char ch = text.charAt(i);
+            if (ch < 0x80 && ch != '&' && ch != '<' && ch != '>' && ch != 0xD) {
+                if (count == buffer.length) {
+                    writer.write(buffer, 0, count);
+                    count = 0;
+                }
+                buffer[count++] = (byte) ch;
+                i++;
+                continue;
+            }
+            if (count > 0) {
+                writer.write(buffer, 0, count);
+                count = 0;
+            }
+
             int c = text.codePointAt(i);
             i += Character.charCount(c);
 
@@ -796,15 +970,14 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
                 break;
 
             default :
-                if (c < 0x80) {
-                    writer.write(c);
-                } else {
-                    UtfHelpper.writeCodePointToUtf8(c, writer);
-                }
+                UtfHelpper.writeCodePointToUtf8(c, writer);
                 continue;
             }
             writer.write(toWrite);
         }
+        if (count > 0) {
+            writer.write(buffer, 0, count);
+        }
     }
 
     // The null xmlns definition.
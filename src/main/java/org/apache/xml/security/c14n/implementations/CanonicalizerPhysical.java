@@ -22,8 +22,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
@@ -49,6 +47,9 @@ import org.w3c.dom.ProcessingInstruction;
  */
 public class CanonicalizerPhysical extends CanonicalizerBase {
 
+    /** the attributes of the current element, reused for all elements */
+    private final SortedAttrList sortedAttributes = new SortedAttrList();
+
     /**
      * Constructor Canonicalizer20010315
      */
@@ -123,7 +124,8 @@ public class CanonicalizerPhysical extends CanonicalizerBase {
         throws CanonicalizationException, DOMException, IOException {
         if (element.hasAttributes()) {
             // result will contain all the attrs declared directly on that element
-            SortedSet<Attr> result = new TreeSet<>(COMPARE);
+            SortedAttrList result = sortedAttributes;
+            result.clear();
 
             NamedNodeMap attrs = element.getAttributes();
             int attrsLength = attrs.getLength();
@@ -134,9 +136,11 @@ public class CanonicalizerPhysical extends CanonicalizerBase {
             }
 
             //we output all Attrs which are available
-            for (Attr attr : result) {
+            for (int i = 0; i < result.size(); i++) {
+                Attr attr = result.get(i);
                 outputAttrToWriter(attr.getNodeName(), attr.getNodeValue(), writer, cache);
             }
+            result.clear();
         }
     }
 
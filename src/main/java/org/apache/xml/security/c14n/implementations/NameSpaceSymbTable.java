@@ -18,51 +18,48 @@
  */
 package org.apache.xml.security.c14n.implementations;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Node;
 
 /**
  * A stack based Symbol Table.
- *<br>For speed reasons all the symbols are introduced in the same map,
- * and at the same time in a list so it can be removed when the frame is pop back.
+ *<br>For speed reasons all the symbols are introduced in the same map, which is
+ * changed in place. Every change inside a frame is recorded in an undo log, which
+ * is replayed backwards when the frame is popped, so no maps or entries are copied.
  */
 public class NameSpaceSymbTable {
 
-    private static final org.slf4j.Logger LOG =
-        org.slf4j.LoggerFactory.getLogger(NameSpaceSymbTable.class);
-
     private static final String XMLNS = "xmlns";
-    private static final SymbMap initialMap = new SymbMap();
-
-    static {
-        NameSpaceSymbEntry ne = new NameSpaceSymbEntry("", null, true, XMLNS);
-        ne.lastrendered = "";
-        initialMap.put(XMLNS, ne);
-    }
+    private static final int INITIAL_CAPACITY = 16;
 
     /**The map betwen prefix-> entry table. */
-    private SymbMap symb;
+    private final SymbMap symb = new SymbMap();
+
+    /**
+     * The undo log: the prefix, the entry it was mapped to and the state of that entry
+     * before each change.
+     */
+    private String[] undoPrefixes = new String[INITIAL_CAPACITY];
+    private NameSpaceSymbEntry[] undoEntries = new NameSpaceSymbEntry[INITIAL_CAPACITY];
+    private boolean[] undoRendered = new boolean[INITIAL_CAPACITY];
+    private String[] undoLastRendered = new String[INITIAL_CAPACITY];
+    private int undoSize;
 
-    /**The stacks for removing the definitions when doing pop.*/
-    private final List<SymbMap> level = new ArrayList<>();
-    private boolean cloned = true;
+    /**The size of the undo log when each frame was pushed.*/
+    private int[] levels = new int[INITIAL_CAPACITY];
+    private int level;
 
     /**
      * Default constractor
      **/
     public NameSpaceSymbTable() {
         //Insert the default binding for xmlns.
-        try {
-            symb = initialMap.clone();
-        } catch (CloneNotSupportedException e) {
-            LOG.error("Error cloning the initial map");
-        }
+        NameSpaceSymbEntry ne = new NameSpaceSymbEntry("", null, true, XMLNS);
+        ne.lastrendered = "";
+        symb.put(XMLNS, ne);
     }
 
     /**
@@ -71,17 +68,12 @@ public class NameSpaceSymbTable {
      * @param result the list where to fill the unrendered xmlns definitions.
      **/
     public void getUnrenderedNodes(Collection<Attr> result) {
-        Iterator<NameSpaceSymbEntry> it = symb.entrySet().iterator();
-        while (it.hasNext()) {
-            NameSpaceSymbEntry n = it.next();
+        NameSpaceSymbEntry[] entries = symb.entries;
+        for (int i = 0; i < entries.length; i++) {
+            NameSpaceSymbEntry n = entries[i];
             //put them rendered?
-            if (!n.rendered && n.n != null) {
-                n = n.clone();
-                needsClone();
-                symb.put(n.prefix, n);
-                n.lastrendered = n.uri;
-                n.rendered = true;
-
+            if (n != null && !n.rendered && n.n != null && !"".equals(n.uri)) {
+                markRendered(n);
                 result.add(n.n);
             }
         }
@@ -107,9 +99,10 @@ public class NameSpaceSymbTable {
      * Inclusive or Exclusive.
      **/
     public void push() {
-        //Put the number of namespace definitions in the stack.
-        level.add(null);
-        cloned = false;
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level << 1);
+        }
+        levels[level++] = undoSize;
     }
 
     /**
@@ -117,32 +110,50 @@ public class NameSpaceSymbTable {
      * Inclusive or Exclusive.
      **/
     public void pop() {
-        int size = level.size() - 1;
-        Object ob = level.remove(size);
-        if (ob != null) {
-            symb = (SymbMap)ob;
-            if (size == 0) {
-                cloned = false;
-            } else {
-                cloned = level.get(size - 1) != symb;
+        int mark = levels[--level];
+        while (undoSize > mark) {
+            undoSize--;
+            NameSpaceSymbEntry entry = undoEntries[undoSize];
+            if (entry != null) {
+                entry.rendered = undoRendered[undoSize];
+                entry.lastrendered = undoLastRendered[undoSize];
             }
-        } else {
-            cloned = false;
+            symb.put(undoPrefixes[undoSize], entry);
+            undoPrefixes[undoSize] = null;
+            undoEntries[undoSize] = null;
+            undoLastRendered[undoSize] = null;
         }
     }
 
-    final void needsClone() {
-        if (!cloned) {
-            level.set(level.size() - 1, symb);
-            try {
-                symb = symb.clone();
-            } catch (CloneNotSupportedException e) {
-                LOG.error("Error cloning the symbol map");
-            }
-            cloned = true;
+    /**
+     * Records the current mapping of a prefix and the state of its entry, before either is changed.
+     * Changes outside of any frame are never undone.
+     */
+    private void record(String prefix, NameSpaceSymbEntry entry) {
+        if (level == 0) {
+            return;
         }
+        if (undoSize == undoPrefixes.length) {
+            int newCapacity = undoSize << 1;
+            undoPrefixes = Arrays.copyOf(undoPrefixes, newCapacity);
+            undoEntries = Arrays.copyOf(undoEntries, newCapacity);
+            undoRendered = Arrays.copyOf(undoRendered, newCapacity);
+            undoLastRendered = Arrays.copyOf(undoLastRendered, newCapacity);
+        }
+        undoPrefixes[undoSize] = prefix;
+        undoEntries[undoSize] = entry;
+        if (entry != null) {
+            undoRendered[undoSize] = entry.rendered;
+            undoLastRendered[undoSize] = entry.lastrendered;
+        }
+        undoSize++;
     }
 
+    private void markRendered(NameSpaceSymbEntry entry) {
+        record(entry.prefix, entry);
+        entry.rendered = true;
+        entry.lastrendered = entry.uri;
+    }
 
     /**
      * Gets the attribute node that defines the binding for the prefix.
@@ -161,11 +172,7 @@ public class NameSpaceSymbTable {
             return null;
         }
         // Mark this entry as render.
-        entry = entry.clone();
-        needsClone();
-        symb.put(prefix, entry);
-        entry.rendered = true;
-        entry.lastrendered = entry.uri;
+        markRendered(entry);
         // Return the node for outputing.
         return entry.n;
     }
@@ -202,7 +209,7 @@ public class NameSpaceSymbTable {
         }
         //Creates and entry in the table for this new definition.
         NameSpaceSymbEntry ne = new NameSpaceSymbEntry(uri, n, false, prefix);
-        needsClone();
+        record(prefix, ob);
         symb.put(prefix, ne);
         if (ob != null) {
             //We have a previous definition store it for the pop.
@@ -229,11 +236,7 @@ public class NameSpaceSymbTable {
 
         if (ob != null && uri.equals(ob.uri)) {
             if (!ob.rendered) {
-                ob = ob.clone();
-                needsClone();
-                symb.put(prefix, ob);
-                ob.lastrendered = uri;
-                ob.rendered = true;
+                markRendered(ob);
                 return ob.n;
             }
             return null;
@@ -241,7 +244,7 @@ public class NameSpaceSymbTable {
 
         NameSpaceSymbEntry ne = new NameSpaceSymbEntry(uri, n, true, prefix);
         ne.lastrendered = uri;
-        needsClone();
+        record(prefix, ob);
         symb.put(prefix, ne);
         if (ob != null && ob.lastrendered != null && ob.lastrendered.equals(uri)) {
             ne.rendered = true;
@@ -251,14 +254,14 @@ public class NameSpaceSymbTable {
     }
 
     public int getLevel() {
-        return level.size();
+        return level;
     }
 
     public void removeMapping(String prefix) {
         NameSpaceSymbEntry ob = symb.get(prefix);
 
         if (ob != null) {
-            needsClone();
+            record(prefix, ob);
             symb.put(prefix, null);
         }
     }
@@ -267,7 +270,7 @@ public class NameSpaceSymbTable {
         NameSpaceSymbEntry ob = symb.get(prefix);
 
         if (ob != null && !ob.rendered) {
-            needsClone();
+            record(prefix, ob);
             symb.put(prefix, null);
         }
     }
@@ -276,7 +279,7 @@ public class NameSpaceSymbTable {
         NameSpaceSymbEntry ob = symb.get(prefix);
 
         if (ob != null && ob.rendered) {
-            needsClone();
+            record(prefix, ob);
             symb.put(prefix, null);
         }
         return false;
@@ -286,7 +289,7 @@ public class NameSpaceSymbTable {
 /**
  * The internal structure of NameSpaceSymbTable.
  **/
-class NameSpaceSymbEntry implements Cloneable {
+class NameSpaceSymbEntry {
 
     final String prefix;
 
@@ -308,18 +311,9 @@ class NameSpaceSymbEntry implements Cloneable {
         this.n = n;
         this.prefix = prefix;
     }
-
-    /** {@inheritDoc} */
-    public NameSpaceSymbEntry clone() { //NOPMD
-        try {
-            return (NameSpaceSymbEntry)super.clone();
-        } catch (CloneNotSupportedException e) {
-            return null;
-        }
-    }
 }
 
-class SymbMap implements Cloneable {
+class SymbMap {
     int free = 23;
     NameSpaceSymbEntry[] entries;
     String[] keys;
@@ -341,16 +335,6 @@ class SymbMap implements Cloneable {
         }
     }
 
-    List<NameSpaceSymbEntry> entrySet() {
-        List<NameSpaceSymbEntry> a = new ArrayList<>();
-        for (int i = 0;i < entries.length;i++) {
-            if (entries[i] != null && !"".equals(entries[i].uri)) {
-                a.add(entries[i]);
-            }
-        }
-        return a;
-    }
-
     protected int index(Object obj) {
         Object[] set = keys;
         int length = set.length;
@@ -395,15 +379,4 @@ class SymbMap implements Cloneable {
     NameSpaceSymbEntry get(String key) {
         return entries[index(key)];
     }
-
-    @Override
-    public SymbMap clone() throws CloneNotSupportedException  {
-        SymbMap copy = (SymbMap) super.clone();
-        copy.entries = new NameSpaceSymbEntry[entries.length];
-        System.arraycopy(entries, 0, copy.entries, 0, entries.length);
-        copy.keys = new String[keys.length];
-        System.arraycopy(keys, 0, copy.keys, 0, keys.length);
-
-        return copy;
-    }
 }
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.c14n.implementations;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.w3c.dom.Attr;
+
+/**
+ * The attributes and namespace declarations of an element in canonical order. The list is reused
+ * for all elements of a canonicalization: an attribute is inserted at its position in the sorted
+ * array, which is cheap for the few attributes an element usually has. Like a TreeSet, an attribute
+ * which compares equal to one already in the list is not added.
+ */
+final class SortedAttrList extends AbstractCollection<Attr> {
+
+    private Attr[] attrs = new Attr[8];
+    private int size;
+
+    @Override
+    public boolean add(Attr attr) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = CanonicalizerBase.COMPARE.compare(attr, attrs[mid]);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return false;
+            }
+        }
+        if (size == attrs.length) {
+            attrs = Arrays.copyOf(attrs, size << 1);
+        }
+        System.arraycopy(attrs, low, attrs, low + 1, size - low);
+        attrs[low] = attr;
+        size++;
+        return true;
+    }
+
+    Attr get(int index) {
+        return attrs[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(attrs, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Attr> iterator() {
+        return new Iterator<Attr>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Attr next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return attrs[index++];
+            }
+        };
+    }
+}
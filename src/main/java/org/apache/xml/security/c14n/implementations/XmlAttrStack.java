@@ -20,8 +20,10 @@ package org.apache.xml.security.c14n.implementations;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -48,6 +50,8 @@ class XmlAttrStack {
     private XmlsStackElement cur;
 
     private final List<XmlsStackElement> levels = new ArrayList<>();
+    /** popped stack elements, which are reused */
+    private final Deque<XmlsStackElement> free = new ArrayDeque<>();
     private final boolean c14n11;
 
     public XmlAttrStack(boolean c14n11) {
@@ -61,7 +65,7 @@ class XmlAttrStack {
         }
         cur = null;
         while (lastlevel >= currentLevel) {
-            levels.remove(levels.size() - 1);
+            free.push(levels.remove(levels.size() - 1));
             int newSize = levels.size();
             if (newSize == 0) {
                 lastlevel = 0;
@@ -73,19 +77,29 @@ class XmlAttrStack {
 
     void addXmlnsAttr(Attr n) {
         if (cur == null) {
-            cur = new XmlsStackElement();
-            cur.level = currentLevel;
+            cur = newStackElement();
             levels.add(cur);
             lastlevel = currentLevel;
         }
         cur.nodes.add(n);
     }
 
+    private XmlsStackElement newStackElement() {
+        XmlsStackElement e = free.poll();
+        if (e == null) {
+            e = new XmlsStackElement();
+        } else {
+            e.rendered = false;
+            e.nodes.clear();
+        }
+        e.level = currentLevel;
+        return e;
+    }
+
     void getXmlnsAttr(Collection<Attr> col) {
         int size = levels.size() - 1;
         if (cur == null) {
-            cur = new XmlsStackElement();
-            cur.level = currentLevel;
+            cur = newStackElement();
             lastlevel = currentLevel;
             levels.add(cur);
         }
@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+
+import org.apache.xml.security.utils.InstrumentationSupport;
+
+/**
+ * A cache of unwrapped (decrypted) EncryptedKeys, to avoid repeating the private key operation of
+ * the key transport algorithm when the same wrapped key is received again, e.g. a session key that
+ * is reused for many messages.
+ *
+ * Entries are keyed by the key encryption key, the key transport algorithm and its parameters
+ * (digest, MGF and OAEPparams), the algorithm of the unwrapped key and a SHA-256 digest of the
+ * CipherValue octets. The number of entries and the time an entry is used are bounded.
+ *
+ * The cache holds its own copy of a secret key and hands out a new copy on every hit, so the keys
+ * of callers are never shared or modified. Only the cached copies are destroyed on eviction, expiry
+ * and {@link #clear()}, if they implement {@link Destroyable}. Keys without an encoding, e.g. keys of
+ * a hardware token, can't be copied; they are cached and returned as is, and never destroyed.
+ *
+ * A cache is used for decryption if it is set with {@link XMLCipher#setUnwrappedKeyCache} or
+ * {@code XMLSecurityProperties#setUnwrappedKeyCache}. Failed unwraps are never cached.
+ *
+ * This class is thread-safe.
+ */
+public final class UnwrappedKeyCache {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(UnwrappedKeyCache.class);
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries the maximum number of keys held, the least recently used key is evicted first
+     * @param timeToLive the time in milliseconds a key is used after it was unwrapped
+     */
+    public UnwrappedKeyCache(int maxEntries, long timeToLive) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be > 0");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Creates the cache key for an EncryptedKey.
+     *
+     * @param kek the key encryption key
+     * @param keyTransportAlgorithm the URI of the key transport / key wrap algorithm
+     * @param digestAlgorithm the URI of the OAEP digest algorithm, may be null
+     * @param mgfAlgorithm the URI of the OAEP MGF algorithm, may be null
+     * @param oaepParams the OAEPparams, may be null
+     * @param keyAlgorithm the JCE algorithm of the unwrapped key
+     * @param encryptedKey the CipherValue octets
+     * @return the key
+     * @throws XMLEncryptionException
+     */
+    public Object createKey(Key kek, String keyTransportAlgorithm, String digestAlgorithm, String mgfAlgorithm,
+                            byte[] oaepParams, String keyAlgorithm, byte[] encryptedKey)
+        throws XMLEncryptionException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            update(md, keyTransportAlgorithm);
+            update(md, digestAlgorithm);
+            update(md, mgfAlgorithm);
+            update(md, oaepParams);
+            update(md, keyAlgorithm);
+            update(md, encryptedKey);
+            return new CacheKey(kek, md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new XMLEncryptionException(e);
+        }
+    }
+
+    private static void update(MessageDigest md, String value) {
+        update(md, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void update(MessageDigest md, byte[] value) {
+        if (value == null) {
+            md.update((byte) 0);
+            return;
+        }
+        int length = value.length;
+        md.update(new byte[] {1, (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        md.update(value);
+    }
+
+    /**
+     * @param key a key created by {@link #createKey}
+     * @return the unwrapped key or null
+     */
+    public synchronized Key get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expires <= System.currentTimeMillis()) {
+            entries.remove(key);
+            evict(entry);
+            entry = null;
+        }
+        InstrumentationSupport.recordCacheAccess("UnwrappedKeyCache", entry != null);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.copied ? copy(entry.unwrappedKey) : entry.unwrappedKey;
+    }
+
+    /**
+     * @param key a key created by {@link #createKey}
+     * @param unwrappedKey the unwrapped key
+     */
+    public synchronized void put(Object key, Key unwrappedKey) {
+        long now = System.currentTimeMillis();
+        Key cachedKey = copy(unwrappedKey);
+        boolean copied = cachedKey != unwrappedKey;
+        Entry old = entries.put(key, new Entry(cachedKey, copied, now + timeToLive));
+        if (old != null) {
+            evict(old);
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entries.size() <= maxEntries && entry.expires > now) {
+                break;
+            }
+            iterator.remove();
+            evict(entry);
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of keys removed because the cache was full or the key expired
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes and destroys all keys.
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            destroy(entry);
+        }
+        entries.clear();
+    }
+
+    private void evict(Entry entry) {
+        evictionCount++;
+        destroy(entry);
+    }
+
+    /**
+     * @return a copy of a secret key with an encoding, or else the key itself
+     */
+    private static Key copy(Key key) {
+        if (!(key instanceof SecretKey)) {
+            return key;
+        }
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            return key;
+        }
+        try {
+            return new SecretKeySpec(encoded, key.getAlgorithm());
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    /**
+     * Destroys a key, unless it is the instance a caller passed to {@link #put}.
+     */
+    private static void destroy(Entry entry) {
+        Key key = entry.unwrappedKey;
+        if (entry.copied && key instanceof Destroyable && !((Destroyable) key).isDestroyed()) {
+            try {
+                ((Destroyable) key).destroy();
+            } catch (DestroyFailedException e) {
+                LOG.debug("Unwrapped key could not be destroyed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Key unwrappedKey;
+        /** whether unwrappedKey is a copy owned by the cache */
+        private final boolean copied;
+        private final long expires;
+
+        Entry(Key unwrappedKey, boolean copied, long expires) {
+            this.unwrappedKey = unwrappedKey;
+            this.copied = copied;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The key encryption key is compared by identity, as the encoding of a private key
+     * (if available at all) must not be processed for a cache lookup.
+     */
+    private static final class CacheKey {
+        private final Key kek;
+        private final byte[] digest;
+        private final int hashCode;
+
+        CacheKey(Key kek, byte[] digest) {
+            this.kek = kek;
+            this.digest = digest;
+            this.hashCode = 31 * System.identityHashCode(kek) + Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return kek == other.kek && MessageDigest.isEqual(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
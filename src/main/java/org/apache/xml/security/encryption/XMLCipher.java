@@ -21,10 +21,13 @@ package org.apache.xml.security.encryption;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -34,6 +37,8 @@ import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.MGF1ParameterSpec;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,7 +47,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -50,6 +57,8 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.OAEPParameterSpec;
 import javax.crypto.spec.PSource;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.TransformerConfigurationException;
 
 import org.apache.xml.security.algorithms.JCEMapper;
@@ -68,10 +77,14 @@ import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.ElementProxy;
 import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -87,6 +100,11 @@ public class XMLCipher {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(XMLCipher.class);
 
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Buffers used to stream encrypted and decrypted octets through a Cipher */
+    private static final Queue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<>(16);
+
     /** Triple DES EDE (192 bit key) in CBC mode */
     public static final String TRIPLEDES =
         EncryptionConstants.ALGO_ID_BLOCKCIPHER_TRIPLEDES;
@@ -286,6 +304,13 @@ public class XMLCipher {
 
     private boolean secureValidation;
 
+    private UnwrappedKeyCache unwrappedKeyCache;
+
+    /** Where decryptToStream stages unverified plaintext beyond plaintextStagingThreshold */
+    private Path plaintextStagingDirectory;
+
+    private long plaintextStagingThreshold = -1;
+
     private String digestAlg;
 
     /** List of internal KeyResolvers for DECRYPT and UNWRAP modes. */
@@ -673,6 +698,35 @@ public class XMLCipher {
         this.secureValidation = secureValidation;
     }
 
+    /**
+     * Set the cache for keys unwrapped in UNWRAP_MODE, or in DECRYPT_MODE when the
+     * EncryptedKey is resolved from the KeyInfo of the EncryptedData. The default is null (no caching).
+     */
+    public void setUnwrappedKeyCache(UnwrappedKeyCache unwrappedKeyCache) {
+        this.unwrappedKeyCache = unwrappedKeyCache;
+    }
+
+    public UnwrappedKeyCache getUnwrappedKeyCache() {
+        return unwrappedKeyCache;
+    }
+
+    /**
+     * Set how {@link #decryptToStream(Element, OutputStream)} stages the plaintext of an authenticated
+     * (AES-GCM) decryption until the authentication tag has been verified. By default the plaintext is
+     * staged in memory. With a threshold, the plaintext exceeding it is staged in a temporary file
+     * instead, which is deleted once it has been copied to the OutputStream. Note that the file
+     * holds unverified plaintext on disk while decrypting, so the directory should only be
+     * accessible to this application.
+     *
+     * @param directory the directory of the temporary file, null for the default temporary-file directory
+     * @param threshold the number of bytes staged in memory before a temporary file is used,
+     * negative to always stage in memory
+     */
+    public void setPlaintextStaging(Path directory, long threshold) {
+        this.plaintextStagingDirectory = directory;
+        this.plaintextStagingThreshold = threshold;
+    }
+
     /**
      * This method is used to add a custom {@link KeyResolverSpi} to an XMLCipher.
      * These KeyResolvers are used in KeyInfo objects in DECRYPT and
@@ -1058,6 +1112,241 @@ public class XMLCipher {
         return encryptData(context, null, type, serializedData);
     }
 
+    /**
+     * Encrypts the serialized data and writes the resulting <code>EncryptedData</code> element to
+     * the given XMLStreamWriter. The data is encrypted and the base64 encoded CipherValue is written
+     * while the InputStream is read, so the size of the data is not limited by the available memory.
+     *
+     * The <code>EncryptedData</code> returned by {@link #getEncryptedData()}, e.g. its Id or KeyInfo,
+     * is used for everything but the CipherValue, which is not set on it.
+     *
+     * @param context the context <code>Document</code> used to build the element
+     * @param type a URI identifying type information about the plaintext form
+     *    of the encrypted content (may be <code>null</code>)
+     * @param serializedData the serialized data
+     * @param writer the writer the <code>EncryptedData</code> element is written to
+     * @throws Exception
+     */
+    public void encryptData(
+        Document context, String type, InputStream serializedData, XMLStreamWriter writer
+    ) throws Exception {
+        LOG.debug("Encrypting to XMLStreamWriter...");
+        if (null == context) {
+            throw new XMLEncryptionException("empty", "Context document unexpectedly null...");
+        }
+        if (null == serializedData) {
+            throw new XMLEncryptionException("empty", "Serialized data unexpectedly null...");
+        }
+        if (cipherMode != ENCRYPT_MODE) {
+            throw new XMLEncryptionException("empty", "XMLCipher unexpectedly not in ENCRYPT_MODE...");
+        }
+        if (algorithm == null) {
+            throw new XMLEncryptionException("empty", "XMLCipher instance without transformation specified");
+        }
+        contextDocument = context;
+
+        Cipher c;
+        if (contextCipher == null) {
+            c = constructCipher(algorithm, null);
+        } else {
+            c = contextCipher;
+        }
+        byte[] iv = initEncryptionCipher(c);
+
+        try {
+            if (type != null) {
+                ed.setType(new URI(type).toString());
+            }
+            EncryptionMethod method =
+                factory.newEncryptionMethod(new URI(algorithm).toString());
+            method.setDigestAlgorithm(digestAlg);
+            ed.setEncryptionMethod(method);
+        } catch (URISyntaxException ex) {
+            throw new XMLEncryptionException(ex);
+        }
+
+        Element encryptedDataElement = martial(context, ed);
+        Element cipherValueElement =
+            XMLUtils.selectXencNode(encryptedDataElement.getFirstChild(), EncryptionConstants._TAG_CIPHERDATA, 0);
+        if (cipherValueElement != null) {
+            cipherValueElement =
+                XMLUtils.selectXencNode(cipherValueElement.getFirstChild(), EncryptionConstants._TAG_CIPHERVALUE, 0);
+        }
+        if (cipherValueElement == null) {
+            throw new XMLEncryptionException("empty", "EncryptedData without CipherValue");
+        }
+
+        writeElement(writer, encryptedDataElement, cipherValueElement, c, iv, serializedData);
+        writer.flush();
+    }
+
+    /**
+     * Encrypts the serialized data and writes the resulting <code>EncryptedData</code> element,
+     * encoded as UTF-8, to the given OutputStream.
+     *
+     * @param context the context <code>Document</code> used to build the element
+     * @param type a URI identifying type information about the plaintext form
+     *    of the encrypted content (may be <code>null</code>)
+     * @param serializedData the serialized data
+     * @param os the stream the <code>EncryptedData</code> element is written to
+     * @throws Exception
+     * @see #encryptData(Document, String, InputStream, XMLStreamWriter)
+     */
+    public void encryptData(
+        Document context, String type, InputStream serializedData, OutputStream os
+    ) throws Exception {
+        XMLStreamWriter writer =
+            XMLSecurityConstants.xmlOutputFactoryNonRepairingNs.createXMLStreamWriter(os, StandardCharsets.UTF_8.name());
+        try {
+            encryptData(context, type, serializedData, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the element to the XMLStreamWriter, declaring namespaces which are not in scope yet.
+     * The content of the CipherValue element is replaced by the encrypted serialized data.
+     */
+    private static void writeElement(XMLStreamWriter writer, Element element, Element cipherValueElement,
+                                     Cipher c, byte[] iv, InputStream serializedData)
+        throws XMLStreamException, IOException, XMLEncryptionException {
+        String prefix = element.getPrefix() == null ? "" : element.getPrefix();
+        String namespace = element.getNamespaceURI() == null ? "" : element.getNamespaceURI();
+        String localName = element.getLocalName() == null ? element.getNodeName() : element.getLocalName();
+        writer.writeStartElement(prefix, localName, namespace);
+
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            if (Constants.NamespaceSpecNS.equals(attr.getNamespaceURI())) {
+                String nsPrefix = "xmlns".equals(attr.getNodeName()) ? "" : attr.getLocalName();
+                declareNamespace(writer, nsPrefix, attr.getValue());
+            }
+        }
+        if (!namespace.equals(getNamespaceURI(writer, prefix))) {
+            declareNamespace(writer, prefix, namespace);
+        }
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            String attrNamespace = attr.getNamespaceURI();
+            if (Constants.NamespaceSpecNS.equals(attrNamespace)) {
+                continue;
+            }
+            String attrLocalName = attr.getLocalName() == null ? attr.getNodeName() : attr.getLocalName();
+            if (attrNamespace == null || attrNamespace.isEmpty()) {
+                writer.writeAttribute(attrLocalName, attr.getValue());
+            } else {
+                String attrPrefix = attr.getPrefix() == null ? "" : attr.getPrefix();
+                if (!attrNamespace.equals(getNamespaceURI(writer, attrPrefix))) {
+                    declareNamespace(writer, attrPrefix, attrNamespace);
+                }
+                writer.writeAttribute(attrPrefix, attrNamespace, attrLocalName, attr.getValue());
+            }
+        }
+
+        if (element == cipherValueElement) {
+            writeCipherValue(writer, c, iv, serializedData);
+        } else {
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    writeElement(writer, (Element) child, cipherValueElement, c, iv, serializedData);
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    writer.writeCharacters(child.getNodeValue());
+                    break;
+                case Node.COMMENT_NODE:
+                    writer.writeComment(child.getNodeValue());
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+        writer.writeEndElement();
+    }
+
+    private static String getNamespaceURI(XMLStreamWriter writer, String prefix) {
+        String namespace = writer.getNamespaceContext().getNamespaceURI(prefix);
+        return namespace == null ? "" : namespace;
+    }
+
+    private static void declareNamespace(XMLStreamWriter writer, String prefix, String namespace)
+        throws XMLStreamException {
+        if (prefix.isEmpty()) {
+            writer.setDefaultNamespace(namespace);
+            writer.writeDefaultNamespace(namespace);
+        } else {
+            writer.setPrefix(prefix, namespace);
+            writer.writeNamespace(prefix, namespace);
+        }
+    }
+
+    /**
+     * Writes the IV and the encrypted serialized data base64 encoded to the XMLStreamWriter.
+     */
+    private static void writeCipherValue(XMLStreamWriter writer, Cipher c, byte[] iv, InputStream serializedData)
+        throws IOException, XMLEncryptionException {
+        Base64.Encoder encoder = XMLUtils.getBase64Encoder();
+        byte[] buf = borrowBuffer();
+        long start = InstrumentationSupport.start(Phase.CIPHER);
+        long bytes = 0;
+        try (OutputStream base64 = encoder.wrap(new CharactersOutputStream(writer))) {
+            base64.write(iv);
+            int read;
+            while ((read = serializedData.read(buf)) != -1) {
+                bytes += read;
+                byte[] out = c.update(buf, 0, read);
+                if (out != null) {
+                    base64.write(out);
+                }
+            }
+            base64.write(c.doFinal());
+            InstrumentationSupport.end(Phase.CIPHER, c.getAlgorithm(), start, bytes);
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            throw new XMLEncryptionException(e);
+        } finally {
+            releaseBuffer(buf);
+        }
+    }
+
+    /**
+     * Writes the (ASCII) bytes of the base64 encoder as character data to an XMLStreamWriter.
+     */
+    private static final class CharactersOutputStream extends OutputStream {
+        private final XMLStreamWriter writer;
+        private final char[] chars = new char[1024];
+
+        CharactersOutputStream(XMLStreamWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                int pos = off;
+                int end = off + len;
+                while (pos < end) {
+                    int n = Math.min(chars.length, end - pos);
+                    for (int i = 0; i < n; i++) {
+                        chars[i] = (char) b[pos + i];
+                    }
+                    writer.writeCharacters(chars, 0, n);
+                    pos += n;
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
     /**
      * Returns an <code>EncryptedData</code> interface. Use this operation if
      * you want to have full control over the contents of the
@@ -1132,16 +1421,9 @@ public class XMLCipher {
             c = contextCipher;
         }
         // Now perform the encryption
+        byte[] iv = initEncryptionCipher(c);
 
-        int ivLen = JCEMapper.getIVLengthFromURI(algorithm) / 8;
-        byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
-        try {
-            AlgorithmParameterSpec paramSpec = constructBlockCipherParameters(algorithm, iv);
-            c.init(cipherMode, key, paramSpec);
-        } catch (InvalidKeyException ike) {
-            throw new XMLEncryptionException(ike);
-        }
-
+        long start = InstrumentationSupport.start(Phase.CIPHER);
         try {
             if (serializedData != null) {
                 int numBytes;
@@ -1165,16 +1447,12 @@ public class XMLCipher {
                 LOG.debug("Actual cipher.outputSize = "
                              + Integer.toString(encryptedBytes.length));
             }
+            InstrumentationSupport.end(Phase.CIPHER, c.getAlgorithm(), start, encryptedBytes.length);
         } catch (IllegalStateException | IllegalBlockSizeException
                 | BadPaddingException | UnsupportedEncodingException e) {
             throw new XMLEncryptionException(e);
         }
 
-        // Get IV from Cipher Object. If this is null (see BouncyCastle issue BJA-473) then use
-        // the original IV that was generated
-        if (c.getIV() != null) {
-            iv = c.getIV();
-        }
         // Now build up to a properly XML Encryption encoded octet stream
         byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
         System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
@@ -1202,6 +1480,28 @@ public class XMLCipher {
         return ed;
     }
 
+    /**
+     * Initializes the cipher for encryption with a newly generated IV.
+     * @return the IV to prepend to the encrypted octets
+     */
+    private byte[] initEncryptionCipher(Cipher c) throws XMLSecurityException, InvalidAlgorithmParameterException {
+        int ivLen = JCEMapper.getIVLengthFromURI(algorithm) / 8;
+        byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
+        try {
+            AlgorithmParameterSpec paramSpec = constructBlockCipherParameters(algorithm, iv);
+            c.init(cipherMode, key, paramSpec);
+        } catch (InvalidKeyException ike) {
+            throw new XMLEncryptionException(ike);
+        }
+
+        // Get IV from Cipher Object. If this is null (see BouncyCastle issue BJA-473) then use
+        // the original IV that was generated
+        if (c.getIV() != null) {
+            iv = c.getIV();
+        }
+        return iv;
+    }
+
     /**
      * Build an <code>AlgorithmParameterSpec</code> instance used to initialize a <code>Cipher</code> instance
      * for block cipher encryption and decryption.
@@ -1386,7 +1686,9 @@ public class XMLCipher {
                     c.init(Cipher.WRAP_MODE, this.key, oaepParameters);
                 }
             }
+            long start = InstrumentationSupport.start(Phase.CIPHER);
             encryptedBytes = c.wrap(key);
+            InstrumentationSupport.end(Phase.CIPHER, c.getAlgorithm(), start, encryptedBytes.length);
         } catch (InvalidKeyException | IllegalBlockSizeException | InvalidAlgorithmParameterException e) {
             throw new XMLEncryptionException(e);
         }
@@ -1464,6 +1766,19 @@ public class XMLCipher {
         String jceKeyAlgorithm = JCEMapper.getJCEKeyAlgorithmFromURI(algorithm);
         LOG.debug("JCE Key Algorithm: {}", jceKeyAlgorithm);
 
+        EncryptionMethod encMethod = encryptedKey.getEncryptionMethod();
+        Object cacheKey = null;
+        if (unwrappedKeyCache != null) {
+            cacheKey = unwrappedKeyCache.createKey(key, encMethod.getAlgorithm(), encMethod.getDigestAlgorithm(),
+                                                   encMethod.getMGFAlgorithm(), encMethod.getOAEPparams(),
+                                                   jceKeyAlgorithm, encryptedBytes);
+            Key cachedKey = unwrappedKeyCache.get(cacheKey);
+            if (cachedKey != null) {
+                LOG.debug("Using cached unwrapped key of type {}", algorithm);
+                return cachedKey;
+            }
+        }
+
         Cipher c;
         if (contextCipher == null) {
             // Now create the working cipher
@@ -1479,7 +1794,6 @@ public class XMLCipher {
         Key ret;
 
         try {
-            EncryptionMethod encMethod = encryptedKey.getEncryptionMethod();
             OAEPParameterSpec oaepParameters =
                 constructOAEPParameters(
                     encMethod.getAlgorithm(), encMethod.getDigestAlgorithm(),
@@ -1490,15 +1804,30 @@ public class XMLCipher {
             } else {
                 c.init(Cipher.UNWRAP_MODE, key, oaepParameters);
             }
+            long start = InstrumentationSupport.start(Phase.CIPHER);
             ret = c.unwrap(encryptedBytes, jceKeyAlgorithm, Cipher.SECRET_KEY);
+            InstrumentationSupport.end(Phase.CIPHER, c.getAlgorithm(), start, encryptedBytes.length);
         } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
             throw new XMLEncryptionException(e);
         }
         LOG.debug("Decryption of key type {} OK", algorithm);
 
+        if (cacheKey != null) {
+            unwrappedKeyCache.put(cacheKey, ret);
+        }
         return ret;
     }
 
+    /**
+     * @return the CipherValue element the given CipherValue was loaded from, or null
+     */
+    static Element getCipherValueElement(CipherValue cipherValue) {
+        if (cipherValue instanceof Factory.CipherValueImpl) {
+            return ((Factory.CipherValueImpl)cipherValue).cipherValueElement;
+        }
+        return null;
+    }
+
     /**
      * Construct an OAEPParameterSpec object from the given parameters
      */
@@ -1718,6 +2047,41 @@ public class XMLCipher {
     public byte[] decryptToByteArray(Element element) throws XMLEncryptionException {
         LOG.debug("Decrypting to ByteArray...");
 
+        try (UnsyncByteArrayOutputStream plaintext = new UnsyncByteArrayOutputStream()) {
+            // The plaintext is not returned to the caller if the decryption fails, so there is no need to stage it
+            decryptToStream(element, plaintext, false);
+            return plaintext.toByteArray();
+        } catch (IOException e) {
+            throw new XMLEncryptionException(e);
+        }
+    }
+
+    /**
+     * Decrypt an EncryptedData element to an OutputStream.
+     *
+     * The encrypted octets of a CipherValue, or the octets a CipherReference resolves to, are read
+     * and decrypted incrementally, so large (binary) content can be decrypted without holding the
+     * ciphertext or the plaintext in memory.
+     *
+     * For authenticated algorithms (AES-GCM) nothing is written to the OutputStream before the
+     * authentication tag has been verified. If the JCE provider releases plaintext before the end of
+     * the ciphertext, it is staged in memory, or in a temporary file as configured with
+     * {@link #setPlaintextStaging(Path, long)}. For other algorithms the plaintext is written as it is
+     * decrypted.
+     *
+     * Does not modify the source document.
+     * @param element the <code>EncryptedData</code> to decrypt
+     * @param os the stream the plaintext is written to
+     * @throws XMLEncryptionException
+     */
+    public void decryptToStream(Element element, OutputStream os) throws XMLEncryptionException {
+        LOG.debug("Decrypting to OutputStream...");
+
+        decryptToStream(element, os, true);
+    }
+
+    private void decryptToStream(Element element, OutputStream os, boolean stageUnverifiedPlaintext)
+        throws XMLEncryptionException {
         if (cipherMode != DECRYPT_MODE) {
             throw new XMLEncryptionException("empty", "XMLCipher unexpectedly not in DECRYPT_MODE...");
         }
@@ -1730,7 +2094,7 @@ public class XMLCipher {
             if (ki != null) {
                 try {
                     // Add an EncryptedKey resolver
-                    EncryptedKeyResolver resolver = new EncryptedKeyResolver(encMethodAlgorithm, kek, internalKeyResolvers);
+                    EncryptedKeyResolver resolver = new EncryptedKeyResolver(encMethodAlgorithm, kek, internalKeyResolvers, unwrappedKeyCache);
                     ki.registerInternalKeyResolver(resolver);
                     ki.setSecureValidation(secureValidation);
                     key = ki.getSecretKey();
@@ -1750,8 +2114,27 @@ public class XMLCipher {
         // Obtain the encrypted octets
         XMLCipherInput cipherInput = new XMLCipherInput(encryptedData);
         cipherInput.setSecureValidation(secureValidation);
-        byte[] encryptedBytes = cipherInput.getBytes();
 
+        try (InputStream encryptedStream = cipherInput.getInputStream()) {
+            Cipher c = initDecryptionCipher(encMethodAlgorithm, encryptedStream);
+            decrypt(c, encryptedStream, os, stageUnverifiedPlaintext && isAuthenticated(encMethodAlgorithm));
+        } catch (IOException e) {
+            throw new XMLEncryptionException(e);
+        }
+    }
+
+    private static boolean isAuthenticated(String encMethodAlgorithm) {
+        return AES_128_GCM.equals(encMethodAlgorithm)
+            || AES_192_GCM.equals(encMethodAlgorithm)
+            || AES_256_GCM.equals(encMethodAlgorithm);
+    }
+
+    /**
+     * Creates the cipher for the given algorithm and initializes it with the IV read from
+     * the start of the encrypted octets.
+     */
+    private Cipher initDecryptionCipher(String encMethodAlgorithm, InputStream encryptedStream)
+        throws XMLEncryptionException, IOException {
         // Now create the working cipher
         String jceAlgorithm =
             JCEMapper.translateURItoJCEID(encMethodAlgorithm);
@@ -1770,13 +2153,14 @@ public class XMLCipher {
 
         int ivLen = JCEMapper.getIVLengthFromURI(encMethodAlgorithm) / 8;
         byte[] ivBytes = new byte[ivLen];
-
-        // You may be able to pass the entire piece in to IvParameterSpec
-        // and it will only take the first x bytes, but no way to be certain
-        // that this will work for every JCE provider, so lets copy the
-        // necessary bytes into a dedicated array.
-
-        System.arraycopy(encryptedBytes, 0, ivBytes, 0, ivLen);
+        int read = 0;
+        while (read < ivLen) {
+            int n = encryptedStream.read(ivBytes, read, ivLen - read);
+            if (n < 0) {
+                throw new XMLEncryptionException("empty", "The encrypted octets are shorter than the IV");
+            }
+            read += n;
+        }
 
         String blockCipherAlg = algorithm;
         if (blockCipherAlg == null) {
@@ -1789,14 +2173,92 @@ public class XMLCipher {
         } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
             throw new XMLEncryptionException(e);
         }
+        return c;
+    }
 
+    /**
+     * Decrypts the remaining encrypted octets with the initialized cipher. If stageUnverifiedPlaintext
+     * is set, plaintext released by the cipher before doFinal is staged in memory, or in a temporary
+     * file beyond the plaintextStagingThreshold, and only copied to the OutputStream once doFinal
+     * succeeded.
+     */
+    private void decrypt(Cipher c, InputStream encryptedStream, OutputStream os,
+                         boolean stageUnverifiedPlaintext)
+        throws XMLEncryptionException, IOException {
+        byte[] buf = borrowBuffer();
+        UnsyncByteArrayOutputStream stagingBuffer = null;
+        Path stagingFile = null;
+        OutputStream staging = null;
+        long staged = 0;
+        long start = InstrumentationSupport.start(Phase.CIPHER);
+        long bytes = 0;
         try {
-            return c.doFinal(encryptedBytes, ivLen, encryptedBytes.length - ivLen);
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            throw new XMLEncryptionException(e);
+            int read;
+            while ((read = encryptedStream.read(buf)) != -1) {
+                bytes += read;
+                byte[] out = c.update(buf, 0, read);
+                if (out == null || out.length == 0) {
+                    continue;
+                }
+                if (stageUnverifiedPlaintext) {
+                    if (staging == null) {
+                        stagingBuffer = new UnsyncByteArrayOutputStream();
+                        staging = stagingBuffer;
+                    }
+                    staged += out.length;
+                    if (stagingBuffer != null && plaintextStagingThreshold >= 0
+                        && staged > plaintextStagingThreshold) {
+                        stagingFile = plaintextStagingDirectory == null
+                            ? Files.createTempFile("xmlsec-decrypt", ".tmp")
+                            : Files.createTempFile(plaintextStagingDirectory, "xmlsec-decrypt", ".tmp");
+                        staging = Files.newOutputStream(stagingFile);
+                        stagingBuffer.writeTo(staging);
+                        stagingBuffer = null;
+                    }
+                    staging.write(out);
+                } else {
+                    os.write(out);
+                }
+            }
+
+            byte[] out;
+            try {
+                out = c.doFinal();
+            } catch (IllegalBlockSizeException | BadPaddingException e) {
+                throw new XMLEncryptionException(e);
+            }
+            if (stagingBuffer != null) {
+                stagingBuffer.writeTo(os);
+            } else if (staging != null) {
+                staging.close();
+                staging = null;
+                Files.copy(stagingFile, os);
+            }
+            os.write(out);
+            InstrumentationSupport.end(Phase.CIPHER, c.getAlgorithm(), start, bytes);
+        } finally {
+            releaseBuffer(buf);
+            if (staging != null) {
+                staging.close();
+            }
+            if (stagingFile != null) {
+                Files.deleteIfExists(stagingFile);
+            }
         }
     }
 
+    private static byte[] borrowBuffer() {
+        byte[] buf = BUFFER_POOL.poll();
+        InstrumentationSupport.recordCacheAccess("XMLCipher.bufferPool", buf != null);
+        return buf != null ? buf : new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buf) {
+        // the buffer held plaintext or ciphertext, so it is cleared before it is reused
+        Arrays.fill(buf, (byte) 0);
+        BUFFER_POOL.offer(buf);
+    }
+
     /*
      * Expose the interface for creating XML Encryption objects
      */
@@ -2187,9 +2649,7 @@ public class XMLCipher {
          * @return a new CipherValue
          */
         CipherValue newCipherValue(Element element) {
-            String value = XMLUtils.getFullTextChildrenFromNode(element);
-
-            return newCipherValue(value);
+            return new CipherValueImpl(element);
         }
 
         /**
@@ -2698,6 +3158,9 @@ public class XMLCipher {
         private class CipherValueImpl implements CipherValue {
             private String cipherValue;
 
+            /** The CipherValue element this was loaded from, its text is only concatenated on demand */
+            private Element cipherValueElement;
+
             /**
              * @param value
              */
@@ -2705,14 +3168,25 @@ public class XMLCipher {
                 cipherValue = value;
             }
 
+            /**
+             * @param element
+             */
+            public CipherValueImpl(Element element) {
+                cipherValueElement = element;
+            }
+
             /** {@inheritDoc} */
             public String getValue() {
+                if (cipherValue == null && cipherValueElement != null) {
+                    cipherValue = XMLUtils.getFullTextChildrenFromNode(cipherValueElement);
+                }
                 return cipherValue;
             }
 
             /** {@inheritDoc} */
             public void setValue(String value) {
                 cipherValue = value;
+                cipherValueElement = null;
             }
 
             Element toElement() {
@@ -2720,7 +3194,7 @@ public class XMLCipher {
                     XMLUtils.createElementInEncryptionSpace(
                         contextDocument, EncryptionConstants._TAG_CIPHERVALUE
                     );
-                result.appendChild(contextDocument.createTextNode(cipherValue));
+                result.appendChild(contextDocument.createTextNode(getValue()));
 
                 return result;
             }
@@ -18,9 +18,15 @@
  */
 package org.apache.xml.security.encryption;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.utils.Base64TextInputStream;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
+import org.apache.xml.security.utils.JavaUtils;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.resolver.ResourceResolver;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
@@ -28,6 +34,7 @@ import org.apache.xml.security.utils.resolver.ResourceResolverException;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.TransformationException;
 import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
 
 /**
  * <code>XMLCipherInput</code> is used to wrap input passed into the
@@ -94,52 +101,92 @@ public class XMLCipherInput {
     }
 
     /**
-     * Internal method to get bytes in decryption mode
-     * @return the decrypted bytes
+     * Dereferences the input and returns it as a stream. The CipherValue of an EncryptedType
+     * loaded from a DOM element is decoded directly from the Text nodes of the element, and the
+     * stream of a CipherReference which resolves to an octet stream is returned as is.
+     *
      * @throws XMLEncryptionException
+     * @return The encrypted octets.
      */
-    private byte[] getDecryptBytes() throws XMLEncryptionException {
-        String base64EncodedEncryptedOctets = null;
-
+    public InputStream getInputStream() throws XMLEncryptionException {
         if (cipherData.getDataType() == CipherData.REFERENCE_TYPE) {
-            // Fun time!
-            LOG.debug("Found a reference type CipherData");
-            CipherReference cr = cipherData.getCipherReference();
+            XMLSignatureInput input = resolveCipherReference();
+            try {
+                if (input.isOctetStream()) {
+                    InputStream is = input.getOctetStream();
+                    if (is != null) {
+                        return is;
+                    }
+                }
+                return new ByteArrayInputStream(input.getBytes());
+            } catch (IOException | CanonicalizationException ex) {
+                throw new XMLEncryptionException(ex);
+            }
+        } else if (cipherData.getDataType() == CipherData.VALUE_TYPE) {
+            Element cipherValueElement = XMLCipher.getCipherValueElement(cipherData.getCipherValue());
+            if (cipherValueElement != null) {
+                return new Base64TextInputStream(cipherValueElement);
+            }
+        }
+        return new ByteArrayInputStream(getDecryptBytes());
+    }
 
-            // Need to wrap the uri in an Attribute node so that we can
-            // Pass to the resource resolvers
+    /**
+     * Resolves the CipherReference and applies its Transforms.
+     * @return the referenced data
+     * @throws XMLEncryptionException
+     */
+    private XMLSignatureInput resolveCipherReference() throws XMLEncryptionException {
+        LOG.debug("Found a reference type CipherData");
+        CipherReference cr = cipherData.getCipherReference();
+
+        // Need to wrap the uri in an Attribute node so that we can
+        // Pass to the resource resolvers
+
+        Attr uriAttr = cr.getURIAsAttr();
+        XMLSignatureInput input = null;
+
+        try {
+            ResourceResolverContext resolverContext =
+                new ResourceResolverContext(uriAttr, null, secureValidation);
+            input = ResourceResolver.resolve(resolverContext);
+        } catch (ResourceResolverException ex) {
+            throw new XMLEncryptionException(ex);
+        }
 
-            Attr uriAttr = cr.getURIAsAttr();
-            XMLSignatureInput input = null;
+        if (input != null) {
+            LOG.debug("Managed to resolve URI \"{}\"", cr.getURI());
+        } else {
+            LOG.debug("Failed to resolve URI \"{}\"", cr.getURI());
+        }
 
+        // Lets see if there are any transforms
+        Transforms transforms = cr.getTransforms();
+        if (transforms != null) {
+            LOG.debug("Have transforms in cipher reference");
             try {
-                ResourceResolverContext resolverContext =
-                    new ResourceResolverContext(uriAttr, null, secureValidation);
-                input = ResourceResolver.resolve(resolverContext);
-            } catch (ResourceResolverException ex) {
+                org.apache.xml.security.transforms.Transforms dsTransforms =
+                    transforms.getDSTransforms();
+                dsTransforms.setSecureValidation(secureValidation);
+                input = dsTransforms.performTransforms(input);
+            } catch (TransformationException ex) {
                 throw new XMLEncryptionException(ex);
             }
+        }
+        return input;
+    }
 
-            if (input != null) {
-                LOG.debug("Managed to resolve URI \"{}\"", cr.getURI());
-            } else {
-                LOG.debug("Failed to resolve URI \"{}\"", cr.getURI());
-            }
-
-            // Lets see if there are any transforms
-            Transforms transforms = cr.getTransforms();
-            if (transforms != null) {
-                LOG.debug("Have transforms in cipher reference");
-                try {
-                    org.apache.xml.security.transforms.Transforms dsTransforms =
-                        transforms.getDSTransforms();
-                    dsTransforms.setSecureValidation(secureValidation);
-                    input = dsTransforms.performTransforms(input);
-                } catch (TransformationException ex) {
-                    throw new XMLEncryptionException(ex);
-                }
-            }
+    /**
+     * Internal method to get bytes in decryption mode
+     * @return the decrypted bytes
+     * @throws XMLEncryptionException
+     */
+    private byte[] getDecryptBytes() throws XMLEncryptionException {
+        String base64EncodedEncryptedOctets = null;
 
+        if (cipherData.getDataType() == CipherData.REFERENCE_TYPE) {
+            // Fun time!
+            XMLSignatureInput input = resolveCipherReference();
             try {
                 return input.getBytes();
             } catch (IOException | CanonicalizationException ex) {
@@ -148,6 +195,17 @@ public class XMLCipherInput {
 
             // retrieve the cipher text
         } else if (cipherData.getDataType() == CipherData.VALUE_TYPE) {
+            Element cipherValueElement = XMLCipher.getCipherValueElement(cipherData.getCipherValue());
+            if (cipherValueElement != null) {
+                long start = InstrumentationSupport.start(Phase.BASE64);
+                try (InputStream is = new Base64TextInputStream(cipherValueElement)) {
+                    byte[] encryptedOctets = JavaUtils.getBytesFromStream(is);
+                    InstrumentationSupport.end(Phase.BASE64, null, start, encryptedOctets.length);
+                    return encryptedOctets;
+                } catch (IOException ex) {
+                    throw new XMLEncryptionException(ex);
+                }
+            }
             base64EncodedEncryptedOctets = cipherData.getCipherValue().getValue();
         } else {
             throw new XMLEncryptionException("CipherData.getDataType() returned unexpected value");
@@ -155,6 +213,9 @@ public class XMLCipherInput {
 
         LOG.debug("Encrypted octets:\n{}", base64EncodedEncryptedOctets);
 
-        return XMLUtils.decode(base64EncodedEncryptedOctets);
+        long start = InstrumentationSupport.start(Phase.BASE64);
+        byte[] encryptedOctets = XMLUtils.decode(base64EncodedEncryptedOctets);
+        InstrumentationSupport.end(Phase.BASE64, null, start, encryptedOctets.length);
+        return encryptedOctets;
     }
 }
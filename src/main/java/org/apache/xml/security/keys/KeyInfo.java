@@ -50,6 +50,8 @@ import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.ElementProxy;
 import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
@@ -819,6 +821,15 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public PublicKey getPublicKey() throws KeyResolverException {
+        long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
+        try {
+            return resolvePublicKey();
+        } finally {
+            InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
+        }
+    }
+
+    private PublicKey resolvePublicKey() throws KeyResolverException {
         PublicKey pk = this.getPublicKeyFromInternalResolvers();
 
         if (pk != null) {
@@ -909,6 +920,15 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public X509Certificate getX509Certificate() throws KeyResolverException {
+        long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
+        try {
+            return resolveX509Certificate();
+        } finally {
+            InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
+        }
+    }
+
+    private X509Certificate resolveX509Certificate() throws KeyResolverException {
         // First search using the individual resolvers from the user
         X509Certificate cert = this.getX509CertificateFromInternalResolvers();
 
@@ -1009,6 +1029,15 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public SecretKey getSecretKey() throws KeyResolverException {
+        long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
+        try {
+            return resolveSecretKey();
+        } finally {
+            InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
+        }
+    }
+
+    private SecretKey resolveSecretKey() throws KeyResolverException {
         SecretKey sk = this.getSecretKeyFromInternalResolvers();
 
         if (sk != null) {
@@ -1100,6 +1129,15 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public PrivateKey getPrivateKey() throws KeyResolverException {
+        long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
+        try {
+            return resolvePrivateKey();
+        } finally {
+            InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
+        }
+    }
+
+    private PrivateKey resolvePrivateKey() throws KeyResolverException {
         PrivateKey pk = this.getPrivateKeyFromInternalResolvers();
 
         if (pk != null) {
@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.keys.content.x509;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivilegedAction;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xml.security.utils.InstrumentationSupport;
+
+/**
+ * A cache of parsed X.509 certificates, to avoid decoding the same certificate again when it is
+ * received in the KeyInfo of many messages, e.g. the certificate of a partner which signs every
+ * request.
+ *
+ * Entries are keyed by a SHA-256 digest of the encoded certificate. The parsed certificates (and
+ * their public keys) are immutable, so a certificate is shared by all callers. When the cache is
+ * full the oldest entry is evicted.
+ *
+ * The default cache is used by XMLX509Certificate, RetrievalMethodResolver, the JSR-105 X509Data and
+ * the StAX SecurityTokenFactory. Its size is set with the
+ * "org.apache.xml.security.certificateCacheSize" system property (default 256), a size of 0
+ * disables it. It can be replaced with {@link #setDefault}.
+ *
+ * This class is thread-safe.
+ */
+public final class X509CertificateCache {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(X509CertificateCache.class);
+
+    private static final String MAX_ENTRIES_PROPERTY = "org.apache.xml.security.certificateCacheSize";
+
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static volatile X509CertificateCache defaultCache;
+
+    static {
+        int maxEntries = getDefaultMaxEntries();
+        if (maxEntries > 0) {
+            defaultCache = new X509CertificateCache(maxEntries);
+        }
+    }
+
+    private static int getDefaultMaxEntries() {
+        String value =
+            AccessController.doPrivileged(
+                (PrivilegedAction<String>) () -> System.getProperty(MAX_ENTRIES_PROPERTY));
+        if (value == null) {
+            return DEFAULT_MAX_ENTRIES;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            LOG.warn("Invalid value \"{}\" of {}, using the default cache size of {}",
+                     value, MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES);
+            return DEFAULT_MAX_ENTRIES;
+        }
+    }
+
+    private final int maxEntries;
+    private final ConcurrentMap<CacheKey, X509Certificate> entries = new ConcurrentHashMap<>();
+    private final Queue<CacheKey> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of certificates held
+     */
+    public X509CertificateCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the default cache or null if it is disabled
+     */
+    public static X509CertificateCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * @param cache the default cache, or null to disable caching
+     */
+    public static void setDefault(X509CertificateCache cache) {
+        defaultCache = cache;
+    }
+
+    /**
+     * Parses an encoded certificate, using the default cache if it is enabled.
+     *
+     * @param encoded the DER (or PEM) encoded certificate
+     * @return the certificate
+     * @throws CertificateException if the certificate can't be parsed
+     */
+    public static X509Certificate getCertificate(byte[] encoded) throws CertificateException {
+        X509CertificateCache cache = defaultCache;
+        return cache != null ? cache.get(encoded) : parse(encoded);
+    }
+
+    /**
+     * @param encoded the DER (or PEM) encoded certificate
+     * @return the cached or newly parsed certificate
+     * @throws CertificateException if the certificate can't be parsed
+     */
+    public X509Certificate get(byte[] encoded) throws CertificateException {
+        CacheKey key = new CacheKey(digest(encoded));
+        X509Certificate cert = entries.get(key);
+        InstrumentationSupport.recordCacheAccess("X509CertificateCache", cert != null);
+        if (cert != null) {
+            hitCount.incrementAndGet();
+            return cert;
+        }
+        missCount.incrementAndGet();
+
+        cert = parse(encoded);
+        X509Certificate existing = entries.putIfAbsent(key, cert);
+        if (existing != null) {
+            return existing;
+        }
+        insertionOrder.add(key);
+        while (entries.size() > maxEntries) {
+            CacheKey eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            if (entries.remove(eldest) != null) {
+                evictionCount.incrementAndGet();
+            }
+        }
+        return cert;
+    }
+
+    private static X509Certificate parse(byte[] encoded) throws CertificateException {
+        try (InputStream is = new ByteArrayInputStream(encoded)) {
+            CertificateFactory certFact = CertificateFactory.getInstance(XMLX509Certificate.JCA_CERT_ID);
+            return (X509Certificate) certFact.generateCertificate(is);
+        } catch (IOException ex) {
+            throw new CertificateException(ex);
+        }
+    }
+
+    private static byte[] digest(byte[] encoded) throws CertificateException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(encoded);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new CertificateException(ex);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of certificates removed because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+    }
+
+    private static final class CacheKey {
+        private final byte[] digest;
+        private final int hashCode;
+
+        CacheKey(byte[] digest) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CacheKey && Arrays.equals(digest, ((CacheKey) obj).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.util.List;
 import javax.crypto.SecretKey;
 
 import org.apache.xml.security.encryption.EncryptedKey;
+import org.apache.xml.security.encryption.UnwrappedKeyCache;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.keys.keyresolver.KeyResolverSpi;
@@ -56,6 +57,7 @@ public class EncryptedKeyResolver extends KeyResolverSpi {
     private final Key kek;
     private final String algorithm;
     private final List<KeyResolverSpi> internalKeyResolvers;
+    private final UnwrappedKeyCache unwrappedKeyCache;
 
     /**
      * Constructor for use when a KEK needs to be derived from a KeyInfo
@@ -74,7 +76,20 @@ public class EncryptedKeyResolver extends KeyResolverSpi {
      * @param internalKeyResolvers
      */
     public EncryptedKeyResolver(String algorithm, Key kek, List<KeyResolverSpi> internalKeyResolvers) {
+        this(algorithm, kek, internalKeyResolvers, null);
+    }
+
+    /**
+     * Constructor used for when a KEK has been set and unwrapped keys are cached
+     * @param algorithm
+     * @param kek
+     * @param internalKeyResolvers
+     * @param unwrappedKeyCache the cache for unwrapped keys, may be null
+     */
+    public EncryptedKeyResolver(String algorithm, Key kek, List<KeyResolverSpi> internalKeyResolvers,
+                                UnwrappedKeyCache unwrappedKeyCache) {
         this.algorithm = algorithm;
+        this.unwrappedKeyCache = unwrappedKeyCache;
         this.kek = kek;
         if (internalKeyResolvers != null) {
             this.internalKeyResolvers = new ArrayList<>(internalKeyResolvers);
@@ -122,6 +137,7 @@ public class EncryptedKeyResolver extends KeyResolverSpi {
         try {
             XMLCipher cipher = XMLCipher.getInstance();
             cipher.init(XMLCipher.UNWRAP_MODE, kek);
+            cipher.setUnwrappedKeyCache(unwrappedKeyCache);
             int size = internalKeyResolvers.size();
             for (int i = 0; i < size; i++) {
                 cipher.registerInternalKeyResolver(internalKeyResolvers.get(i));
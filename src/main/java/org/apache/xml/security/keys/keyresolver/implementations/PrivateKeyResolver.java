@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.keys.keyresolver.implementations;
 
+import java.math.BigInteger;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -39,6 +40,7 @@ import org.apache.xml.security.keys.keyresolver.KeyResolverException;
 import org.apache.xml.security.keys.keyresolver.KeyResolverSpi;
 import org.apache.xml.security.keys.storage.StorageResolver;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.RFC2253Parser;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Element;
 
@@ -213,17 +215,20 @@ public class PrivateKeyResolver extends KeyResolverSpi {
     private PrivateKey resolveX509IssuerSerial(XMLX509IssuerSerial x509Serial) throws KeyStoreException {
         LOG.debug("Can I resolve X509IssuerSerial?");
 
+        String issuerName = x509Serial.getIssuerName();
+        BigInteger serialNumber = x509Serial.getSerialNumber();
         Enumeration<String> aliases = keyStore.aliases();
         while (aliases.hasMoreElements()) {
             String alias = aliases.nextElement();
             if (keyStore.isKeyEntry(alias)) {
 
                 Certificate cert = keyStore.getCertificate(alias);
-                if (cert instanceof X509Certificate) {
-                    XMLX509IssuerSerial certSerial =
-                        new XMLX509IssuerSerial(x509Serial.getDocument(), (X509Certificate) cert);
+                if (cert instanceof X509Certificate
+                    && serialNumber.equals(((X509Certificate) cert).getSerialNumber())) {
+                    String certIssuer =
+                        RFC2253Parser.normalize(((X509Certificate) cert).getIssuerX500Principal().getName());
 
-                    if (certSerial.equals(x509Serial)) {
+                    if (certIssuer.equals(issuerName)) {
                         LOG.debug("match !!! ");
 
                         try {
@@ -249,6 +254,7 @@ public class PrivateKeyResolver extends KeyResolverSpi {
     private PrivateKey resolveX509SubjectName(XMLX509SubjectName x509SubjectName) throws KeyStoreException {
         LOG.debug("Can I resolve X509SubjectName?");
 
+        String subjectName = x509SubjectName.getSubjectName();
         Enumeration<String> aliases = keyStore.aliases();
         while (aliases.hasMoreElements()) {
             String alias = aliases.nextElement();
@@ -256,10 +262,10 @@ public class PrivateKeyResolver extends KeyResolverSpi {
 
                 Certificate cert = keyStore.getCertificate(alias);
                 if (cert instanceof X509Certificate) {
-                    XMLX509SubjectName certSN =
-                        new XMLX509SubjectName(x509SubjectName.getDocument(), (X509Certificate) cert);
+                    String certSN =
+                        RFC2253Parser.normalize(((X509Certificate) cert).getSubjectX500Principal().getName());
 
-                    if (certSN.equals(x509SubjectName)) {
+                    if (certSN.equals(subjectName)) {
                         LOG.debug("match !!! ");
 
                         try {
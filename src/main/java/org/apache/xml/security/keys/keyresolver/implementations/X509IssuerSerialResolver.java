@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.keys.keyresolver.implementations;
 
+import java.math.BigInteger;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
@@ -31,6 +32,7 @@ import org.apache.xml.security.keys.keyresolver.KeyResolverException;
 import org.apache.xml.security.keys.keyresolver.KeyResolverSpi;
 import org.apache.xml.security.keys.storage.StorageResolver;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.RFC2253Parser;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Element;
 
@@ -98,26 +100,39 @@ public class X509IssuerSerialResolver extends KeyResolverSpi {
 
             int noOfISS = x509data.lengthIssuerSerial();
 
+            // Normalize the issuer names once, rather than for every certificate
+            String[] issuerNames = new String[noOfISS];
+            BigInteger[] serialNumbers = new BigInteger[noOfISS];
+            for (int i = 0; i < noOfISS; i++) {
+                XMLX509IssuerSerial xmliss = x509data.itemIssuerSerial(i);
+                issuerNames[i] = xmliss.getIssuerName();
+                serialNumbers[i] = xmliss.getSerialNumber();
+
+                LOG.debug("Found Element Issuer:     {}", issuerNames[i]);
+                LOG.debug("Found Element Serial:     {}", serialNumbers[i]);
+            }
+
             Iterator<Certificate> storageIterator = storage.getIterator();
             while (storageIterator.hasNext()) {
                 X509Certificate cert = (X509Certificate)storageIterator.next();
-                XMLX509IssuerSerial certSerial = new XMLX509IssuerSerial(element.getOwnerDocument(), cert);
+                BigInteger certSerial = cert.getSerialNumber();
+                String certIssuer = null;
 
-                LOG.debug("Found Certificate Issuer: {}", certSerial.getIssuerName());
-                LOG.debug("Found Certificate Serial: {}", certSerial.getSerialNumber().toString());
+                LOG.debug("Found Certificate Serial: {}", certSerial);
 
                 for (int i = 0; i < noOfISS; i++) {
-                    XMLX509IssuerSerial xmliss = x509data.itemIssuerSerial(i);
-
-                    LOG.debug("Found Element Issuer:     {}", xmliss.getIssuerName());
-                    LOG.debug("Found Element Serial:     {}", xmliss.getSerialNumber().toString());
-
-                    if (certSerial.equals(xmliss)) {
-                        LOG.debug("match !!! ");
-                        return cert;
+                    if (certSerial.equals(serialNumbers[i])) {
+                        if (certIssuer == null) {
+                            certIssuer = RFC2253Parser.normalize(cert.getIssuerX500Principal().getName());
+                            LOG.debug("Found Certificate Issuer: {}", certIssuer);
+                        }
+                        if (certIssuer.equals(issuerNames[i])) {
+                            LOG.debug("match !!! ");
+                            return cert;
+                        }
                     }
-                    LOG.debug("no match...");
                 }
+                LOG.debug("no match...");
             }
 
             return null;
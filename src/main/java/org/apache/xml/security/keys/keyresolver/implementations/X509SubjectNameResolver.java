@@ -31,6 +31,7 @@ import org.apache.xml.security.keys.keyresolver.KeyResolverException;
 import org.apache.xml.security.keys.keyresolver.KeyResolverSpi;
 import org.apache.xml.security.keys.storage.StorageResolver;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.RFC2253Parser;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Element;
 
@@ -89,30 +90,29 @@ public class X509SubjectNameResolver extends KeyResolverSpi {
                 throw ex;
             }
 
-            XMLX509SubjectName[] x509childObject = new XMLX509SubjectName[x509childNodes.length];
+            // Normalize the names once, rather than for every certificate
+            String[] subjectNames = new String[x509childNodes.length];
 
             for (int i = 0; i < x509childNodes.length; i++) {
-                x509childObject[i] = new XMLX509SubjectName(x509childNodes[i], baseURI);
+                subjectNames[i] = new XMLX509SubjectName(x509childNodes[i], baseURI).getSubjectName();
+                LOG.debug("Found Element SN:     {}", subjectNames[i]);
             }
 
             Iterator<Certificate> storageIterator = storage.getIterator();
             while (storageIterator.hasNext()) {
                 X509Certificate cert = (X509Certificate)storageIterator.next();
-                XMLX509SubjectName certSN =
-                    new XMLX509SubjectName(element.getOwnerDocument(), cert);
+                String certSN = RFC2253Parser.normalize(cert.getSubjectX500Principal().getName());
 
-                LOG.debug("Found Certificate SN: {}", certSN.getSubjectName());
+                LOG.debug("Found Certificate SN: {}", certSN);
 
-                for (int i = 0; i < x509childObject.length; i++) {
-                    LOG.debug("Found Element SN:     {}", x509childObject[i].getSubjectName());
-
-                    if (certSN.equals(x509childObject[i])) {
+                for (String subjectName : subjectNames) {
+                    if (certSN.equals(subjectName)) {
                         LOG.debug("match !!! ");
 
                         return cert;
                     }
-                    LOG.debug("no match...");
                 }
+                LOG.debug("no match...");
             }
 
             return null;
@@ -32,6 +32,7 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -88,6 +89,7 @@ public class XMLParserImpl implements XMLParser {
 
     private static DocumentBuilder getDocumentBuilder(boolean disallowDocTypeDeclarations, Queue<DocumentBuilder> queue) throws ParserConfigurationException {
         DocumentBuilder db = queue.poll();
+        InstrumentationSupport.recordCacheAccess("XMLParserImpl.documentBuilderPool", db != null);
         if (db == null) {
             db = createDocumentBuilder(disallowDocTypeDeclarations);
         }
@@ -77,6 +77,9 @@ public class Manifest extends SignatureElementProxy {
     /** Field perManifestResolvers */
     private List<ResourceResolverSpi> perManifestResolvers;
 
+    /** Field referenceDigestCache */
+    private ReferenceDigestCache referenceDigestCache;
+
     private boolean secureValidation;
 
     /**
@@ -383,6 +386,7 @@ public class Manifest extends SignatureElementProxy {
 
                         referencedManifest.perManifestResolvers = this.perManifestResolvers;
                         referencedManifest.resolverProperties = this.resolverProperties;
+                        referencedManifest.referenceDigestCache = this.referenceDigestCache;
 
                         boolean referencedManifestValid =
                             referencedManifest.verifyReferences(followManifests);
@@ -482,6 +486,25 @@ public class Manifest extends SignatureElementProxy {
         return perManifestResolvers;
     }
 
+    /**
+     * Set a cache of Reference digest values which is consulted when verifying the References.
+     * The cache is not used by default.
+     *
+     * @param referenceDigestCache the cache or null
+     * @see ReferenceDigestCache
+     */
+    public void setReferenceDigestCache(ReferenceDigestCache referenceDigestCache) {
+        this.referenceDigestCache = referenceDigestCache;
+    }
+
+    /**
+     * Get the cache of Reference digest values
+     * @return the cache or null
+     */
+    public ReferenceDigestCache getReferenceDigestCache() {
+        return referenceDigestCache;
+    }
+
     /**
      * Get the resolver property map
      * @return the resolver property map
@@ -42,6 +42,8 @@ import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.transforms.params.InclusiveNamespaces;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.DigesterOutputStream;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 import org.apache.xml.security.utils.XMLUtils;
@@ -129,6 +131,9 @@ public class Reference extends SignatureElementProxy {
     private Manifest manifest;
     private XMLSignatureInput transformsOutput;
 
+    /** The dereferenced content, if the digest value was taken from the ReferenceDigestCache */
+    private XMLSignatureInput cachedDigestInput;
+
     private Transforms transforms;
 
     private Element digestMethodElem;
@@ -565,6 +570,16 @@ public class Reference extends SignatureElementProxy {
      * @return the transformed output(i.e. what is going to be digested).
      */
     public XMLSignatureInput getTransformsOutput() {
+        if (this.transformsOutput == null && this.cachedDigestInput != null) {
+            // the digest value came from the ReferenceDigestCache, so the transforms
+            // are only performed once their output is requested
+            try {
+                this.transformsOutput = this.getContentsAfterTransformation(cachedDigestInput, null);
+            } catch (XMLSignatureException ex) {
+                LOG.warn("Cannot perform the transforms for URI \"" + this.getURI() + "\"", ex);
+            }
+            this.cachedDigestInput = null;
+        }
         return this.transformsOutput;
     }
 
@@ -691,7 +706,9 @@ public class Reference extends SignatureElementProxy {
      */
     private byte[] calculateDigest(boolean validating)
         throws ReferenceNotInitializedException, XMLSignatureException {
+        long start = InstrumentationSupport.start(Phase.DEREFERENCE);
         XMLSignatureInput input = this.getContentsBeforeTransformation();
+        InstrumentationSupport.end(Phase.DEREFERENCE, getURI(), start, -1);
         if (input.isPreCalculatedDigest()) {
             return getPreCalculatedDigest(input);
         }
@@ -699,8 +716,31 @@ public class Reference extends SignatureElementProxy {
         cacheDereferencedElement(input);
 
         MessageDigestAlgorithm mda = this.getMessageDigestAlgorithm();
+
+        this.transformsOutput = null;
+        this.cachedDigestInput = null;
+        ReferenceDigestCache digestCache = manifest.getReferenceDigestCache();
+        Object digestCacheKey = null;
+        if (validating && digestCache != null && digestCache.isEnabled(secureValidation)) {
+            try {
+                digestCacheKey = digestCache.createKey(input,
+                                                       transforms == null ? null : transforms.getElement(),
+                                                       mda.getAlgorithmURI());
+                byte[] digestValue = digestCacheKey == null ? null : digestCache.get(digestCacheKey);
+                if (digestValue != null) {
+                    LOG.debug("Using cached digest value for URI \"{}\"", this.getURI());
+                    // only same-document content is cached, so the input can be transformed later on
+                    this.cachedDigestInput = input;
+                    return digestValue;
+                }
+            } catch (XMLSecurityException ex) {
+                throw new ReferenceNotInitializedException(ex);
+            }
+        }
+
         mda.reset();
 
+        start = InstrumentationSupport.start(Phase.DIGEST);
         try (DigesterOutputStream diOs = new DigesterOutputStream(mda);
             OutputStream os = new UnsyncBufferedOutputStream(diOs)) {
 
@@ -718,6 +758,10 @@ public class Reference extends SignatureElementProxy {
                 }
                 transforms.addTransform(Transforms.TRANSFORM_C14N11_OMIT_COMMENTS);
                 output.updateOutputStream(os, true);
+            } else if (output.isFile()) {
+                // digest the file directly instead of copying it through the buffer
+                os.flush();
+                output.updateOutputStream(diOs);
             } else {
                 output.updateOutputStream(os);
             }
@@ -730,7 +774,12 @@ public class Reference extends SignatureElementProxy {
             //this.getReferencedBytes(diOs);
             //mda.update(data);
 
-            return diOs.getDigestValue();
+            byte[] digestValue = diOs.getDigestValue();
+            InstrumentationSupport.end(Phase.DIGEST, mda.getAlgorithmURI(), start, diOs.getByteCount());
+            if (digestCacheKey != null) {
+                digestCache.put(digestCacheKey, digestValue);
+            }
+            return digestValue;
         } catch (XMLSecurityException | IOException ex) {
             throw new ReferenceNotInitializedException(ex);
         }
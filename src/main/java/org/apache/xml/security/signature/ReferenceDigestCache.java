@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.signature;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.InstrumentationSupport;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A bounded cache of Reference digest values, to be used for one verification session in which
+ * several signatures reference the same content with the same transforms and digest algorithm,
+ * e.g. counter-signatures or signatures for multiple recipients.
+ *
+ * Entries are keyed by the identity of the dereferenced content (the DOM node of a same-document
+ * reference), the canonical form of the ds:Transforms element and the digest algorithm. The document
+ * is assumed not to change while the cache is in use, so a cache should not outlive the documents it
+ * was filled from. External resources are never cached, as a URI says nothing about whether the
+ * resource behind it has changed.
+ *
+ * The cache is never used unless it is explicitly set on an
+ * {@link XMLSignature} / {@link Manifest}, or via the
+ * "org.apache.jcp.xml.dsig.referenceDigestCache" property of a JSR-105 XMLValidateContext.
+ * In addition it is ignored when secure validation is enabled, unless
+ * {@link #setSecureValidationAllowed(boolean)} was called with true.
+ *
+ * This class is thread-safe.
+ */
+public final class ReferenceDigestCache {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ReferenceDigestCache.class);
+
+    /**
+     * The transforms whose result depends on nothing but the input. For all other transforms
+     * (XPath, XSLT, enveloped signature...) the result may depend on the position of the
+     * ds:Transforms element itself, so it becomes part of the key.
+     */
+    private static final Set<String> CONTEXT_FREE_TRANSFORMS = new HashSet<>(Arrays.asList(
+        Transforms.TRANSFORM_C14N_OMIT_COMMENTS,
+        Transforms.TRANSFORM_C14N_WITH_COMMENTS,
+        Transforms.TRANSFORM_C14N11_OMIT_COMMENTS,
+        Transforms.TRANSFORM_C14N11_WITH_COMMENTS,
+        Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS,
+        Transforms.TRANSFORM_C14N_EXCL_WITH_COMMENTS,
+        Transforms.TRANSFORM_BASE64_DECODE
+    ));
+
+    private final int maxEntries;
+    private final Map<Object, byte[]> entries;
+    private boolean secureValidationAllowed;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxEntries the maximum number of digest values held, the least recently used
+     * entry is evicted first
+     */
+    public ReferenceDigestCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Object, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, byte[]> eldest) {
+                return size() > ReferenceDigestCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param secureValidationAllowed whether the cache is also used when secure validation is enabled
+     */
+    public synchronized void setSecureValidationAllowed(boolean secureValidationAllowed) {
+        this.secureValidationAllowed = secureValidationAllowed;
+    }
+
+    public synchronized boolean isSecureValidationAllowed() {
+        return secureValidationAllowed;
+    }
+
+    /**
+     * @param secureValidation whether secure validation is enabled for the Reference
+     * @return whether the cache may be consulted
+     */
+    public synchronized boolean isEnabled(boolean secureValidation) {
+        if (secureValidation && !secureValidationAllowed) {
+            LOG.debug("Reference digest cache is not used as secure validation is enabled");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the cache key for the given dereferenced content.
+     *
+     * @param input the dereferenced content of the Reference
+     * @param transformsElement the ds:Transforms element of the Reference, may be null
+     * @param digestAlgorithm the digest algorithm URI
+     * @return the key or null if the content can't be cached, i.e. it is not a same-document subtree
+     * @throws XMLSecurityException
+     */
+    public Object createKey(XMLSignatureInput input, Element transformsElement, String digestAlgorithm)
+        throws XMLSecurityException {
+        if (input.isElement()) {
+            return createKey(input.getSubNode(), input.getExcludeNode(), input.isExcludeComments(),
+                             transformsElement, digestAlgorithm);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the cache key for a dereferenced DOM subtree.
+     *
+     * @param root the root of the subtree
+     * @param excludeNode a node excluded from the subtree, may be null
+     * @param excludeComments whether comments are excluded
+     * @param transformsElement the ds:Transforms element of the Reference, may be null
+     * @param digestAlgorithm the digest algorithm URI
+     * @return the key
+     * @throws XMLSecurityException
+     */
+    public Object createKey(Node root, Node excludeNode, boolean excludeComments,
+                            Element transformsElement, String digestAlgorithm)
+        throws XMLSecurityException {
+        return new ReferenceKey(new NodeContent(root, excludeNode, excludeComments),
+                                transformsElement, digestAlgorithm);
+    }
+
+    /**
+     * @param key a key created by one of the createKey methods
+     * @return a copy of the cached digest value or null
+     */
+    public synchronized byte[] get(Object key) {
+        byte[] digestValue = entries.get(key);
+        InstrumentationSupport.recordCacheAccess("ReferenceDigestCache", digestValue != null);
+        if (digestValue == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return digestValue.clone();
+    }
+
+    /**
+     * @param key a key created by one of the createKey methods
+     * @param digestValue the calculated digest value
+     */
+    public synchronized void put(Object key, byte[] digestValue) {
+        entries.put(key, digestValue.clone());
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class NodeContent {
+        private final Node root;
+        private final Node excludeNode;
+        private final boolean excludeComments;
+
+        NodeContent(Node root, Node excludeNode, boolean excludeComments) {
+            this.root = root;
+            this.excludeNode = excludeNode;
+            this.excludeComments = excludeComments;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeContent)) {
+                return false;
+            }
+            NodeContent other = (NodeContent) obj;
+            return root == other.root && excludeNode == other.excludeNode
+                && excludeComments == other.excludeComments;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(root) + System.identityHashCode(excludeNode)
+                + (excludeComments ? 1 : 0);
+        }
+    }
+
+    private static final class ReferenceKey {
+        private final Object content;
+        private final String transforms;
+        private final Element transformsContext;
+        private final String digestAlgorithm;
+
+        ReferenceKey(Object content, Element transformsElement, String digestAlgorithm)
+            throws XMLSecurityException {
+            this.content = content;
+            this.digestAlgorithm = digestAlgorithm;
+            if (transformsElement == null) {
+                this.transforms = "";
+                this.transformsContext = null;
+            } else {
+                UnsyncByteArrayOutputStream os = new UnsyncByteArrayOutputStream();
+                Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS)
+                    .canonicalizeSubtree(transformsElement, os);
+                this.transforms = new String(os.toByteArray(), StandardCharsets.UTF_8);
+                this.transformsContext = isContextFree(transformsElement) ? null : transformsElement;
+            }
+        }
+
+        private static boolean isContextFree(Element transformsElement) {
+            for (Element transform
+                : XMLUtils.selectDsNodes(transformsElement.getFirstChild(), Constants._TAG_TRANSFORM)) {
+                String algorithm = transform.getAttributeNS(null, Constants._ATT_ALGORITHM);
+                if (!CONTEXT_FREE_TRANSFORMS.contains(algorithm)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ReferenceKey)) {
+                return false;
+            }
+            ReferenceKey other = (ReferenceKey) obj;
+            return content.equals(other.content) && transforms.equals(other.transforms)
+                && transformsContext == other.transformsContext
+                && Objects.equals(digestAlgorithm, other.digestAlgorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = content.hashCode();
+            result = 31 * result + transforms.hashCode();
+            result = 31 * result + System.identityHashCode(transformsContext);
+            return 31 * result + Objects.hashCode(digestAlgorithm);
+        }
+    }
+}
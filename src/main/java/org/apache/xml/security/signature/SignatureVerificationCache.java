@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.signature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.xml.security.utils.InstrumentationSupport;
+
+/**
+ * A cache of successful SignatureValue verifications, to avoid repeating the public key operation
+ * when a byte-identical SignedInfo is verified again with the same key, e.g. a signed assertion that
+ * is presented to many services.
+ *
+ * Entries are keyed by a SHA-256 digest over the signature algorithm, the canonicalized SignedInfo,
+ * the SignatureValue and the encoded verification key. Only the SignatureValue check is cached: the
+ * References are always dereferenced and digested again, as the signed content is not part of the
+ * key. Only verifications with a {@link PublicKey} are cached, as HMAC verification is cheap and the
+ * encoding of a secret key should not be processed for a lookup. Failed verifications are never cached.
+ *
+ * The cache is never used unless it is explicitly set on an {@link XMLSignature}, or via the
+ * "org.apache.jcp.xml.dsig.signatureVerificationCache" property of a JSR-105 XMLValidateContext.
+ *
+ * This class is thread-safe.
+ */
+public final class SignatureVerificationCache {
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Map<Object, Long> entries;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxEntries the maximum number of verifications held, the least recently used
+     * entry is evicted first
+     * @param timeToLive the time in milliseconds a verification is reused
+     */
+    public SignatureVerificationCache(int maxEntries, long timeToLive) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be > 0");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<Object, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Long> eldest) {
+                return size() > SignatureVerificationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache key for a SignatureValue check.
+     *
+     * @param signatureAlgorithm the URI of the signature algorithm
+     * @param canonicalizedSignedInfo the canonicalized SignedInfo
+     * @param signatureValue the SignatureValue octets
+     * @param key the verification key
+     * @return the key or null if the verification can't be cached
+     * @throws XMLSignatureException
+     */
+    public Object createKey(String signatureAlgorithm, byte[] canonicalizedSignedInfo,
+                            byte[] signatureValue, Key key) throws XMLSignatureException {
+        if (!(key instanceof PublicKey) || key.getEncoded() == null
+            || signatureAlgorithm == null || canonicalizedSignedInfo == null || signatureValue == null) {
+            return null;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            update(md, signatureAlgorithm.getBytes(StandardCharsets.UTF_8));
+            update(md, canonicalizedSignedInfo);
+            update(md, signatureValue);
+            update(md, key.getAlgorithm().getBytes(StandardCharsets.UTF_8));
+            update(md, key.getEncoded());
+            return new CacheKey(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new XMLSignatureException(e);
+        }
+    }
+
+    private static void update(MessageDigest md, byte[] value) {
+        int length = value.length;
+        md.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        md.update(value);
+    }
+
+    /**
+     * @param key a key created by {@link #createKey}
+     * @return whether the signature was verified before and the verification has not expired
+     */
+    public synchronized boolean isVerified(Object key) {
+        Long expires = entries.get(key);
+        if (expires != null && expires > System.currentTimeMillis()) {
+            InstrumentationSupport.recordCacheAccess("SignatureVerificationCache", true);
+            hitCount++;
+            return true;
+        }
+        InstrumentationSupport.recordCacheAccess("SignatureVerificationCache", false);
+        if (expires != null) {
+            entries.remove(key);
+        }
+        missCount++;
+        return false;
+    }
+
+    /**
+     * @param key a key created by {@link #createKey} for a successfully verified signature
+     */
+    public synchronized void putVerified(Object key) {
+        entries.put(key, System.currentTimeMillis() + timeToLive);
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class CacheKey {
+        private final byte[] digest;
+        private final int hashCode;
+
+        CacheKey(byte[] digest) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CacheKey && Arrays.equals(digest, ((CacheKey) obj).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
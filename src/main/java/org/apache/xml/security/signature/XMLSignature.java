@@ -36,6 +36,8 @@ import org.apache.xml.security.keys.content.X509Data;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.I18n;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.SignerOutputStream;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
@@ -217,6 +219,8 @@ public final class XMLSignature extends SignatureElementProxy {
      */
     private boolean followManifestsDuringValidation = false;
 
+    private SignatureVerificationCache signatureVerificationCache;
+
     private Element signatureValueElement;
 
     private static final int MODE_SIGN = 0;
@@ -642,8 +646,11 @@ public final class XMLSignature extends SignatureElementProxy {
      * @throws XMLSignatureException If there is no content
      */
     public byte[] getSignatureValue() throws XMLSignatureException {
+        long start = InstrumentationSupport.start(Phase.BASE64);
         String content = XMLUtils.getFullTextChildrenFromNode(signatureValueElement);
-        return XMLUtils.decode(content);
+        byte[] signatureValue = XMLUtils.decode(content);
+        InstrumentationSupport.end(Phase.BASE64, null, start, signatureValue.length);
+        return signatureValue;
     }
 
     /**
@@ -782,6 +789,7 @@ public final class XMLSignature extends SignatureElementProxy {
             si.generateDigestValues();
 
             // initialize SignatureAlgorithm for signing
+            long start = InstrumentationSupport.start(Phase.SIGNATURE);
             sa.initSign(signingKey);
 
             // get the canonicalized bytes from SignedInfo
@@ -789,6 +797,7 @@ public final class XMLSignature extends SignatureElementProxy {
 
             // set them on the SignatureValue element
             this.setSignatureValueElement(sa.sign());
+            InstrumentationSupport.end(Phase.SIGNATURE, sa.getAlgorithmURI(), start, -1);
         } catch (XMLSignatureException ex) {
             throw ex;
         } catch (XMLSecurityException | IOException ex) {
@@ -805,6 +814,26 @@ public final class XMLSignature extends SignatureElementProxy {
         this.getSignedInfo().addResourceResolver(resolver);
     }
 
+    /**
+     * Sets a {@link ReferenceDigestCache} to reuse the digest values of References to the same
+     * content across the signatures of one verification session.
+     *
+     * @param referenceDigestCache the cache or null
+     */
+    public void setReferenceDigestCache(ReferenceDigestCache referenceDigestCache) {
+        this.getSignedInfo().setReferenceDigestCache(referenceDigestCache);
+    }
+
+    /**
+     * Sets a {@link SignatureVerificationCache} to reuse the result of a previous
+     * SignatureValue check of a byte-identical SignedInfo with the same public key.
+     *
+     * @param signatureVerificationCache the cache or null
+     */
+    public void setSignatureVerificationCache(SignatureVerificationCache signatureVerificationCache) {
+        this.signatureVerificationCache = signatureVerificationCache;
+    }
+
     /**
      * Extracts the public key from the certificate and verifies if the signature
      * is valid by re-digesting all References, comparing those against the
@@ -860,7 +889,18 @@ public final class XMLSignature extends SignatureElementProxy {
             LOG.debug("jceSigProvider = {}", sa.getJCEProviderName());
             LOG.debug("PublicKey = {}", pk);
 
+            Object verificationCacheKey = null;
+            if (signatureVerificationCache != null) {
+                verificationCacheKey = signatureVerificationCache.createKey(
+                    sa.getAlgorithmURI(), si.getCanonicalizedOctetStream(), this.getSignatureValue(), pk);
+                if (verificationCacheKey != null && signatureVerificationCache.isVerified(verificationCacheKey)) {
+                    LOG.debug("SignatureValue was verified before, only verifying the References");
+                    return si.verify(this.followManifestsDuringValidation);
+                }
+            }
+
             byte[] sigBytes = null;
+            long start = InstrumentationSupport.start(Phase.SIGNATURE);
             try (SignerOutputStream so = new SignerOutputStream(sa);
                 OutputStream bos = new UnsyncBufferedOutputStream(so)) {
 
@@ -879,15 +919,20 @@ public final class XMLSignature extends SignatureElementProxy {
 
             // have SignatureAlgorithm sign the input bytes and compare them to
             // the bytes that were stored in the signature.
-            if (!sa.verify(sigBytes)) {
+            boolean verified = sa.verify(sigBytes);
+            InstrumentationSupport.end(Phase.SIGNATURE, sa.getAlgorithmURI(), start, -1);
+            if (!verified) {
                 LOG.warn("Signature verification failed.");
                 return false;
             }
+            if (verificationCacheKey != null) {
+                signatureVerificationCache.putVerified(verificationCacheKey);
+            }
 
             return si.verify(this.followManifestsDuringValidation);
         } catch (XMLSignatureException ex) {
             throw ex;
-        } catch (XMLSecurityException ex) {
+        } catch (XMLSecurityException | IOException ex) {
             throw new XMLSignatureException(ex);
         }
     }
@@ -23,10 +23,18 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.implementations.Canonicalizer11_OmitComments;
@@ -45,6 +53,13 @@ import org.w3c.dom.Node;
  * $todo$ check whether an XMLSignatureInput can be _both_, octet stream _and_ node set?
  */
 public class XMLSignatureInput {
+
+    /** the size of the direct buffers the octets of a file are read into to digest them */
+    private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
+    /** Direct buffers used to pass the octets of a file to a WritableByteChannel */
+    private static final Queue<ByteBuffer> CHANNEL_BUFFER_POOL = new ArrayBlockingQueue<>(16);
+
     /*
      * The XMLSignature Input can be either:
      *   A byteArray like with/or without InputStream.
@@ -59,6 +74,10 @@ public class XMLSignatureInput {
      * method, so we read it in completely and work on our Proxy.
      */
     private InputStream inputOctetStreamProxy;
+    /**
+     * The channel of the octet stream, if the octets are read from a file
+     */
+    private FileChannel octetChannel;
     /**
      * The original NodeSet for this XMLSignatureInput
      */
@@ -135,6 +154,21 @@ public class XMLSignatureInput {
         this.inputOctetStreamProxy = inputOctetStream;
     }
 
+    /**
+     * Constructs a <code>XMLSignatureInput</code> from the octets of a file. The
+     * file is read like an octet stream, but when nothing has been read from the
+     * stream yet, {@link #updateOutputStream} reads the file into a direct buffer
+     * which is passed to an OutputStream which is a {@link WritableByteChannel},
+     * e.g. a DigesterOutputStream, instead of copying the octets into a byte array.
+     *
+     * @param file the file
+     * @throws IOException if the file can't be opened
+     */
+    public XMLSignatureInput(Path file) throws IOException {
+        this.octetChannel = FileChannel.open(file, StandardOpenOption.READ);
+        this.inputOctetStreamProxy = Channels.newInputStream(octetChannel);
+    }
+
     /**
      * Construct a XMLSignatureInput from a subtree rooted by rootNode. This
      * method included the node and <I>all</I> his descendants in the output.
@@ -309,6 +343,24 @@ public class XMLSignatureInput {
           && inputNodeSet == null && subNode == null;
     }
 
+    /**
+     * Determines if the object has been set up with a file, from which
+     * nothing has been read yet
+     *
+     * @return true if the octets can be passed to a {@link WritableByteChannel}
+     * directly from the file
+     */
+    public boolean isFile() {
+        if (octetChannel == null || bytes != null || !octetChannel.isOpen()) {
+            return false;
+        }
+        try {
+            return octetChannel.position() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     /**
      * Determines if {@link #setOutputStream} has been called with a
      * non-null OutputStream.
@@ -486,6 +538,8 @@ public class XMLSignatureInput {
         }
         if (bytes != null) {
             diOs.write(bytes);
+        } else if (diOs instanceof WritableByteChannel && isFile()) {
+            updateFromFile((WritableByteChannel) diOs);
         } else if (inputOctetStreamProxy == null) {
             CanonicalizerBase c14nizer = null;
             if (c14n11) {
@@ -508,6 +562,30 @@ public class XMLSignatureInput {
         }
     }
 
+    private void updateFromFile(WritableByteChannel channel) throws IOException {
+        // The file is read rather than mapped into memory, as a mapping is only released
+        // by the garbage collector, and a file which is truncated meanwhile crashes the JVM
+        ByteBuffer buffer = CHANNEL_BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        }
+        try {
+            while (octetChannel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException ex) {
+            inputOctetStreamProxy.close();
+            throw ex;
+        } finally {
+            buffer.clear();
+            CHANNEL_BUFFER_POOL.offer(buffer);
+        }
+    }
+
     /**
      * @param os
      */
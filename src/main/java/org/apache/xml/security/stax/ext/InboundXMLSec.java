@@ -27,6 +27,7 @@ import org.apache.xml.security.stax.impl.XMLSecurityStreamReader;
 import org.apache.xml.security.stax.impl.processor.input.LogInputProcessor;
 import org.apache.xml.security.stax.impl.processor.input.XMLEventReaderInputProcessor;
 import org.apache.xml.security.stax.impl.processor.input.XMLSecurityInputProcessor;
+import org.apache.xml.security.stax.securityEvent.BatchingSecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 
@@ -36,7 +37,6 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -64,9 +64,16 @@ public class InboundXMLSec {
     }
 
     private final XMLSecurityProperties securityProperties;
+    private final InputProcessor[] additionalInputProcessors;
 
+    /**
+     * The configured InputProcessors are captured here once, so an instance can be reused
+     * (also concurrently) for many messages.
+     */
     public InboundXMLSec(XMLSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
+        List<InputProcessor> inputProcessorList = securityProperties.getInputProcessorList();
+        this.additionalInputProcessors = inputProcessorList.toArray(new InputProcessor[inputProcessorList.size()]);
     }
 
     /**
@@ -117,6 +124,11 @@ public class InboundXMLSec {
 
         final InboundSecurityContextImpl inboundSecurityContext = new InboundSecurityContextImpl();
         inboundSecurityContext.putList(SecurityEvent.class, requestSecurityEvents);
+        if (securityEventListener != null && (securityProperties.isSecurityEventBatching()
+            || securityProperties.getSecurityEventExecutor() != null)) {
+            securityEventListener =
+                new BatchingSecurityEventListener(securityEventListener, securityProperties.getSecurityEventExecutor());
+        }
         inboundSecurityContext.addSecurityEventListener(securityEventListener);
 
         inboundSecurityContext.put(XMLSecurityConstants.XMLINPUTFACTORY, xmlInputFactory);
@@ -132,13 +144,8 @@ public class InboundXMLSec {
         InputProcessorChainImpl inputProcessorChain = new InputProcessorChainImpl(inboundSecurityContext, documentContext);
         inputProcessorChain.addProcessor(new XMLEventReaderInputProcessor(securityProperties, xmlStreamReader));
 
-        List<InputProcessor> additionalInputProcessors = securityProperties.getInputProcessorList();
-        if (!additionalInputProcessors.isEmpty()) {
-            Iterator<InputProcessor> inputProcessorIterator = additionalInputProcessors.iterator();
-            while (inputProcessorIterator.hasNext()) {
-                InputProcessor inputProcessor = inputProcessorIterator.next();
-                inputProcessorChain.addProcessor(inputProcessor);
-            }
+        for (InputProcessor inputProcessor : additionalInputProcessors) {
+            inputProcessorChain.addProcessor(inputProcessor);
         }
 
         inputProcessorChain.addProcessor(new XMLSecurityInputProcessor(securityProperties));
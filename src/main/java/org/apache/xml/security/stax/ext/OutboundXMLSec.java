@@ -24,7 +24,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
-import java.util.List;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.KeyGenerator;
 import javax.xml.stream.XMLStreamWriter;
@@ -40,6 +42,7 @@ import org.apache.xml.security.stax.impl.processor.output.XMLEncryptOutputProces
 import org.apache.xml.security.stax.impl.processor.output.XMLSignatureOutputProcessor;
 import org.apache.xml.security.stax.impl.securityToken.GenericOutboundSecurityToken;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.apache.xml.security.stax.securityEvent.BatchingSecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
@@ -54,8 +57,68 @@ public class OutboundXMLSec {
 
     private final XMLSecurityProperties securityProperties;
 
+    private final Map<Object, SecurePart> signatureSecureParts;
+    private final SecurePart signEntireRequestPart;
+    private final Map<Object, SecurePart> encryptionSecureParts;
+    private final SecurePart encryptEntireRequestPart;
+    private final X509Certificate[] encryptionTransportCerts;
+    private final String encryptionKeyAlgorithm;
+    private final int encryptionKeyLength;
+
+    /**
+     * The given configuration is evaluated once here and the result is shared by all
+     * subsequent calls to processOutMessage, so an instance can be reused (also concurrently)
+     * for many messages. Later modifications of the XMLSecurityProperties are not seen.
+     * Note that a SecurePart with secureEntireRequest set gets the name of the first element of
+     * each message assigned, so such a configuration should only be shared between messages
+     * with the same root element.
+     */
     public OutboundXMLSec(XMLSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
+
+        Map<Object, SecurePart> signatureParts = new HashMap<>();
+        SecurePart signEntireRequest = null;
+        for (SecurePart securePart : securityProperties.getSignatureSecureParts()) {
+            if (securePart.getIdToSecure() == null && securePart.getName() != null) {
+                signatureParts.put(securePart.getName(), securePart);
+            } else if (securePart.getIdToSecure() != null) {
+                signatureParts.put(securePart.getIdToSecure(), securePart);
+            } else if (securePart.getExternalReference() != null) {
+                signatureParts.put(securePart.getExternalReference(), securePart);
+            } else if (securePart.isSecureEntireRequest()) {
+                // Special functionality to sign the first element in the request
+                signEntireRequest = securePart;
+            }
+        }
+        this.signatureSecureParts = Collections.unmodifiableMap(signatureParts);
+        this.signEntireRequestPart = signEntireRequest;
+
+        Map<Object, SecurePart> encryptionParts = new HashMap<>();
+        SecurePart encryptEntireRequest = null;
+        for (SecurePart securePart : securityProperties.getEncryptionSecureParts()) {
+            if (securePart.getIdToSecure() == null && securePart.getName() != null) {
+                encryptionParts.put(securePart.getName(), securePart);
+            } else if (securePart.getIdToSecure() != null) {
+                encryptionParts.put(securePart.getIdToSecure(), securePart);
+            } else if (securePart.isSecureEntireRequest()) {
+                // Special functionality to encrypt the first element in the request
+                encryptEntireRequest = securePart;
+            }
+        }
+        this.encryptionSecureParts = Collections.unmodifiableMap(encryptionParts);
+        this.encryptEntireRequestPart = encryptEntireRequest;
+
+        X509Certificate transportCert = securityProperties.getEncryptionUseThisCertificate();
+        this.encryptionTransportCerts = transportCert != null ? new X509Certificate[]{transportCert} : null;
+
+        String symAlgorithm = securityProperties.getEncryptionSymAlgorithm();
+        if (securityProperties.getEncryptionKey() == null && symAlgorithm != null) {
+            this.encryptionKeyAlgorithm = JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(symAlgorithm);
+            this.encryptionKeyLength = JCEAlgorithmMapper.getKeyLengthFromURI(symAlgorithm);
+        } else {
+            this.encryptionKeyAlgorithm = null;
+            this.encryptionKeyLength = 0;
+        }
     }
 
     /**
@@ -97,7 +160,12 @@ public class OutboundXMLSec {
         final OutboundSecurityContextImpl outboundSecurityContext = new OutboundSecurityContextImpl();
 
         if (eventListener != null) {
-            outboundSecurityContext.addSecurityEventListener(eventListener);
+            if (securityProperties.isSecurityEventBatching() || securityProperties.getSecurityEventExecutor() != null) {
+                outboundSecurityContext.addSecurityEventListener(
+                    new BatchingSecurityEventListener(eventListener, securityProperties.getSecurityEventExecutor()));
+            } else {
+                outboundSecurityContext.addSecurityEventListener(eventListener);
+            }
         }
 
         final DocumentContextImpl documentContext = new DocumentContextImpl();
@@ -114,55 +182,22 @@ public class OutboundXMLSec {
                 initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
 
                 configureSignatureKeys(outboundSecurityContext);
-                List<SecurePart> signatureParts = securityProperties.getSignatureSecureParts();
-                for (SecurePart securePart : signatureParts) {
-                    if (securePart.getIdToSecure() == null && securePart.getName() != null) {
-                        outputProcessorChain.getSecurityContext().putAsMap(
-                                XMLSecurityConstants.SIGNATURE_PARTS,
-                                securePart.getName(),
-                                securePart
-                        );
-                    } else if (securePart.getIdToSecure() != null) {
-                        outputProcessorChain.getSecurityContext().putAsMap(
-                                XMLSecurityConstants.SIGNATURE_PARTS,
-                                securePart.getIdToSecure(),
-                                securePart
-                        );
-                    } else if (securePart.getExternalReference() != null) {
-                        outputProcessorChain.getSecurityContext().putAsMap(
-                                XMLSecurityConstants.SIGNATURE_PARTS,
-                                securePart.getExternalReference(),
-                                securePart
-                        );
-                    } else if (securePart.isSecureEntireRequest()) {
-                        // Special functionality to sign the first element in the request
-                        signEntireRequestPart = securePart;
-                    }
+                if (!signatureSecureParts.isEmpty()) {
+                    // the map is modified while streaming, so every message needs its own copy
+                    outboundSecurityContext.put(
+                            XMLSecurityConstants.SIGNATURE_PARTS, new HashMap<>(signatureSecureParts));
                 }
+                signEntireRequestPart = this.signEntireRequestPart;
             } else if (XMLSecurityConstants.ENCRYPTION.equals(action)) {
                 XMLEncryptOutputProcessor encryptOutputProcessor = new XMLEncryptOutputProcessor();
                 initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action);
 
                 configureEncryptionKeys(outboundSecurityContext);
-                List<SecurePart> encryptionParts = securityProperties.getEncryptionSecureParts();
-                for (SecurePart securePart : encryptionParts) {
-                    if (securePart.getIdToSecure() == null && securePart.getName() != null) {
-                        outputProcessorChain.getSecurityContext().putAsMap(
-                                XMLSecurityConstants.ENCRYPTION_PARTS,
-                                securePart.getName(),
-                                securePart
-                        );
-                    } else if (securePart.getIdToSecure() != null) {
-                        outputProcessorChain.getSecurityContext().putAsMap(
-                                XMLSecurityConstants.ENCRYPTION_PARTS,
-                                securePart.getIdToSecure(),
-                                securePart
-                        );
-                    } else if (securePart.isSecureEntireRequest()) {
-                        // Special functionality to encrypt the first element in the request
-                        encryptEntireRequestPart = securePart;
-                    }
+                if (!encryptionSecureParts.isEmpty()) {
+                    outboundSecurityContext.put(
+                            XMLSecurityConstants.ENCRYPTION_PARTS, new HashMap<>(encryptionSecureParts));
                 }
+                encryptEntireRequestPart = this.encryptEntireRequestPart;
             }
         }
         if (output instanceof OutputStream) {
@@ -227,11 +262,7 @@ public class OutboundXMLSec {
     private void configureEncryptionKeys(final OutboundSecurityContextImpl outboundSecurityContext) throws XMLSecurityException {
         // Sort out transport keys / key wrapping keys first.
         Key transportKey = securityProperties.getEncryptionTransportKey();
-        X509Certificate transportCert = securityProperties.getEncryptionUseThisCertificate();
-        X509Certificate[] transportCerts = null;
-        if (transportCert != null) {
-            transportCerts = new X509Certificate[]{transportCert};
-        }
+        X509Certificate[] transportCerts = encryptionTransportCerts;
 
         final OutboundSecurityToken transportSecurityToken =
                 new GenericOutboundSecurityToken(IDGenerator.generateID(null), SecurityTokenConstants.DefaultToken, transportKey, transportCerts);
@@ -239,24 +270,20 @@ public class OutboundXMLSec {
         // Now sort out the session key
         Key key = securityProperties.getEncryptionKey();
         if (key == null) {
-            if (transportCert == null && transportKey == null) {
+            if (transportCerts == null && transportKey == null) {
                 throw new XMLSecurityException("stax.encryption.encryptionKeyMissing");
             }
             // If none is configured then generate one
-            String keyAlgorithm =
-                JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(securityProperties.getEncryptionSymAlgorithm());
             KeyGenerator keyGen;
             try {
-                keyGen = KeyGenerator.getInstance(keyAlgorithm);
+                keyGen = KeyGenerator.getInstance(encryptionKeyAlgorithm);
             } catch (NoSuchAlgorithmException e) {
                 throw new XMLSecurityException(e);
             }
             //the sun JCE provider expects the real key size for 3DES (112 or 168 bit)
             //whereas bouncy castle expects the block size of 128 or 192 bits
-            if (keyAlgorithm.contains("AES")) {
-                int keyLength =
-                    JCEAlgorithmMapper.getKeyLengthFromURI(securityProperties.getEncryptionSymAlgorithm());
-                keyGen.init(keyLength);
+            if (encryptionKeyAlgorithm.contains("AES")) {
+                keyGen.init(encryptionKeyLength);
             }
 
             key = keyGen.generateKey();
@@ -18,12 +18,14 @@
  */
 package org.apache.xml.security.stax.ext;
 
+import org.apache.xml.security.encryption.UnwrappedKeyCache;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 
 import java.security.Key;
 import java.security.cert.X509Certificate;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 import javax.xml.namespace.QName;
 
@@ -54,6 +56,11 @@ public class XMLSecurityProperties {
     private String encryptionKeyName;
 
     private Key decryptionKey;
+    private UnwrappedKeyCache unwrappedKeyCache;
+
+    private boolean securityEventBatching;
+    private Executor securityEventExecutor;
+    private Executor externalReferenceExecutor;
 
     private final List<SecurePart> signatureParts = new LinkedList<>();
     private String signatureAlgorithm;
@@ -100,6 +107,10 @@ public class XMLSecurityProperties {
         this.encryptionTransportKey = xmlSecurityProperties.encryptionTransportKey;
         this.encryptionKeyIdentifier = xmlSecurityProperties.encryptionKeyIdentifier;
         this.decryptionKey = xmlSecurityProperties.decryptionKey;
+        this.unwrappedKeyCache = xmlSecurityProperties.unwrappedKeyCache;
+        this.securityEventBatching = xmlSecurityProperties.securityEventBatching;
+        this.securityEventExecutor = xmlSecurityProperties.securityEventExecutor;
+        this.externalReferenceExecutor = xmlSecurityProperties.externalReferenceExecutor;
         this.signatureParts.addAll(xmlSecurityProperties.signatureParts);
         this.signatureAlgorithm = xmlSecurityProperties.signatureAlgorithm;
         this.signatureDigestAlgorithm = xmlSecurityProperties.signatureDigestAlgorithm;
@@ -233,6 +244,63 @@ public class XMLSecurityProperties {
         return decryptionKey;
     }
 
+    /**
+     * Set the cache for unwrapped EncryptedKeys, which can be shared by many messages.
+     * The default is null (no caching).
+     */
+    public void setUnwrappedKeyCache(UnwrappedKeyCache unwrappedKeyCache) {
+        this.unwrappedKeyCache = unwrappedKeyCache;
+    }
+
+    public UnwrappedKeyCache getUnwrappedKeyCache() {
+        return unwrappedKeyCache;
+    }
+
+    /**
+     * Whether the SecurityEvents of a message are buffered and delivered to the SecurityEventListener
+     * at the end of the document and when the stream is closed, instead of inline for every event.
+     * A rejected event is then reported at these points. The default is false.
+     * @see org.apache.xml.security.stax.securityEvent.BatchingSecurityEventListener
+     */
+    public void setSecurityEventBatching(boolean securityEventBatching) {
+        this.securityEventBatching = securityEventBatching;
+    }
+
+    public boolean isSecurityEventBatching() {
+        return securityEventBatching;
+    }
+
+    /**
+     * Set an Executor to deliver batches of SecurityEvents to the SecurityEventListener off the
+     * processing thread. Setting an Executor enables the batching of SecurityEvents.
+     * The default is null.
+     * @see org.apache.xml.security.stax.securityEvent.BatchingSecurityEventListener
+     */
+    public void setSecurityEventExecutor(Executor securityEventExecutor) {
+        this.securityEventExecutor = securityEventExecutor;
+    }
+
+    public Executor getSecurityEventExecutor() {
+        return securityEventExecutor;
+    }
+
+    /**
+     * Set an Executor to resolve and digest the external (not same document) References of an
+     * inbound Signature concurrently, while the rest of the document is processed. The digest
+     * algorithms of the References are registered before their resources are fetched, the results
+     * are checked, and the other SecurityEvents of the References are registered, at the end of the
+     * document in the order of the References. Outstanding verifications are cancelled if the
+     * processing fails before. The default is null, which verifies the external References one
+     * after another at the end of the document.
+     */
+    public void setExternalReferenceExecutor(Executor externalReferenceExecutor) {
+        this.externalReferenceExecutor = externalReferenceExecutor;
+    }
+
+    public Executor getExternalReferenceExecutor() {
+        return externalReferenceExecutor;
+    }
+
     public void setEncryptionTransportKey(Key encryptionTransportKey) {
         this.encryptionTransportKey = encryptionTransportKey;
     }
@@ -19,17 +19,22 @@
 package org.apache.xml.security.stax.impl;
 
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.securityEvent.BatchingSecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  */
 public class AbstractSecurityContextImpl {
-    @SuppressWarnings("unchecked")
-    private final Map content = Collections.synchronizedMap(new HashMap());
-    private final List<SecurityEventListener> securityEventListeners = new ArrayList<>(2);
+    /** stands in for a null key, which the ConcurrentHashMap doesn't support */
+    private static final Object NULL_KEY = new Object();
+
+    private final Map<Object, Object> content = new ConcurrentHashMap<>();
+    private final List<SecurityEventListener> securityEventListeners = new CopyOnWriteArrayList<>();
 
     public void addSecurityEventListener(SecurityEventListener securityEventListener) {
         if (securityEventListener != null) {
@@ -37,6 +42,8 @@ public class AbstractSecurityContextImpl {
         }
     }
 
+    // The listeners are not required to be thread-safe, so events which are registered
+    // concurrently are still delivered one at a time and in a single order
     public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
         forwardSecurityEvent(securityEvent);
     }
@@ -48,19 +55,40 @@ public class AbstractSecurityContextImpl {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Delivers the SecurityEvents buffered by a {@link BatchingSecurityEventListener}.
+     *
+     * @throws XMLSecurityException if a SecurityEventListener rejected an event
+     */
+    public void flushSecurityEvents() throws XMLSecurityException {
+        for (int i = 0; i < securityEventListeners.size(); i++) {
+            SecurityEventListener securityEventListener = securityEventListeners.get(i);
+            if (securityEventListener instanceof BatchingSecurityEventListener) {
+                ((BatchingSecurityEventListener) securityEventListener).flush();
+            }
+        }
+    }
+
+    private static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
     public <T> void put(String key, T value) {
-        content.put(key, value);
+        if (value == null) {
+            content.remove(maskNull(key));
+        } else {
+            content.put(maskNull(key), value);
+        }
     }
 
     @SuppressWarnings("unchecked")
     public <T> T get(String key) {
-        return (T) content.get(key);
+        return (T) content.get(maskNull(key));
     }
 
     @SuppressWarnings("unchecked")
     public <T> T remove(String key) {
-        return (T) content.remove(key);
+        return (T) content.remove(maskNull(key));
     }
 
     @SuppressWarnings("unchecked")
@@ -68,41 +96,29 @@ public class AbstractSecurityContextImpl {
         if (value == null) {
             return;
         }
-        List<T> entry = (List<T>) content.get(key);
-        if (entry == null) {
-            entry = new ArrayList<>();
-            content.put(key, entry);
-        }
+        List<T> entry = (List<T>) content.computeIfAbsent(maskNull(key), k -> new ArrayList<>());
         entry.addAll(value);
     }
 
     @SuppressWarnings("unchecked")
     public <T> void putAsList(Object key, T value) {
-        List<T> entry = (List<T>) content.get(key);
-        if (entry == null) {
-            entry = new ArrayList<>();
-            content.put(key, entry);
-        }
+        List<T> entry = (List<T>) content.computeIfAbsent(maskNull(key), k -> new ArrayList<>());
         entry.add(value);
     }
 
     @SuppressWarnings("unchecked")
     public <T> List<T> getAsList(Object key) {
-        return (List<T>) content.get(key);
+        return (List<T>) content.get(maskNull(key));
     }
 
     @SuppressWarnings("unchecked")
     public <T, U> void putAsMap(Object key, T mapKey, U mapValue) {
-        Map<T, U> entry = (Map<T, U>) content.get(key);
-        if (entry == null) {
-            entry = new HashMap<>();
-            content.put(key, entry);
-        }
+        Map<T, U> entry = (Map<T, U>) content.computeIfAbsent(maskNull(key), k -> new HashMap<>());
         entry.put(mapKey, mapValue);
     }
 
     @SuppressWarnings("unchecked")
     public <T, U> Map<T, U> getAsMap(Object key) {
-        return (Map<T, U>) content.get(key);
+        return (Map<T, U>) content.get(maskNull(key));
     }
 }
@@ -84,26 +84,12 @@ public class InputProcessorChainImpl implements InputProcessorChain {
     }
 
     @Override
-    public synchronized void addProcessor(InputProcessor newInputProcessor) {
-        int startPhaseIdx = 0;
-        int endPhaseIdx = inputProcessors.size();
-
+    public void addProcessor(InputProcessor newInputProcessor) {
         XMLSecurityConstants.Phase targetPhase = newInputProcessor.getPhase();
 
-        for (int i = inputProcessors.size() - 1; i >= 0; i--) {
-            InputProcessor inputProcessor = inputProcessors.get(i);
-            if (inputProcessor.getPhase().ordinal() > targetPhase.ordinal()) {
-                startPhaseIdx = i + 1;
-                break;
-            }
-        }
-        for (int i = startPhaseIdx; i < inputProcessors.size(); i++) {
-            InputProcessor inputProcessor = inputProcessors.get(i);
-            if (inputProcessor.getPhase().ordinal() < targetPhase.ordinal()) {
-                endPhaseIdx = i;
-                break;
-            }
-        }
+        //the processors are ordered by descending phase, so the phase boundaries can be found by bisection
+        int startPhaseIdx = indexOfFirstPhaseBelow(targetPhase.ordinal() + 1);
+        int endPhaseIdx = indexOfFirstPhaseBelow(targetPhase.ordinal());
 
         //just look for the correct phase and append as last
         if (newInputProcessor.getBeforeProcessors().isEmpty()
@@ -169,13 +155,33 @@ public class InputProcessorChainImpl implements InputProcessorChain {
         }
     }
 
+    /**
+     * @return the index of the first processor whose phase ordinal is lower than the given one
+     */
+    private int indexOfFirstPhaseBelow(int phaseOrdinal) {
+        int low = 0;
+        int high = inputProcessors.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (inputProcessors.get(mid).getPhase().ordinal() < phaseOrdinal) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
     @Override
-    public synchronized void removeProcessor(InputProcessor inputProcessor) {
+    public void removeProcessor(InputProcessor inputProcessor) {
         LOG.debug("Removing processor {} from input chain", inputProcessor.getClass().getName());
-        if (this.inputProcessors.indexOf(inputProcessor) <= curPos) {
+        int idx = this.inputProcessors.indexOf(inputProcessor);
+        if (idx <= curPos) {
             this.curPos--;
         }
-        this.inputProcessors.remove(inputProcessor);
+        if (idx >= 0) {
+            this.inputProcessors.remove(idx);
+        }
     }
 
     @Override
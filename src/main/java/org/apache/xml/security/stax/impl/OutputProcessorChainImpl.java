@@ -88,25 +88,12 @@ public class OutputProcessorChainImpl implements OutputProcessorChain {
 
     @Override
     public void addProcessor(OutputProcessor newOutputProcessor) {
-        int startPhaseIdx = 0;
-        int endPhaseIdx = outputProcessors.size();
-        int idxToInsert = endPhaseIdx;
         XMLSecurityConstants.Phase targetPhase = newOutputProcessor.getPhase();
 
-        for (int i = outputProcessors.size() - 1; i >= 0; i--) {
-            OutputProcessor outputProcessor = outputProcessors.get(i);
-            if (outputProcessor.getPhase().ordinal() < targetPhase.ordinal()) {
-                startPhaseIdx = i + 1;
-                break;
-            }
-        }
-        for (int i = startPhaseIdx; i < outputProcessors.size(); i++) {
-            OutputProcessor outputProcessor = outputProcessors.get(i);
-            if (outputProcessor.getPhase().ordinal() > targetPhase.ordinal()) {
-                endPhaseIdx = i;
-                break;
-            }
-        }
+        //the processors are ordered by ascending phase, so the phase boundaries can be found by bisection
+        int startPhaseIdx = indexOfFirstPhaseAbove(targetPhase.ordinal() - 1);
+        int endPhaseIdx = indexOfFirstPhaseAbove(targetPhase.ordinal());
+        int idxToInsert = endPhaseIdx;
 
         //just look for the correct phase and append as last
         if (newOutputProcessor.getBeforeProcessors().isEmpty()
@@ -175,13 +162,33 @@ public class OutputProcessorChainImpl implements OutputProcessorChain {
         }
     }
 
+    /**
+     * @return the index of the first processor whose phase ordinal is higher than the given one
+     */
+    private int indexOfFirstPhaseAbove(int phaseOrdinal) {
+        int low = 0;
+        int high = outputProcessors.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (outputProcessors.get(mid).getPhase().ordinal() > phaseOrdinal) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
     @Override
     public void removeProcessor(OutputProcessor outputProcessor) {
         LOG.debug("Removing processor {} from output chain", outputProcessor.getClass().getName());
-        if (this.outputProcessors.indexOf(outputProcessor) <= this.curPos) {
+        int idx = this.outputProcessors.indexOf(outputProcessor);
+        if (idx <= this.curPos) {
             this.curPos--;
         }
-        this.outputProcessors.remove(outputProcessor);
+        if (idx >= 0) {
+            this.outputProcessors.remove(idx);
+        }
     }
 
     @Override
@@ -94,6 +94,8 @@ public class XMLSecurityStreamReader implements XMLStreamReader {
                     currentXMLSecEvent = inputProcessorChain.processEvent();
                     eventType = currentXMLSecEvent.getEventType();
                 }
+            } else if (eventType == END_DOCUMENT) {
+                flushSecurityEvents();
             }
         } catch (XMLSecurityException e) {
             throw new XMLStreamException(e);
@@ -209,11 +211,18 @@ public class XMLSecurityStreamReader implements XMLStreamReader {
         try {
             inputProcessorChain.reset();
             inputProcessorChain.doFinal();
+            flushSecurityEvents();
         } catch (XMLSecurityException e) {
             throw new XMLStreamException(e);
         }
     }
 
+    private void flushSecurityEvents() throws XMLSecurityException {
+        if (inputProcessorChain.getSecurityContext() instanceof AbstractSecurityContextImpl) {
+            ((AbstractSecurityContextImpl) inputProcessorChain.getSecurityContext()).flushSecurityEvents();
+        }
+    }
+
     @Override
     public String getNamespaceURI(String prefix) {
         XMLSecEvent xmlSecEvent = getCurrentEvent();
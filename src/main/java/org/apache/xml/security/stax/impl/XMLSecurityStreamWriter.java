@@ -188,6 +188,9 @@ public class XMLSecurityStreamWriter implements XMLStreamWriter {
             writeEndDocument();
             outputProcessorChain.reset();
             outputProcessorChain.doFinal();
+            if (outputProcessorChain.getSecurityContext() instanceof AbstractSecurityContextImpl) {
+                ((AbstractSecurityContextImpl) outputProcessorChain.getSecurityContext()).flushSecurityEvents();
+            }
         } catch (XMLSecurityException e) {
             throw new XMLStreamException(e);
         }
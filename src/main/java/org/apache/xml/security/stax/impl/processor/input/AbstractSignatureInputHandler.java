@@ -31,6 +31,8 @@ import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.impl.util.SignerOutputStream;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
@@ -408,7 +410,11 @@ public abstract class AbstractSignatureInputHandler extends AbstractInputSecurit
             } catch (IOException | XMLStreamException e) {
                 throw new XMLSecurityException(e);
             }
-            if (!signerOutputStream.verify(signatureType.getSignatureValue().getValue())) {
+            long start = InstrumentationSupport.start(Phase.SIGNATURE);
+            boolean verified = signerOutputStream.verify(signatureType.getSignatureValue().getValue());
+            InstrumentationSupport.end(Phase.SIGNATURE, signatureType.getSignedInfo().getSignatureMethod().getAlgorithm(),
+                                       start, -1);
+            if (!verified) {
                 throw new XMLSecurityException("errorMessages.InvalidSignatureValueException");
             }
         }
@@ -29,14 +29,19 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
 
 import org.apache.xml.security.binding.excc14n.InclusiveNamespaces;
 import org.apache.xml.security.binding.xmldsig.ReferenceType;
@@ -57,6 +62,8 @@ import org.apache.xml.security.stax.ext.XMLSecurityUtils;
 import org.apache.xml.security.stax.ext.stax.XMLSecEndElement;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.resourceResolvers.ResolverSameDocument;
+import org.apache.xml.security.stax.impl.resourceResolvers.ResolverXPointer;
 import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_Excl;
 import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_OmitCommentsTransformer;
 import org.apache.xml.security.stax.impl.util.DigestOutputStream;
@@ -88,7 +95,16 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
     private final InboundSecurityToken inboundSecurityToken;
     private final List<KeyValue<ResourceResolver, ReferenceType>> sameDocumentReferences;
     private final List<KeyValue<ResourceResolver, ReferenceType>> externalReferences;
-    private final List<ReferenceType> processedReferences;
+    private final Set<ReferenceType> processedReferences;
+
+    /** the same document references to an ID, indexed by the ID value */
+    private final Map<String, List<ReferenceType>> sameDocumentReferencesById;
+    /** the same document references which can't be indexed, e.g. whole document references */
+    private final List<UnindexedReference> unindexedSameDocumentReferences;
+    /** the attributes which are compared against the ID of a reference */
+    private final QName[] idAttributes;
+    /** the concurrent verifications of the external references, if an executor is configured */
+    private List<ExternalReferenceVerification> externalReferenceVerifications;
 
     public AbstractSignatureReferenceVerifyInputProcessor(
             InputProcessorChain inputProcessorChain,
@@ -106,7 +122,16 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
         }
         sameDocumentReferences = new ArrayList<>(referencesTypeList.size());
         externalReferences = new ArrayList<>(referencesTypeList.size());
-        processedReferences = new ArrayList<>(referencesTypeList.size());
+        processedReferences = new LinkedHashSet<>(referencesTypeList.size());
+        sameDocumentReferencesById = new HashMap<>();
+        unindexedSameDocumentReferences = new ArrayList<>();
+
+        QName idAttributeNS = securityProperties.getIdAttributeNS();
+        if (idAttributeNS == null || XMLSecurityConstants.ATT_NULL_Id.equals(idAttributeNS)) {
+            idAttributes = new QName[] {XMLSecurityConstants.ATT_NULL_Id};
+        } else {
+            idAttributes = new QName[] {idAttributeNS, XMLSecurityConstants.ATT_NULL_Id};
+        }
 
         Iterator<ReferenceType> referenceTypeIterator = referencesTypeList.iterator();
         while (referenceTypeIterator.hasNext()) {
@@ -128,6 +153,7 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
 
             if (resourceResolver.isSameDocumentReference()) {
                 sameDocumentReferences.add(new KeyValue<ResourceResolver, ReferenceType>(resourceResolver, referenceType));
+                indexSameDocumentReference(resourceResolver, referenceType);
             } else {
                 if (!allowNotSameDocumentReferences) {
                     throw new XMLSecurityException(
@@ -143,54 +169,140 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
         return signatureType;
     }
 
+    /**
+     * @return a copy of the references processed so far, in processing order
+     */
     public List<ReferenceType> getProcessedReferences() {
-        return processedReferences;
+        return new ArrayList<>(processedReferences);
+    }
+
+    /**
+     * References to an ID via the resolvers of this library are indexed by the ID value, so that a
+     * start element is matched with a hash lookup per ID attribute instead of asking every resolver.
+     * All other references are matched by the resolver.
+     */
+    private void indexSameDocumentReference(ResourceResolver resourceResolver, ReferenceType referenceType) {
+        // subclasses may match differently
+        String id = null;
+        if (resourceResolver.getClass() == ResolverSameDocument.class) {
+            id = ((ResolverSameDocument) resourceResolver).getId();
+        } else if (resourceResolver.getClass() == ResolverXPointer.class) {
+            id = ((ResolverXPointer) resourceResolver).getId();
+        }
+        if (id != null && !id.isEmpty()) {
+            sameDocumentReferencesById.computeIfAbsent(id, k -> new ArrayList<>(1)).add(referenceType);
+            return;
+        }
+
+        Method idAttributeMatcher = null;
+        try {
+            // A reflection hack to avoid breaking the ResourceResolver interface for SANTUARIO-407.
+            idAttributeMatcher =
+                resourceResolver.getClass().getMethod("matches", XMLSecStartElement.class, QName.class);
+        } catch (NoSuchMethodException ex) {
+            // No need to report this
+        }
+        unindexedSameDocumentReferences.add(new UnindexedReference(resourceResolver, referenceType, idAttributeMatcher));
     }
 
     public InboundSecurityToken getInboundSecurityToken() {
         return inboundSecurityToken;
     }
 
+    /**
+     * Starts the verification of the external references on the configured executor,
+     * so that it overlaps with the processing of the rest of the document. The digest
+     * algorithm of each reference is registered before its resource is fetched.
+     */
+    private void startExternalReferenceVerification(InputProcessorChain inputProcessorChain)
+            throws XMLSecurityException {
+        Executor executor = getSecurityProperties().getExternalReferenceExecutor();
+        if (externalReferenceVerifications != null || executor == null || externalReferences.isEmpty()) {
+            return;
+        }
+        externalReferenceVerifications = new ArrayList<>(externalReferences.size());
+        try {
+            for (int i = 0; i < externalReferences.size(); i++) {
+                KeyValue<ResourceResolver, ReferenceType> keyValue = externalReferences.get(i);
+                ReferenceType referenceType = keyValue.getValue();
+                DigestOutputStream digestOutputStream =
+                    createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
+                ExternalReferenceVerification verification =
+                    new ExternalReferenceVerification(this, inputProcessorChain, keyValue.getKey(), referenceType,
+                                                      digestOutputStream);
+                externalReferenceVerifications.add(verification);
+                verification.start(executor);
+            }
+        } catch (XMLSecurityException | RuntimeException e) {
+            cancelExternalReferenceVerification();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels the external reference verifications which are still outstanding, as the
+     * processing was aborted before {@link #doFinal} collected them.
+     */
+    private void cancelExternalReferenceVerification() {
+        if (externalReferenceVerifications != null) {
+            for (int i = 0; i < externalReferenceVerifications.size(); i++) {
+                externalReferenceVerifications.get(i).cancel();
+            }
+        }
+    }
+
     @Override
     public XMLSecEvent processHeaderEvent(InputProcessorChain inputProcessorChain)
             throws XMLStreamException, XMLSecurityException {
-        return inputProcessorChain.processHeaderEvent();
+        startExternalReferenceVerification(inputProcessorChain);
+        try {
+            return inputProcessorChain.processHeaderEvent();
+        } catch (XMLStreamException | XMLSecurityException | RuntimeException e) {
+            cancelExternalReferenceVerification();
+            throw e;
+        }
     }
 
     @Override
     public XMLSecEvent processEvent(InputProcessorChain inputProcessorChain)
             throws XMLStreamException, XMLSecurityException {
+        startExternalReferenceVerification(inputProcessorChain);
 
-        XMLSecEvent xmlSecEvent = inputProcessorChain.processEvent();
-        if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
-            XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
-            List<ReferenceType> referenceTypes = resolvesResource(xmlSecStartElement);
-            if (!referenceTypes.isEmpty()) {
-                for (int i = 0; i < referenceTypes.size(); i++) {
-                    ReferenceType referenceType = referenceTypes.get(i);
-
-                    if (processedReferences.contains(referenceType)) {
-                        throw new XMLSecurityException("signature.Verification.MultipleIDs",
-                                                       new Object[] {referenceType.getURI()});
-                    }
-                    InternalSignatureReferenceVerifier internalSignatureReferenceVerifier =
-                        getSignatureReferenceVerifier(getSecurityProperties(), inputProcessorChain,
-                                                      referenceType, xmlSecStartElement);
-                    if (!internalSignatureReferenceVerifier.isFinished()) {
-                        internalSignatureReferenceVerifier.processEvent(xmlSecEvent, inputProcessorChain);
-                        inputProcessorChain.addProcessor(internalSignatureReferenceVerifier);
+        try {
+            XMLSecEvent xmlSecEvent = inputProcessorChain.processEvent();
+            if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
+                XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+                List<ReferenceType> referenceTypes = resolvesResource(xmlSecStartElement);
+                if (!referenceTypes.isEmpty()) {
+                    for (int i = 0; i < referenceTypes.size(); i++) {
+                        ReferenceType referenceType = referenceTypes.get(i);
+
+                        if (processedReferences.contains(referenceType)) {
+                            throw new XMLSecurityException("signature.Verification.MultipleIDs",
+                                                           new Object[] {referenceType.getURI()});
+                        }
+                        InternalSignatureReferenceVerifier internalSignatureReferenceVerifier =
+                            getSignatureReferenceVerifier(getSecurityProperties(), inputProcessorChain,
+                                                          referenceType, xmlSecStartElement);
+                        if (!internalSignatureReferenceVerifier.isFinished()) {
+                            internalSignatureReferenceVerifier.processEvent(xmlSecEvent, inputProcessorChain);
+                            inputProcessorChain.addProcessor(internalSignatureReferenceVerifier);
+                        }
+                        processedReferences.add(referenceType);
+                        inputProcessorChain.getDocumentContext().setIsInSignedContent(
+                            inputProcessorChain.getProcessors().indexOf(internalSignatureReferenceVerifier),
+                            internalSignatureReferenceVerifier);
+
+                        processElementPath(internalSignatureReferenceVerifier.getStartElementPath(), inputProcessorChain,
+                                           internalSignatureReferenceVerifier.getStartElement(), referenceType);
                     }
-                    processedReferences.add(referenceType);
-                    inputProcessorChain.getDocumentContext().setIsInSignedContent(
-                        inputProcessorChain.getProcessors().indexOf(internalSignatureReferenceVerifier),
-                        internalSignatureReferenceVerifier);
-
-                    processElementPath(internalSignatureReferenceVerifier.getStartElementPath(), inputProcessorChain,
-                                       internalSignatureReferenceVerifier.getStartElement(), referenceType);
                 }
             }
+            return xmlSecEvent;
+        } catch (XMLStreamException | XMLSecurityException | RuntimeException e) {
+            cancelExternalReferenceVerification();
+            throw e;
         }
-        return xmlSecEvent;
     }
 
     protected abstract void processElementPath(
@@ -199,42 +311,61 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
 
     protected List<ReferenceType> resolvesResource(XMLSecStartElement xmlSecStartElement) {
         List<ReferenceType> referenceTypes = Collections.emptyList();
-        for (int i = 0; i < sameDocumentReferences.size(); i++) {
-            KeyValue<ResourceResolver, ReferenceType> keyValue = sameDocumentReferences.get(i);
-
-            ResourceResolver resolver = keyValue.getKey();
-            boolean resourceMatches = false;
-            try {
-                // A reflection hack to avoid breaking the ResourceResolver interface for SANTUARIO-407.
-                Method m = resolver.getClass().getMethod("matches", XMLSecStartElement.class, QName.class);
-                if (m != null
-                    && (Boolean)m.invoke(resolver, xmlSecStartElement, getSecurityProperties().getIdAttributeNS())) {
-                    if (referenceTypes == Collections.<ReferenceType>emptyList()) {
-                        referenceTypes = new ArrayList<>();
-                    }
-                    referenceTypes.add(keyValue.getValue());
-                    resourceMatches = true;
+        if (!sameDocumentReferencesById.isEmpty()) {
+            for (QName idAttribute : idAttributes) {
+                Attribute attribute = xmlSecStartElement.getAttributeByName(idAttribute);
+                if (attribute == null) {
+                    continue;
+                }
+                List<ReferenceType> matchingReferences = sameDocumentReferencesById.get(attribute.getValue());
+                if (matchingReferences != null) {
+                    referenceTypes = addReferences(referenceTypes, matchingReferences);
                 }
-            } catch (NoSuchMethodException ex) {
-                // No need to report this
-            } catch (InvocationTargetException ex) {
-                // No need to report this
-            } catch (IllegalAccessException ex) {
-                // No need to report this
             }
+        }
 
-            if (!resourceMatches && keyValue.getKey().matches(xmlSecStartElement)) {
-                if (referenceTypes == Collections.<ReferenceType>emptyList()) {
-                    referenceTypes = new ArrayList<>();
-                }
-                referenceTypes.add(keyValue.getValue());
+        for (int i = 0; i < unindexedSameDocumentReferences.size(); i++) {
+            UnindexedReference unindexedReference = unindexedSameDocumentReferences.get(i);
+            if (unindexedReference.matches(xmlSecStartElement, getSecurityProperties().getIdAttributeNS())) {
+                referenceTypes = addReferences(referenceTypes, Collections.singletonList(unindexedReference.referenceType));
             }
         }
+
+        if (referenceTypes.size() > 1) {
+            // keep the order of the SignedInfo
+            List<ReferenceType> signedInfoReferences = signatureType.getSignedInfo().getReference();
+            referenceTypes.sort(Comparator.comparingInt(signedInfoReferences::indexOf));
+        }
         return referenceTypes;
     }
 
+    private static List<ReferenceType> addReferences(List<ReferenceType> referenceTypes,
+                                                     List<ReferenceType> matchingReferences) {
+        List<ReferenceType> result = referenceTypes;
+        for (int i = 0; i < matchingReferences.size(); i++) {
+            ReferenceType referenceType = matchingReferences.get(i);
+            if (result.isEmpty()) {
+                result = new ArrayList<>(1);
+            } else if (result.contains(referenceType)) {
+                continue;
+            }
+            result.add(referenceType);
+        }
+        return result;
+    }
+
     @Override
     public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        try {
+            verifyReferences(inputProcessorChain);
+        } catch (XMLStreamException | XMLSecurityException | RuntimeException e) {
+            cancelExternalReferenceVerification();
+            throw e;
+        }
+    }
+
+    private void verifyReferences(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
         inputProcessorChain.doFinal();
 
         for (int i = 0; i < sameDocumentReferences.size(); i++) {
@@ -245,13 +376,22 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
         }
 
         if (!externalReferences.isEmpty()) {
-            for (int i = 0; i < externalReferences.size(); i++) {
-                KeyValue<ResourceResolver, ReferenceType> keyValue = externalReferences.get(i);
-                verifyExternalReference(
-                        inputProcessorChain,
-                        keyValue.getKey().getInputStreamFromExternalReference(),
-                        keyValue.getValue());
-                processedReferences.add(keyValue.getValue());
+            startExternalReferenceVerification(inputProcessorChain);
+            if (externalReferenceVerifications != null) {
+                for (int i = 0; i < externalReferenceVerifications.size(); i++) {
+                    ExternalReferenceVerification verification = externalReferenceVerifications.get(i);
+                    verification.complete(inputProcessorChain.getSecurityContext());
+                    processedReferences.add(verification.getReferenceType());
+                }
+            } else {
+                for (int i = 0; i < externalReferences.size(); i++) {
+                    KeyValue<ResourceResolver, ReferenceType> keyValue = externalReferences.get(i);
+                    verifyExternalReference(
+                            inputProcessorChain,
+                            keyValue.getKey().getInputStreamFromExternalReference(),
+                            keyValue.getValue());
+                    processedReferences.add(keyValue.getValue());
+                }
             }
 
             for (int i = 0; i < externalReferences.size(); i++) {
@@ -271,10 +411,23 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
 
     protected void verifyExternalReference(InputProcessorChain inputProcessorChain, InputStream inputStream,
                                          ReferenceType referenceType) throws XMLSecurityException, XMLStreamException {
+        try (InputStream referencedInputStream = inputStream) {
+            verifyExternalReference(inputProcessorChain, referencedInputStream, referenceType,
+                                    createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext()));
+        } catch (IOException e) {
+            throw new XMLSecurityException(e);
+        }
+    }
+
+    /**
+     * Verifies an external reference with a DigestOutputStream whose AlgorithmSuiteSecurityEvent
+     * was already registered.
+     */
+    void verifyExternalReference(InputProcessorChain inputProcessorChain, InputStream inputStream,
+                                 ReferenceType referenceType, DigestOutputStream digestOutputStream)
+            throws XMLSecurityException, XMLStreamException {
 
         try (BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
-            DigestOutputStream digestOutputStream =
-                    createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
             UnsyncBufferedOutputStream bufferedDigestOutputStream =
                     new UnsyncBufferedOutputStream(digestOutputStream)) {
 
@@ -409,6 +562,36 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
         }
     }
 
+    /**
+     * A same document reference which is matched by asking its resolver.
+     */
+    private static final class UnindexedReference {
+        private final ResourceResolver resolver;
+        private final ReferenceType referenceType;
+        private final Method idAttributeMatcher;
+
+        UnindexedReference(ResourceResolver resolver, ReferenceType referenceType, Method idAttributeMatcher) {
+            this.resolver = resolver;
+            this.referenceType = referenceType;
+            this.idAttributeMatcher = idAttributeMatcher;
+        }
+
+        boolean matches(XMLSecStartElement xmlSecStartElement, QName idAttributeNS) {
+            if (idAttributeMatcher != null) {
+                try {
+                    if ((Boolean)idAttributeMatcher.invoke(resolver, xmlSecStartElement, idAttributeNS)) {
+                        return true;
+                    }
+                } catch (InvocationTargetException ex) {
+                    // No need to report this
+                } catch (IllegalAccessException ex) {
+                    // No need to report this
+                }
+            }
+            return resolver.matches(xmlSecStartElement);
+        }
+    }
+
     public class InternalSignatureReferenceVerifier extends AbstractInputProcessor {
         private ReferenceType referenceType;
         private Transformer transformer;
@@ -0,0 +1,319 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.processor.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.xml.security.binding.xmldsig.ReferenceType;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.DocumentContext;
+import org.apache.xml.security.stax.ext.InboundSecurityContext;
+import org.apache.xml.security.stax.ext.InputProcessor;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.ResourceResolver;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.impl.util.DigestOutputStream;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+
+/**
+ * The verification of an external Reference on another thread. The AlgorithmSuiteSecurityEvent of
+ * the digest algorithm is registered by the processing thread before the verification is started, so
+ * that a policy can reject the Reference before its resource is fetched. The SecurityEvents registered
+ * while verifying are held back until {@link #complete} is called on the processing thread, so that
+ * the SecurityEventListener sees them in the same order as for a sequential verification.
+ */
+final class ExternalReferenceVerification implements Runnable {
+
+    private final AbstractSignatureReferenceVerifyInputProcessor processor;
+    private final InputProcessorChain inputProcessorChain;
+    private final ResourceResolver resourceResolver;
+    private final ReferenceType referenceType;
+    private final DigestOutputStream digestOutputStream;
+    private final List<SecurityEvent> securityEvents = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Exception failure;
+    private boolean cancelled;
+    private InputStream inputStream;
+
+    ExternalReferenceVerification(AbstractSignatureReferenceVerifyInputProcessor processor,
+                                  InputProcessorChain inputProcessorChain,
+                                  ResourceResolver resourceResolver, ReferenceType referenceType,
+                                  DigestOutputStream digestOutputStream) {
+        this.processor = processor;
+        this.inputProcessorChain = new DeferredEventsInputProcessorChain(inputProcessorChain);
+        this.resourceResolver = resourceResolver;
+        this.referenceType = referenceType;
+        this.digestOutputStream = digestOutputStream;
+    }
+
+    ReferenceType getReferenceType() {
+        return referenceType;
+    }
+
+    /**
+     * Starts the verification on the executor, or on the calling thread if the executor
+     * rejects it.
+     */
+    void start(Executor executor) {
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            InputStream referencedInputStream = open();
+            if (referencedInputStream != null) {
+                processor.verifyExternalReference(
+                    inputProcessorChain, referencedInputStream, referenceType, digestOutputStream);
+            }
+        } catch (XMLSecurityException | XMLStreamException | RuntimeException e) {
+            failure = e;
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Fetches the resource, unless the verification was cancelled meanwhile.
+     */
+    private InputStream open() throws XMLSecurityException {
+        synchronized (this) {
+            if (cancelled) {
+                return null;
+            }
+        }
+        InputStream referencedInputStream = resourceResolver.getInputStreamFromExternalReference();
+        synchronized (this) {
+            if (!cancelled) {
+                inputStream = referencedInputStream;
+                return referencedInputStream;
+            }
+        }
+        closeQuietly(referencedInputStream);
+        return null;
+    }
+
+    /**
+     * Cancels the verification if the processing was aborted. A verification which did not start
+     * yet won't fetch the resource anymore, the stream of a running one is closed, which makes it
+     * fail. Its SecurityEvents and failure are never reported.
+     */
+    void cancel() {
+        InputStream referencedInputStream;
+        synchronized (this) {
+            cancelled = true;
+            referencedInputStream = inputStream;
+            inputStream = null;
+        }
+        closeQuietly(referencedInputStream);
+    }
+
+    private static void closeQuietly(InputStream referencedInputStream) {
+        if (referencedInputStream != null) {
+            try {
+                referencedInputStream.close();
+            } catch (IOException e) { //NOPMD
+                // the verification is cancelled anyway
+            }
+        }
+    }
+
+    /**
+     * Waits for the verification, registers its SecurityEvents with the given SecurityContext and
+     * rethrows a failure.
+     */
+    void complete(InboundSecurityContext securityContext) throws XMLSecurityException, XMLStreamException {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLSecurityException(e);
+        }
+        for (SecurityEvent securityEvent : securityEvents) {
+            securityContext.registerSecurityEvent(securityEvent);
+        }
+        if (failure instanceof XMLSecurityException) {
+            throw (XMLSecurityException) failure;
+        } else if (failure instanceof XMLStreamException) {
+            throw (XMLStreamException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    private final class DeferredEventsInputProcessorChain implements InputProcessorChain {
+
+        private final InputProcessorChain delegate;
+        private final InboundSecurityContext securityContext;
+
+        DeferredEventsInputProcessorChain(InputProcessorChain delegate) {
+            this.delegate = delegate;
+            this.securityContext = new DeferredEventsSecurityContext(delegate.getSecurityContext());
+        }
+
+        @Override
+        public void reset() {
+            delegate.reset();
+        }
+
+        @Override
+        public void doFinal() throws XMLStreamException, XMLSecurityException {
+            delegate.doFinal();
+        }
+
+        @Override
+        public void addProcessor(InputProcessor inputProcessor) {
+            delegate.addProcessor(inputProcessor);
+        }
+
+        @Override
+        public void removeProcessor(InputProcessor inputProcessor) {
+            delegate.removeProcessor(inputProcessor);
+        }
+
+        @Override
+        public List<InputProcessor> getProcessors() {
+            return delegate.getProcessors();
+        }
+
+        @Override
+        public InboundSecurityContext getSecurityContext() {
+            return securityContext;
+        }
+
+        @Override
+        public DocumentContext getDocumentContext() {
+            return delegate.getDocumentContext();
+        }
+
+        @Override
+        public InputProcessorChain createSubChain(InputProcessor inputProcessor)
+            throws XMLStreamException, XMLSecurityException {
+            return delegate.createSubChain(inputProcessor);
+        }
+
+        @Override
+        public InputProcessorChain createSubChain(InputProcessor inputProcessor, boolean clone)
+            throws XMLStreamException, XMLSecurityException {
+            return delegate.createSubChain(inputProcessor, clone);
+        }
+
+        @Override
+        public XMLSecEvent processHeaderEvent() throws XMLStreamException, XMLSecurityException {
+            return delegate.processHeaderEvent();
+        }
+
+        @Override
+        public XMLSecEvent processEvent() throws XMLStreamException, XMLSecurityException {
+            return delegate.processEvent();
+        }
+    }
+
+    private final class DeferredEventsSecurityContext implements InboundSecurityContext {
+
+        private final InboundSecurityContext delegate;
+
+        DeferredEventsSecurityContext(InboundSecurityContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+            securityEvents.add(securityEvent);
+        }
+
+        @Override
+        public void registerSecurityTokenProvider(
+            String id, SecurityTokenProvider<? extends InboundSecurityToken> securityTokenProvider) {
+            delegate.registerSecurityTokenProvider(id, securityTokenProvider);
+        }
+
+        @Override
+        public SecurityTokenProvider<? extends InboundSecurityToken> getSecurityTokenProvider(String id) {
+            return delegate.getSecurityTokenProvider(id);
+        }
+
+        @Override
+        public List<SecurityTokenProvider<? extends InboundSecurityToken>> getRegisteredSecurityTokenProviders() {
+            return delegate.getRegisteredSecurityTokenProviders();
+        }
+
+        @Override
+        public <T> void put(String key, T value) {
+            delegate.put(key, value);
+        }
+
+        @Override
+        public <T> T get(String key) {
+            return delegate.get(key);
+        }
+
+        @Override
+        public <T> T remove(String key) {
+            return delegate.remove(key);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public <T extends List> void putList(Object key, T value) {
+            delegate.putList(key, value);
+        }
+
+        @Override
+        public <T> void putAsList(Object key, T value) {
+            delegate.putAsList(key, value);
+        }
+
+        @Override
+        public <T> List<T> getAsList(Object key) {
+            return delegate.getAsList(key);
+        }
+
+        @Override
+        public <T, U> void putAsMap(Object key, T mapKey, U mapValue) {
+            delegate.putAsMap(key, mapKey, mapValue);
+        }
+
+        @Override
+        public <T, U> Map<T, U> getAsMap(Object key) {
+            return delegate.getAsMap(key);
+        }
+
+        @Override
+        public void addSecurityEventListener(SecurityEventListener securityEventListener) {
+            delegate.addSecurityEventListener(securityEventListener);
+        }
+    }
+}
@@ -41,6 +41,7 @@ import org.apache.xml.security.binding.xmlenc.CipherValueType;
 import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
 import org.apache.xml.security.binding.xmlenc11.MGFType;
 import org.apache.xml.security.binding.xop.Include;
+import org.apache.xml.security.encryption.UnwrappedKeyCache;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
 import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
@@ -179,6 +180,10 @@ public class XMLEncryptedKeyInputHandler extends AbstractInputSecurityHeaderHand
                         final InboundSecurityToken wrappingSecurityToken = getWrappingSecurityToken(wrappedSecurityToken);
 
                         Cipher cipher;
+                        Key kek;
+                        String digestAlgorithm = null;
+                        String mgfAlgorithm = null;
+                        byte[] oaepParams = null;
                         try {
                             XMLSecurityConstants.AlgorithmUsage algorithmUsage;
                             if (wrappingSecurityToken.isAsymmetric()) {
@@ -205,11 +210,12 @@ public class XMLEncryptedKeyInputHandler extends AbstractInputSecurityHeaderHand
                                     algorithmSuiteSecurityEvent.setCorrelationID(correlationID);
                                     inboundSecurityContext.registerSecurityEvent(algorithmSuiteSecurityEvent);
 
-                                    jceDigestAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(digestMethodType.getAlgorithm());
+                                    digestAlgorithm = digestMethodType.getAlgorithm();
+                                    jceDigestAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(digestAlgorithm);
                                 }
 
                                 PSource.PSpecified pSource = PSource.PSpecified.DEFAULT;
-                                final byte[] oaepParams =
+                                oaepParams =
                                         XMLSecurityUtils.getQNameType(encryptedKeyType.getEncryptionMethod().getContent(), XMLSecurityConstants.TAG_xenc_OAEPparams);
                                 if (oaepParams != null) {
                                     pSource = new PSource.PSpecified(oaepParams);
@@ -219,13 +225,16 @@ public class XMLEncryptedKeyInputHandler extends AbstractInputSecurityHeaderHand
                                 final MGFType mgfType =
                                         XMLSecurityUtils.getQNameType(encryptedKeyType.getEncryptionMethod().getContent(), XMLSecurityConstants.TAG_xenc11_MGF);
                                 if (mgfType != null) {
-                                    String jceMGFAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(mgfType.getAlgorithm());
+                                    mgfAlgorithm = mgfType.getAlgorithm();
+                                    String jceMGFAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(mgfAlgorithm);
                                     mgfParameterSpec = new MGF1ParameterSpec(jceMGFAlgorithm);
                                 }
                                 OAEPParameterSpec oaepParameterSpec = new OAEPParameterSpec(jceDigestAlgorithm, "MGF1", mgfParameterSpec, pSource);
-                                cipher.init(Cipher.UNWRAP_MODE, wrappingSecurityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID), oaepParameterSpec);
+                                kek = wrappingSecurityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID);
+                                cipher.init(Cipher.UNWRAP_MODE, kek, oaepParameterSpec);
                             } else {
-                                cipher.init(Cipher.UNWRAP_MODE, wrappingSecurityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID));
+                                kek = wrappingSecurityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID);
+                                cipher.init(Cipher.UNWRAP_MODE, kek);
                             }
                             if (encryptedKeyType.getCipherData() == null
                                     || encryptedKeyType.getCipherData().getCipherValue() == null
@@ -243,10 +252,25 @@ public class XMLEncryptedKeyInputHandler extends AbstractInputSecurityHeaderHand
                         String sha1Identifier = XMLUtils.encodeToString(sha1Bytes);
                         super.setSha1Identifier(sha1Identifier);
 
+                        UnwrappedKeyCache unwrappedKeyCache = securityProperties.getUnwrappedKeyCache();
+                        Object cacheKey = null;
+                        if (unwrappedKeyCache != null) {
+                            cacheKey = unwrappedKeyCache.createKey(kek, algorithmURI, digestAlgorithm, mgfAlgorithm,
+                                                                   oaepParams, jceName, encryptedBytes);
+                            Key cachedKey = unwrappedKeyCache.get(cacheKey);
+                            if (cachedKey != null) {
+                                LOG.debug("Using cached unwrapped key");
+                                return this.decryptedKey = cachedKey.getEncoded();
+                            }
+                        }
+
                         try {
                             Key key = cipher.unwrap(encryptedBytes,
                                     jceName,
                                     Cipher.SECRET_KEY);
+                            if (cacheKey != null) {
+                                unwrappedKeyCache.put(cacheKey, key);
+                            }
                             return this.decryptedKey = key.getEncoded();
                         } catch (IllegalStateException e) {
                             throw new XMLSecurityException(e);
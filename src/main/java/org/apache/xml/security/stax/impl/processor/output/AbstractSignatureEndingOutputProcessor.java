@@ -49,6 +49,8 @@ import org.apache.xml.security.stax.impl.util.SignerOutputStream;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 import org.apache.xml.security.utils.XMLUtils;
 import org.slf4j.Logger;
@@ -339,7 +341,9 @@ public abstract class AbstractSignatureEndingOutputProcessor extends AbstractBuf
             try {
                 transformer.doFinal();
                 bufferedSignerOutputStream.close();
+                long start = InstrumentationSupport.start(Phase.SIGNATURE);
                 signatureValue = signerOutputStream.sign();
+                InstrumentationSupport.end(Phase.SIGNATURE, getSecurityProperties().getSignatureAlgorithm(), start, -1);
                 return signatureValue;
             } catch (IOException e) {
                 throw new XMLSecurityException(e);
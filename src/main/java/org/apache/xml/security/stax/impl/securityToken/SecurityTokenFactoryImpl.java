@@ -18,12 +18,9 @@
  */
 package org.apache.xml.security.stax.impl.securityToken;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.security.Key;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Map;
 
@@ -35,6 +32,7 @@ import org.apache.xml.security.binding.xmldsig.X509DataType;
 import org.apache.xml.security.binding.xmldsig.X509IssuerSerialType;
 import org.apache.xml.security.binding.xmldsig11.ECKeyValueType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.keys.content.x509.X509CertificateCache;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -44,8 +42,9 @@ import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants.TokenType;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.RFC2253Parser;
-import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
 
 /**
  * Factory to create SecurityToken Objects from keys in XML
@@ -61,6 +60,19 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
                                           SecurityTokenConstants.KeyUsage keyUsage,
                                           XMLSecurityProperties securityProperties,
                                           InboundSecurityContext inboundSecurityContext) throws XMLSecurityException {
+        long start = InstrumentationSupport.start(Phase.KEY_RESOLUTION);
+        try {
+            return resolveSecurityToken(keyInfoType, keyUsage, securityProperties, inboundSecurityContext);
+        } finally {
+            InstrumentationSupport.end(Phase.KEY_RESOLUTION, null, start, -1);
+        }
+    }
+
+    private InboundSecurityToken resolveSecurityToken(KeyInfoType keyInfoType,
+                                                      SecurityTokenConstants.KeyUsage keyUsage,
+                                                      XMLSecurityProperties securityProperties,
+                                                      InboundSecurityContext inboundSecurityContext)
+        throws XMLSecurityException {
         if (keyInfoType != null) {
             // X509Data
             final X509DataType x509DataType =
@@ -294,10 +306,9 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
      */
     private static X509Certificate getCertificateFromBytes(byte[] data)
             throws XMLSecurityException {
-        try (InputStream in = new UnsyncByteArrayInputStream(data)) {
-            CertificateFactory factory = CertificateFactory.getInstance("X.509");
-            return (X509Certificate) factory.generateCertificate(in);
-        } catch (CertificateException | IOException e) {
+        try {
+            return X509CertificateCache.getCertificate(data);
+        } catch (CertificateException e) {
             throw new XMLSecurityException(e);
         }
     }
@@ -18,12 +18,11 @@
  */
 package org.apache.xml.security.stax.impl.transformer;
 
-import org.apache.commons.codec.binary.Base64InputStream;
-import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.processor.input.XMLEventReaderInputProcessor;
+import org.apache.xml.security.utils.Base64DecodingOutputStream;
+import org.apache.xml.security.utils.Base64TextInputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 
@@ -35,20 +34,14 @@ import java.io.*;
  */
 public class TransformBase64Decode extends TransformIdentity {
 
-    private ChildOutputMethod childOutputMethod;
+    private Base64DecodingOutputStream decoder;
+    /** the decoded octets for a child transformer, which are passed on in doFinal */
+    private UnsyncByteArrayOutputStream decodedBytes;
 
     @Override
     public void setOutputStream(OutputStream outputStream) throws XMLSecurityException {
-        super.setOutputStream(new Base64OutputStream(
-                new FilterOutputStream(outputStream) {
-                    @Override
-                    public void close() throws IOException {
-                        //do not close the parent output stream!
-                        super.flush();
-                    }
-                },
-                false)
-        );
+        decoder = new Base64DecodingOutputStream(outputStream);
+        super.setOutputStream(decoder);
     }
 
     @Override
@@ -65,105 +58,17 @@ public class TransformBase64Decode extends TransformIdentity {
 
     @Override
     public void transform(XMLSecEvent xmlSecEvent) throws XMLStreamException {
-        int eventType = xmlSecEvent.getEventType();
-        if (XMLStreamConstants.CHARACTERS == eventType) {
-            if (getOutputStream() != null) {
-                //we have an output stream
-                //encoding shouldn't matter here, because the data is Base64 encoded and is therefore in the ASCII range.
-                try {
-                    getOutputStream().write(xmlSecEvent.asCharacters().getData().getBytes());
-                } catch (IOException e) {
-                    throw new XMLStreamException(e);
-                }
-            } else {
+        if (XMLStreamConstants.CHARACTERS == xmlSecEvent.getEventType()) {
+            if (decoder == null) {
                 //we have a child transformer
-                if (childOutputMethod == null) {
-
-                    final XMLSecurityConstants.TransformMethod preferredChildTransformMethod =
-                        getTransformer().getPreferredTransformMethod(XMLSecurityConstants.TransformMethod.XMLSecEvent);
-
-                    if (preferredChildTransformMethod == XMLSecurityConstants.TransformMethod.XMLSecEvent) {
-                        childOutputMethod = new ChildOutputMethod() {
-
-                            private UnsyncByteArrayOutputStream byteArrayOutputStream;
-                            private Base64OutputStream base64OutputStream;
-
-                            @Override
-                            public void transform(Object object) throws XMLStreamException {
-                                if (base64OutputStream == null) {
-                                    byteArrayOutputStream = new UnsyncByteArrayOutputStream();
-                                    base64OutputStream = new Base64OutputStream(byteArrayOutputStream, false);
-                                }
-                                try {
-                                    base64OutputStream.write((byte[]) object);
-                                } catch (IOException e) {
-                                    throw new XMLStreamException(e);
-                                }
-                            }
-
-                            @Override
-                            public void doFinal() throws XMLStreamException {
-                                try {
-                                    base64OutputStream.close();
-                                } catch (IOException e) {
-                                    throw new XMLStreamException(e);
-                                }
-
-                                try (InputStream is = new UnsyncByteArrayInputStream(byteArrayOutputStream.toByteArray())) {
-                                    XMLEventReaderInputProcessor xmlEventReaderInputProcessor
-                                    = new XMLEventReaderInputProcessor(null,
-                                                                       getXmlInputFactory().createXMLStreamReader(is)
-                                        );
-                                    XMLSecEvent xmlSecEvent;
-                                    do {
-                                        xmlSecEvent = xmlEventReaderInputProcessor.processEvent(null);
-                                        getTransformer().transform(xmlSecEvent);
-                                    } while (xmlSecEvent.getEventType() != XMLStreamConstants.END_DOCUMENT);
-                                } catch (XMLSecurityException | IOException e) {
-                                    throw new XMLStreamException(e);
-                                }
-                                getTransformer().doFinal();
-                            }
-                        };
-                    } else if (preferredChildTransformMethod == XMLSecurityConstants.TransformMethod.InputStream) {
-                        childOutputMethod = new ChildOutputMethod() {
-
-                            private UnsyncByteArrayOutputStream byteArrayOutputStream;
-                            private Base64OutputStream base64OutputStream;
-
-                            @Override
-                            public void transform(Object object) throws XMLStreamException {
-                                if (base64OutputStream == null) {
-                                    byteArrayOutputStream = new UnsyncByteArrayOutputStream();
-                                    base64OutputStream = new Base64OutputStream(byteArrayOutputStream, false);
-                                }
-                                try {
-                                    base64OutputStream.write((byte[]) object);
-                                } catch (IOException e) {
-                                    throw new XMLStreamException(e);
-                                }
-                            }
-
-                            @Override
-                            public void doFinal() throws XMLStreamException {
-                                try {
-                                    base64OutputStream.close();
-                                } catch (IOException e) {
-                                    throw new XMLStreamException(e);
-                                }
-                                try (InputStream is = new UnsyncByteArrayInputStream(byteArrayOutputStream.toByteArray())) {
-                                    getTransformer().transform(is);
-                                    getTransformer().doFinal();
-                                } catch (IOException ex) {
-                                    throw new XMLStreamException(ex);
-                                }
-                            }
-                        };
-                    }
-                    if (childOutputMethod != null) {
-                        childOutputMethod.transform(xmlSecEvent.asCharacters().getData().getBytes());
-                    }
-                }
+                decodedBytes = new UnsyncByteArrayOutputStream();
+                decoder = new Base64DecodingOutputStream(decodedBytes);
+            }
+            char[] text = xmlSecEvent.asCharacters().getText();
+            try {
+                decoder.write(text, 0, text.length);
+            } catch (IOException e) {
+                throw new XMLStreamException(e);
             }
         }
     }
@@ -173,23 +78,90 @@ public class TransformBase64Decode extends TransformIdentity {
         if (getOutputStream() != null) {
             super.transform(inputStream);
         } else {
-            super.transform(new Base64InputStream(inputStream, false));
+            super.transform(new Base64DecodingInputStream(inputStream));
         }
     }
 
     @Override
     public void doFinal() throws XMLStreamException {
-        if (getOutputStream() != null) {
+        if (decoder != null) {
             try {
-                getOutputStream().close();
+                decoder.finish();
+            } catch (IOException e) {
+                throw new XMLStreamException(e);
+            }
+        }
+        if (decodedBytes != null) {
+            try (InputStream is = new UnsyncByteArrayInputStream(decodedBytes.toByteArray())) {
+                decodedBytes = null;
+                super.transform(is);
+                super.doFinal();
             } catch (IOException e) {
                 throw new XMLStreamException(e);
             }
+        } else {
+            super.doFinal();
+        }
+    }
+
+    /**
+     * Decodes a stream of base64 octets as it is read.
+     */
+    private static final class Base64DecodingInputStream extends Base64TextInputStream {
+
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[4096];
+
+        Base64DecodingInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        protected CharSequence nextText() throws IOException {
+            int read = inputStream.read(buffer);
+            while (read == 0) {
+                read = inputStream.read(buffer);
+            }
+            return read < 0 ? null : new OctetSequence(buffer, read);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * The octets of a buffer as characters, as base64 data is in the ASCII range.
+     */
+    private static final class OctetSequence implements CharSequence {
+
+        private final byte[] octets;
+        private final int length;
+
+        OctetSequence(byte[] octets, int length) {
+            this.octets = octets;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char)(octets[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
         }
-        if (childOutputMethod != null) {
-            childOutputMethod.doFinal();
-        } else if (getTransformer() != null) {
-            getTransformer().doFinal();
+
+        @Override
+        public String toString() {
+            return new String(octets, 0, length, java.nio.charset.StandardCharsets.ISO_8859_1);
         }
     }
 }
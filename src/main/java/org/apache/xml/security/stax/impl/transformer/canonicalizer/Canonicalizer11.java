@@ -64,10 +64,12 @@ public class Canonicalizer11 extends CanonicalizerBase {
         List<XMLSecAttribute> elementAttributes = xmlSecStartElement.getOnElementDeclaredAttributes();
         for (int i = 0; i < elementAttributes.size(); i++) {
             XMLSecAttribute comparableAttribute = elementAttributes.get(i);
-            //attributes with xml prefix are already processed in the for loop above
-            //xml:id attributes must be handled like other attributes: emit but dont inherit
+            //attributes with xml prefix are already processed in the for loop above,
+            //except for xml:id and xml:base, which are emitted but not inherited
             final QName attributeName = comparableAttribute.getName();
-            if (XML.equals(attributeName.getPrefix())) {
+            if (XML.equals(attributeName.getPrefix())
+                    && !"id".equals(attributeName.getLocalPart())
+                    && !"base".equals(attributeName.getLocalPart())) {
                 continue;
             }
             if (utilizedAttributes == Collections.<XMLSecAttribute>emptyList()) {
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.securityEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+
+/**
+ * A SecurityEventListener which buffers the SecurityEvents of a message and delivers them in
+ * batches to another SecurityEventListener, so that expensive listeners (e.g. policy enforcement)
+ * don't run inline for every event on the parsing thread.
+ * <p>
+ * Without an Executor, the buffered events are only delivered when {@link #flush()} is called.
+ * With an Executor, full batches are delivered on the Executor, in the order the events were
+ * registered, and {@link #flush()} waits for them. In both cases {@link #flush()} is the point
+ * where a rejected event (e.g. a policy violation) is reported: the streaming API calls it when
+ * the end of the document is reached and when the XMLStreamReader / XMLStreamWriter is closed.
+ * Once an event was rejected, the remaining events are not delivered anymore.
+ * <p>
+ * An instance must only be used for a single message.
+ */
+public class BatchingSecurityEventListener implements SecurityEventListener {
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final SecurityEventListener securityEventListener;
+    private final Executor executor;
+    private final int batchSize;
+
+    private List<SecurityEvent> batch = new ArrayList<>();
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+    private volatile XMLSecurityException failure;
+
+    /**
+     * @param securityEventListener the listener the events are delivered to by {@link #flush()}
+     */
+    public BatchingSecurityEventListener(SecurityEventListener securityEventListener) {
+        this(securityEventListener, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param securityEventListener the listener the events are delivered to
+     * @param executor the Executor the batches are delivered on
+     */
+    public BatchingSecurityEventListener(SecurityEventListener securityEventListener, Executor executor) {
+        this(securityEventListener, executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param securityEventListener the listener the events are delivered to
+     * @param executor the Executor the batches are delivered on, if null the events are only
+     * delivered by {@link #flush()}
+     * @param batchSize the number of events delivered together on the Executor
+     */
+    public BatchingSecurityEventListener(SecurityEventListener securityEventListener, Executor executor,
+                                         int batchSize) {
+        if (securityEventListener == null) {
+            throw new IllegalArgumentException("securityEventListener must not be null");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        this.securityEventListener = securityEventListener;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+        if (failure != null) {
+            throw failure;
+        }
+        batch.add(securityEvent);
+        if (executor != null && batch.size() >= batchSize) {
+            final List<SecurityEvent> events = batch;
+            batch = new ArrayList<>();
+            pending = pending.thenRunAsync(() -> deliverAsync(events), executor);
+        }
+    }
+
+    /**
+     * Delivers all buffered events, and waits until the batches handed over to the Executor
+     * are delivered.
+     *
+     * @throws XMLSecurityException if an event was rejected
+     */
+    public void flush() throws XMLSecurityException {
+        final List<SecurityEvent> events;
+        final CompletableFuture<Void> previous;
+        synchronized (this) {
+            events = batch;
+            batch = new ArrayList<>();
+            previous = pending;
+        }
+        try {
+            previous.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XMLSecurityException(e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        deliver(events);
+    }
+
+    private void deliverAsync(List<SecurityEvent> events) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            deliver(events);
+        } catch (XMLSecurityException e) {
+            failure = e;
+        }
+    }
+
+    private void deliver(List<SecurityEvent> events) throws XMLSecurityException {
+        for (int i = 0; i < events.size(); i++) {
+            securityEventListener.registerSecurityEvent(events.get(i));
+        }
+    }
+}
@@ -28,6 +28,8 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.signature.XMLSignatureException;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.DOMException;
@@ -258,13 +260,17 @@ public class Transforms extends SignatureElementProxy {
                 Transform t = this.item(i);
                 LOG.debug("Perform the ({})th {} transform", i, t.getURI());
                 checkSecureValidation(t);
+                long start = InstrumentationSupport.start(Phase.TRANSFORM);
                 xmlSignatureInput = t.performTransform(xmlSignatureInput, secureValidation);
+                InstrumentationSupport.end(Phase.TRANSFORM, t.getURI(), start, -1);
             }
             if (last >= 0) {
                 Transform t = this.item(last);
                 LOG.debug("Perform the ({})th {} transform", last, t.getURI());
                 checkSecureValidation(t);
+                long start = InstrumentationSupport.start(Phase.TRANSFORM);
                 xmlSignatureInput = t.performTransform(xmlSignatureInput, os, secureValidation);
+                InstrumentationSupport.end(Phase.TRANSFORM, t.getURI(), start, -1);
             }
 
             return xmlSignatureInput;
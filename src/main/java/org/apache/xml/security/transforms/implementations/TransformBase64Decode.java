@@ -26,13 +26,12 @@ import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.TransformSpi;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.transforms.Transforms;
-import org.apache.xml.security.utils.XMLUtils;
+import org.apache.xml.security.utils.Base64DecodingOutputStream;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
-import org.apache.xml.security.utils.JavaUtils;
-
 /**
  * Implements the <CODE>http://www.w3.org/2000/09/xmldsig#base64</CODE> decoding
  * transform.
@@ -75,57 +74,50 @@ public class TransformBase64Decode extends TransformSpi {
         XMLSignatureInput input, OutputStream os, Element transformElement,
         String baseURI, boolean secureValidation
     ) throws IOException, CanonicalizationException, TransformationException {
-        if (input.isElement()) {
-            Node el = input.getSubNode();
-            if (input.getSubNode().getNodeType() == Node.TEXT_NODE) {
-                el = el.getParentNode();
-            }
-            StringBuilder sb = new StringBuilder();
-            traverseElement((Element)el, sb);
-            if (os == null) {
-                byte[] decodedBytes = XMLUtils.decode(sb.toString());
-                XMLSignatureInput output = new XMLSignatureInput(decodedBytes);
-                output.setSecureValidation(secureValidation);
-                return output;
-            }
-            byte[] bytes = XMLUtils.decode(sb.toString());
-            os.write(bytes);
-            XMLSignatureInput output = new XMLSignatureInput((byte[])null);
-            output.setSecureValidation(secureValidation);
-            output.setOutputStream(os);
-            return output;
-        } else if (input.isOctetStream() || input.isNodeSet()) {
-            if (os == null) {
-                byte[] base64Bytes = input.getBytes();
-                byte[] decodedBytes = XMLUtils.decode(base64Bytes);
-                XMLSignatureInput output = new XMLSignatureInput(decodedBytes);
-                output.setSecureValidation(secureValidation);
-                return output;
-            }
-            if (input.isByteArray() || input.isNodeSet()) {
-                byte[] bytes = XMLUtils.decode(input.getBytes());
-                os.write(bytes);
+        if (!input.isElement() && !input.isOctetStream() && !input.isNodeSet()) {
+            throw new TransformationException("empty", new Object[] {"Unrecognized XMLSignatureInput state"});
+        }
+
+        // the data is decoded as it is read, directly into the next stage if there is one
+        UnsyncByteArrayOutputStream decodedBytes = os == null ? new UnsyncByteArrayOutputStream() : null;
+        Base64DecodingOutputStream decoder =
+            new Base64DecodingOutputStream(os == null ? decodedBytes : os);
+        try {
+            if (input.isElement()) {
+                Node el = input.getSubNode();
+                if (input.getSubNode().getNodeType() == Node.TEXT_NODE) {
+                    el = el.getParentNode();
+                }
+                traverseElement((Element)el, decoder);
             } else {
-                byte[] inputBytes = JavaUtils.getBytesFromStream(input.getOctetStreamReal());
-                byte[] bytes = XMLUtils.decode(inputBytes);
-                os.write(bytes);
+                input.updateOutputStream(decoder);
+                if (input.getOctetStreamReal() != null) {
+                    input.getOctetStreamReal().close();
+                }
             }
-            XMLSignatureInput output = new XMLSignatureInput((byte[])null);
-            output.setSecureValidation(secureValidation);
-            output.setOutputStream(os);
-            return output;
+            decoder.finish();
+        } catch (IOException ex) {
+            throw new TransformationException(ex);
         }
 
-        throw new TransformationException("empty", new Object[] {"Unrecognized XMLSignatureInput state"});
+        XMLSignatureInput output;
+        if (os == null) {
+            output = new XMLSignatureInput(decodedBytes.toByteArray());
+        } else {
+            output = new XMLSignatureInput((byte[])null);
+            output.setOutputStream(os);
+        }
+        output.setSecureValidation(secureValidation);
+        return output;
     }
 
-    private void traverseElement(Element node, StringBuilder sb) {
+    private void traverseElement(Element node, Base64DecodingOutputStream decoder) throws IOException {
         Node sibling = node.getFirstChild();
         while (sibling != null) {
             if (Node.ELEMENT_NODE == sibling.getNodeType()) {
-                traverseElement((Element)sibling, sb);
+                traverseElement((Element)sibling, decoder);
             } else if (Node.TEXT_NODE == sibling.getNodeType()) {
-                sb.append(((Text)sibling).getData());
+                decoder.write(((Text)sibling).getData());
             }
             sibling = sibling.getNextSibling();
         }
@@ -21,8 +21,11 @@ package org.apache.xml.security.transforms.implementations;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.transform.TransformerException;
@@ -37,6 +40,7 @@ import org.apache.xml.security.transforms.params.XPath2FilterContainer;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.XPathAPI;
 import org.apache.xml.security.utils.XPathFactory;
+import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -118,7 +122,7 @@ public class TransformXPath2Filter extends TransformSpi {
             }
 
             input.addNodeFilter(
-                new XPath2NodeFilter(unionNodes, subtractNodes, intersectNodes)
+                new XPath2NodeFilter(inputDoc, unionNodes, subtractNodes, intersectNodes)
             );
             input.setNodeSet(true);
             return input;
@@ -128,8 +132,18 @@ public class TransformXPath2Filter extends TransformSpi {
     }
 }
 
+/**
+ * Tests whether a node is in the subtree of one of the nodes selected by the XPath expressions.
+ * {@link #isNodeIncludeDO} only looks up the nodes themselves, as it is called in document order and
+ * tracks the subtree it is in. For {@link #isNodeInclude} all nodes of the document are numbered in
+ * document order once, so the subtrees of the selected nodes become ranges of numbers which can be
+ * searched, rather than walking up the ancestors of every node. The numbering holds an entry, with
+ * a boxed Integer, for every node of the document, i.e. memory in proportion to the document size for
+ * as long as the filter is in use.
+ */
 class XPath2NodeFilter implements NodeFilter {
 
+    private final Document doc;
     private final boolean hasUnionFilter;
     private final boolean hasSubtractFilter;
     private final boolean hasIntersectFilter;
@@ -140,8 +154,15 @@ class XPath2NodeFilter implements NodeFilter {
     private int inIntersect = -1;
     private int inUnion = -1;
 
-    XPath2NodeFilter(List<NodeList> unionNodes, List<NodeList> subtractNodes,
+    /** the document order of the nodes, created on the first call of isNodeInclude */
+    private Map<Node, Integer> documentOrder;
+    private SubtreeRanges unionRanges;
+    private SubtreeRanges subtractRanges;
+    private SubtreeRanges intersectRanges;
+
+    XPath2NodeFilter(Document doc, List<NodeList> unionNodes, List<NodeList> subtractNodes,
                      List<NodeList> intersectNodes) {
+        this.doc = doc;
         hasUnionFilter = !unionNodes.isEmpty();
         this.unionNodes = convertNodeListToSet(unionNodes);
         hasSubtractFilter = !subtractNodes.isEmpty();
@@ -154,11 +175,24 @@ class XPath2NodeFilter implements NodeFilter {
      * @see org.apache.xml.security.signature.NodeFilter#isNodeInclude(org.w3c.dom.Node)
      */
     public int isNodeInclude(Node currentNode) {
+        if (documentOrder == null) {
+            documentOrder = numberNodes(doc);
+            unionRanges = SubtreeRanges.create(unionNodes, documentOrder);
+            subtractRanges = SubtreeRanges.create(subtractNodes, documentOrder);
+            intersectRanges = SubtreeRanges.create(intersectNodes, documentOrder);
+        }
+        // Attributes are in the subtree of their element, unless they are selected themselves
+        Node node = currentNode;
+        if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+            node = ((Attr) node).getOwnerElement();
+        }
+        Integer number = node != null ? documentOrder.get(node) : null;
+
         int result = 1;
 
-        if (hasSubtractFilter && rooted(currentNode, subtractNodes)) {
+        if (hasSubtractFilter && rooted(currentNode, number, subtractNodes, subtractRanges)) {
             result = -1;
-        } else if (hasIntersectFilter && !rooted(currentNode, intersectNodes)) {
+        } else if (hasIntersectFilter && !rooted(currentNode, number, intersectNodes, intersectRanges)) {
             result = 0;
         }
 
@@ -167,7 +201,7 @@ class XPath2NodeFilter implements NodeFilter {
             return 1;
         }
         if (hasUnionFilter) {
-            if (rooted(currentNode, unionNodes)) {
+            if (rooted(currentNode, number, unionNodes, unionRanges)) {
                 return 1;
             }
             result = 0;
@@ -218,6 +252,27 @@ class XPath2NodeFilter implements NodeFilter {
         return result;
     }
 
+    /**
+     * @param currentNode the node
+     * @param number the document order of the node (or the owner element of an attribute),
+     * or null if the node is not part of the document
+     * @param nodeList the selected nodes
+     * @param ranges the subtrees of the selected nodes, or null if they can't be numbered
+     * @return if rooted by the rootnodes
+     */
+    private static boolean rooted(Node currentNode, Integer number, Set<Node> nodeList, SubtreeRanges ranges) {
+        if (nodeList.isEmpty()) {
+            return false;
+        }
+        if (nodeList.contains(currentNode)) {
+            return true;
+        }
+        if (number == null || ranges == null) {
+            return rooted(currentNode, nodeList);
+        }
+        return ranges.contains(number);
+    }
+
     /**
      * Method rooted
      * @param currentNode
@@ -251,6 +306,25 @@ class XPath2NodeFilter implements NodeFilter {
         return nodeList.contains(currentNode);
     }
 
+    /**
+     * Numbers the nodes of the document in document order, except for attributes.
+     */
+    private static Map<Node, Integer> numberNodes(Document doc) {
+        Map<Node, Integer> numbers = new HashMap<>();
+        int number = 0;
+        Node node = doc;
+        while (node != null) {
+            numbers.put(node, number++);
+            Node next = node.getFirstChild();
+            while (next == null && node != doc) {
+                next = node.getNextSibling();
+                node = node.getParentNode();
+            }
+            node = next;
+        }
+        return numbers;
+    }
+
     private static Set<Node> convertNodeListToSet(List<NodeList> l) {
         Set<Node> result = new HashSet<>();
         for (NodeList rootNodes : l) {
@@ -263,4 +337,68 @@ class XPath2NodeFilter implements NodeFilter {
         }
         return result;
     }
+
+    /**
+     * The disjoint ranges of document order numbers covered by the subtrees of a set of nodes.
+     */
+    private static final class SubtreeRanges {
+
+        private final int[] starts;
+        private final int[] ends;
+
+        private SubtreeRanges(int[] starts, int[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /**
+         * @return the ranges or null if a node is not part of the numbered document
+         */
+        static SubtreeRanges create(Set<Node> roots, Map<Node, Integer> documentOrder) {
+            long[] ranges = new long[roots.size()];
+            int count = 0;
+            for (Node root : roots) {
+                if (root.getNodeType() == Node.ATTRIBUTE_NODE) {
+                    // an attribute is selected on its own
+                    continue;
+                }
+                Node last = root;
+                while (last.getLastChild() != null) {
+                    last = last.getLastChild();
+                }
+                Integer start = documentOrder.get(root);
+                Integer end = documentOrder.get(last);
+                if (start == null || end == null) {
+                    return null;
+                }
+                ranges[count++] = (long) start << 32 | end;
+            }
+            Arrays.sort(ranges, 0, count);
+
+            // subtrees are either nested or disjoint, so a range is either contained
+            // in the previous one or starts after it
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                int start = (int) (ranges[i] >>> 32);
+                int end = (int) ranges[i];
+                if (size == 0 || start > ends[size - 1]) {
+                    starts[size] = start;
+                    ends[size] = end;
+                    size++;
+                }
+            }
+            return new SubtreeRanges(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+        }
+
+        boolean contains(int number) {
+            int index = Arrays.binarySearch(starts, number);
+            if (index >= 0) {
+                return true;
+            }
+            index = -index - 2;
+            return index >= 0 && number <= ends[index];
+        }
+    }
 }
@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that base64 decodes the octets or characters written to it, and writes the decoded
+ * octets to another OutputStream as soon as they are complete. Like {@link Base64TextInputStream} and
+ * {@link XMLUtils#decode(String)} (the MIME decoder) characters outside of the base64 alphabet, e.g.
+ * line breaks, are ignored. The padding must complete the final unit, and only characters outside of
+ * the base64 alphabet may follow it, otherwise an IOException is thrown.
+ *
+ * {@link #finish()} decodes the final, incomplete quantum without closing the target stream.
+ */
+public class Base64DecodingOutputStream extends OutputStream {
+
+    private static final int[] DECODE_TABLE = new int[128];
+
+    /** padding states, see {@link #pad(int, int, int)} */
+    static final int NO_PADDING = 0;
+    static final int SECOND_PAD = 1;
+    static final int PADDED = 2;
+
+    static {
+        for (int i = 0; i < DECODE_TABLE.length; i++) {
+            DECODE_TABLE[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final OutputStream out;
+
+    /** decoded octets which haven't been written to the target stream yet */
+    private final byte[] buffer = new byte[3 * 1024];
+    private int count;
+
+    /** the bits of the current, incomplete quantum */
+    private int bits;
+    private int sextets;
+    private int padding = NO_PADDING;
+
+    private boolean finished;
+
+    /**
+     * @param out the stream the decoded octets are written to
+     */
+    public Base64DecodingOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param c a character
+     * @return the value of the character in the base64 alphabet, or -1 if it is not part of it
+     */
+    static int decode(int c) {
+        return c >= 0 && c < 128 ? DECODE_TABLE[c] : -1;
+    }
+
+    /**
+     * Checks a character at or after the padding with the rules of the MIME decoder: a single pad
+     * character must follow three sextets of the final unit and two must follow two sextets, after
+     * which only characters outside of the base64 alphabet are allowed.
+     *
+     * @param c the padding character, or a character following the padding
+     * @param sextets the number of sextets of the final unit
+     * @param padding the padding state before the character
+     * @return the padding state after the character
+     * @throws IOException if the padding or the data following it is invalid
+     */
+    static int pad(int c, int sextets, int padding) throws IOException {
+        if (padding == NO_PADDING) {
+            if (sextets == 3) {
+                return PADDED;
+            } else if (sextets == 2) {
+                return SECOND_PAD;
+            }
+            throw new IOException("Invalid base64 data: unexpected padding");
+        } else if (padding == SECOND_PAD) {
+            if (c != '=') {
+                throw new IOException("Invalid base64 data: incomplete padding");
+            }
+            return PADDED;
+        } else if (decode(c) >= 0) {
+            throw new IOException("Invalid base64 data: data after the padding");
+        }
+        return PADDED;
+    }
+
+    /**
+     * @param padding the padding state at the end of the data
+     * @throws IOException if the padding is incomplete
+     */
+    static void checkPaddingComplete(int padding) throws IOException {
+        if (padding == SECOND_PAD) {
+            throw new IOException("Invalid base64 data: incomplete padding");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        append(b & 0xff);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off, end = off + len; i < end && !finished; i++) {
+            append(b[i] & 0xff);
+        }
+    }
+
+    /**
+     * Decodes the given characters.
+     */
+    public void write(char[] ch, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > ch.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off, end = off + len; i < end && !finished; i++) {
+            append(ch[i]);
+        }
+    }
+
+    /**
+     * Decodes the given characters.
+     */
+    public void write(CharSequence text) throws IOException {
+        for (int i = 0, end = text.length(); i < end && !finished; i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    private void append(int c) throws IOException {
+        if (finished) {
+            return;
+        }
+        if (c == '=' || padding != NO_PADDING) {
+            int previous = padding;
+            padding = pad(c, sextets, padding);
+            if (padding == PADDED && previous != PADDED) {
+                // the data is complete, only the padding rule is checked from here on
+                decodeFinalUnit();
+                flush();
+            }
+            return;
+        }
+        int value = decode(c);
+        if (value < 0) {
+            return;
+        }
+        bits = bits << 6 | value;
+        if (++sextets == 4) {
+            if (count + 3 > buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte)(bits >> 16);
+            buffer[count++] = (byte)(bits >> 8);
+            buffer[count++] = (byte)bits;
+            bits = 0;
+            sextets = 0;
+        }
+    }
+
+    /**
+     * Decodes the final, incomplete quantum and writes all decoded octets to the target stream,
+     * which is not closed. Any data written afterwards is ignored.
+     *
+     * @throws IOException if the data ends with an incomplete unit of a single character or with
+     *    incomplete padding
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            checkPaddingComplete(padding);
+            decodeFinalUnit();
+        }
+        flush();
+    }
+
+    private void decodeFinalUnit() throws IOException {
+        if (count + 2 > buffer.length) {
+            flushBuffer();
+        }
+        if (sextets == 1) {
+            throw new IOException("Invalid base64 data: incomplete final unit");
+        } else if (sextets == 2) {
+            buffer[count++] = (byte)(bits >> 4);
+        } else if (sextets == 3) {
+            buffer[count++] = (byte)(bits >> 10);
+            buffer[count++] = (byte)(bits >> 2);
+        }
+        bits = 0;
+        sextets = 0;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
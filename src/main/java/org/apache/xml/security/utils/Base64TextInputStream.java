@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * An InputStream that base64 decodes the Text children of a DOM node, without concatenating them
+ * first. Like {@link XMLUtils#decode(String)} (the MIME decoder) characters outside of the base64
+ * alphabet, e.g. line breaks, are ignored. The padding must complete the final unit, and only
+ * characters outside of the base64 alphabet may follow it, otherwise an IOException is thrown.
+ *
+ * Subclasses can decode other sequences of character data by overriding {@link #nextText()}.
+ * {@link Base64DecodingOutputStream} decodes data which is pushed rather than pulled.
+ */
+public class Base64TextInputStream extends InputStream {
+
+    private Node nextNode;
+    private CharSequence text;
+    private int textPos;
+
+    /** the bits of the current, incomplete quantum */
+    private int bits;
+    private int sextets;
+    private int padding = Base64DecodingOutputStream.NO_PADDING;
+
+    /** decoded bytes which didn't fit into the caller's buffer */
+    private final byte[] pending = new byte[3];
+    private int pendingPos;
+    private int pendingLength;
+
+    /** the buffer of {@link #read()} */
+    private final byte[] single = new byte[1];
+
+    private boolean eof;
+
+    /**
+     * @param node the node whose Text children are decoded
+     */
+    public Base64TextInputStream(Node node) {
+        this.nextNode = node.getFirstChild();
+    }
+
+    protected Base64TextInputStream() {
+    }
+
+    /**
+     * @return the next piece of character data or null if there is none
+     * @throws IOException
+     */
+    protected CharSequence nextText() throws IOException {
+        while (nextNode != null) {
+            Node node = nextNode;
+            nextNode = node.getNextSibling();
+            if (node.getNodeType() == Node.TEXT_NODE) {
+                return ((Text)node).getData();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int pos = off;
+        int end = off + len;
+        while (pendingPos < pendingLength && pos < end) {
+            b[pos++] = pending[pendingPos++];
+        }
+
+        while (pos < end && !eof) {
+            if (text == null || textPos >= text.length()) {
+                text = nextText();
+                textPos = 0;
+                if (text == null) {
+                    pos = finish(b, pos, end);
+                    break;
+                }
+                continue;
+            }
+
+            CharSequence t = text;
+            int length = t.length();
+            int i = textPos;
+            int localBits = bits;
+            int localSextets = sextets;
+            while (i < length && pos < end) {
+                char c = t.charAt(i++);
+                if (c == '=' || padding != Base64DecodingOutputStream.NO_PADDING) {
+                    int previous = padding;
+                    padding = Base64DecodingOutputStream.pad(c, localSextets, padding);
+                    if (padding == Base64DecodingOutputStream.PADDED && previous != padding) {
+                        // the data is complete, only the padding rule is checked from here on
+                        bits = localBits;
+                        sextets = localSextets;
+                        pos = decodeFinalUnit(b, pos, end);
+                        localBits = 0;
+                        localSextets = 0;
+                    }
+                    continue;
+                }
+                int value = Base64DecodingOutputStream.decode(c);
+                if (value < 0) {
+                    continue;
+                }
+                localBits = localBits << 6 | value;
+                if (++localSextets == 4) {
+                    if (end - pos >= 3) {
+                        b[pos++] = (byte)(localBits >> 16);
+                        b[pos++] = (byte)(localBits >> 8);
+                        b[pos++] = (byte)localBits;
+                    } else {
+                        pending[0] = (byte)(localBits >> 16);
+                        pending[1] = (byte)(localBits >> 8);
+                        pending[2] = (byte)localBits;
+                        pendingPos = 0;
+                        pendingLength = 3;
+                        while (pos < end) {
+                            b[pos++] = pending[pendingPos++];
+                        }
+                    }
+                    localBits = 0;
+                    localSextets = 0;
+                }
+            }
+            bits = localBits;
+            sextets = localSextets;
+            textPos = i;
+        }
+
+        int read = pos - off;
+        return read == 0 && eof ? -1 : read;
+    }
+
+    /**
+     * Decodes the final, incomplete quantum and marks the end of the data.
+     */
+    private int finish(byte[] b, int pos, int end) throws IOException {
+        eof = true;
+        Base64DecodingOutputStream.checkPaddingComplete(padding);
+        return decodeFinalUnit(b, pos, end);
+    }
+
+    /**
+     * Decodes the final, incomplete quantum.
+     */
+    private int decodeFinalUnit(byte[] b, int pos, int end) throws IOException {
+        pendingPos = 0;
+        pendingLength = 0;
+        if (sextets == 1) {
+            throw new IOException("Invalid base64 data: incomplete final unit");
+        } else if (sextets == 2) {
+            pending[pendingLength++] = (byte)(bits >> 4);
+        } else if (sextets == 3) {
+            pending[pendingLength++] = (byte)(bits >> 10);
+            pending[pendingLength++] = (byte)(bits >> 2);
+        }
+        sextets = 0;
+        bits = 0;
+        int p = pos;
+        while (pendingPos < pendingLength && p < end) {
+            b[p++] = pending[pendingPos++];
+        }
+        return p;
+    }
+
+    @Override
+    public int available() {
+        return pendingLength - pendingPos;
+    }
+}
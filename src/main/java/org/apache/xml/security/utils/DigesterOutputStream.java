@@ -19,17 +19,20 @@
 package org.apache.xml.security.utils;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
 
 /**
  *
  */
-public class DigesterOutputStream extends ByteArrayOutputStream {
+public class DigesterOutputStream extends ByteArrayOutputStream implements WritableByteChannel {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(DigesterOutputStream.class);
 
     final MessageDigestAlgorithm mda;
+    private long byteCount;
 
     /**
      * @param mda
@@ -45,6 +48,7 @@ public class DigesterOutputStream extends ByteArrayOutputStream {
 
     /** {@inheritDoc} */
     public void write(int arg0) {
+        byteCount++;
         mda.update((byte)arg0);
     }
 
@@ -58,9 +62,33 @@ public class DigesterOutputStream extends ByteArrayOutputStream {
             }
             LOG.debug(sb.toString());
         }
+        byteCount += arg2;
         mda.update(arg0, arg1, arg2);
     }
 
+    /**
+     * Digests the remaining bytes of the buffer, e.g. a direct buffer the octets of a file were read into.
+     */
+    @Override
+    public int write(ByteBuffer src) {
+        int len = src.remaining();
+        byteCount += len;
+        mda.update(src);
+        return len;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    /**
+     * @return the number of bytes digested so far
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
     /**
      * @return the digest value
      */
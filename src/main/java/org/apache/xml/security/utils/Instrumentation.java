@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+/**
+ * Receives the timings and byte counts of the processing phases of signature creation and
+ * verification, encryption and decryption, and the hits and misses of the caches and pools of
+ * the library, e.g. to export them to a metrics system.
+ *
+ * An implementation is registered with {@link InstrumentationSupport#setInstrumentation}. The
+ * default implementation records nothing. An implementation is called concurrently by all
+ * threads using the library, so it must be thread-safe and should not block.
+ *
+ * Phases nest: e.g. the CANONICALIZATION of a Reference is part of its TRANSFORM and DIGEST phases.
+ */
+public interface Instrumentation {
+
+    enum Phase {
+        /** resolving the URI of a Reference or CipherReference */
+        DEREFERENCE,
+        /** a single Transform of a Reference */
+        TRANSFORM,
+        /** canonicalization, of SignedInfo or within a Transform */
+        CANONICALIZATION,
+        /** transforming and digesting a Reference */
+        DIGEST,
+        /** the signature (or MAC) creation or verification of SignedInfo */
+        SIGNATURE,
+        /** resolving a key from KeyInfo */
+        KEY_RESOLUTION,
+        /** base64 decoding of CipherValue and SignatureValue content */
+        BASE64,
+        /** the encryption or decryption of the data of EncryptedData or EncryptedKey */
+        CIPHER
+    }
+
+    /**
+     * @param phase the phase
+     * @return whether the phase is recorded. This is checked before the time is taken.
+     */
+    boolean isEnabled(Phase phase);
+
+    /**
+     * Records a completed phase.
+     *
+     * @param phase the phase
+     * @param algorithm the URI of the algorithm (the JCE algorithm for CIPHER), the URI of the
+     * Reference for DEREFERENCE, may be null
+     * @param nanos the elapsed time in nanoseconds
+     * @param bytes the number of processed bytes or -1 if not known
+     */
+    void record(Phase phase, String algorithm, long nanos, long bytes);
+
+    /**
+     * Records a lookup in a cache or pool.
+     *
+     * @param name the name of the cache or pool, e.g. "ReferenceDigestCache"
+     * @param hit whether the lookup found an entry
+     */
+    void recordCacheAccess(String name, boolean hit);
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import org.apache.xml.security.utils.Instrumentation.Phase;
+
+/**
+ * Holds the {@link Instrumentation} used by the library, and the helpers the library uses to
+ * report to it. With the default instrumentation, the cost of a hook is a volatile read and a
+ * call of {@link Instrumentation#isEnabled}.
+ */
+public final class InstrumentationSupport {
+
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    private static final Instrumentation NOOP = new Instrumentation() {
+        @Override
+        public boolean isEnabled(Phase phase) {
+            return false;
+        }
+
+        @Override
+        public void record(Phase phase, String algorithm, long nanos, long bytes) {
+            // nothing to record
+        }
+
+        @Override
+        public void recordCacheAccess(String name, boolean hit) {
+            // nothing to record
+        }
+    };
+
+    private static volatile Instrumentation instrumentation = NOOP;
+
+    private InstrumentationSupport() {
+        // complete
+    }
+
+    /**
+     * Sets the Instrumentation used by the library.
+     *
+     * @param instrumentation the Instrumentation or null to record nothing
+     * @throws SecurityException if a security manager is installed and the
+     *    caller does not have permission to register the instrumentation
+     */
+    public static void setInstrumentation(Instrumentation instrumentation) {
+        JavaUtils.checkRegisterPermission();
+        InstrumentationSupport.instrumentation = instrumentation != null ? instrumentation : NOOP;
+    }
+
+    public static Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * @param phase the phase which starts
+     * @return the value to pass to {@link #end}
+     */
+    public static long start(Phase phase) {
+        return instrumentation.isEnabled(phase) ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * @param phase the phase which ends
+     * @param algorithm the URI of the algorithm, may be null
+     * @param start the value returned by {@link #start}
+     * @param bytes the number of processed bytes or -1 if not known
+     */
+    public static void end(Phase phase, String algorithm, long start, long bytes) {
+        if (start != DISABLED) {
+            instrumentation.record(phase, algorithm, System.nanoTime() - start, bytes);
+        }
+    }
+
+    /**
+     * @param name the name of the cache or pool
+     * @param hit whether the lookup found an entry
+     */
+    public static void recordCacheAccess(String name, boolean hit) {
+        instrumentation.recordCacheAccess(name, hit);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * An {@link Instrumentation} which emits Java Flight Recorder events, so that the processing
+ * phases can be correlated with other events of the thread, e.g. latency spikes.
+ * Phases are emitted as "org.apache.xml.security.Phase" events and cache and pool lookups as
+ * "org.apache.xml.security.CacheAccess" events, both are only recorded if enabled in the recording
+ * settings. Requires a JVM with the jdk.jfr API (JDK 8u262 and later).
+ *
+ * <pre>
+ * InstrumentationSupport.setInstrumentation(new JFRInstrumentation());
+ * </pre>
+ */
+public class JFRInstrumentation implements Instrumentation {
+
+    private final EventType phaseEventType = EventType.getEventType(PhaseEvent.class);
+
+    @Override
+    public boolean isEnabled(Phase phase) {
+        return phaseEventType.isEnabled();
+    }
+
+    @Override
+    public void record(Phase phase, String algorithm, long nanos, long bytes) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.algorithm = algorithm;
+            event.elapsed = nanos;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void recordCacheAccess(String name, boolean hit) {
+        CacheAccessEvent event = new CacheAccessEvent();
+        if (event.shouldCommit()) {
+            event.cache = name;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+
+    @Name("org.apache.xml.security.Phase")
+    @Label("XML Security Phase")
+    @Category("XML Security")
+    @Description("A processing phase of signature creation or verification, encryption or decryption")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Elapsed Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Bytes")
+        long bytes;
+    }
+
+    @Name("org.apache.xml.security.CacheAccess")
+    @Label("XML Security Cache Access")
+    @Category("XML Security")
+    @Description("A lookup in a cache or pool")
+    static class CacheAccessEvent extends Event {
+        @Label("Cache")
+        String cache;
+
+        @Label("Hit")
+        boolean hit;
+    }
+}
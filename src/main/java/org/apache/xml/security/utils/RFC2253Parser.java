@@ -20,9 +20,17 @@ package org.apache.xml.security.utils;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class RFC2253Parser {
 
+    /** the maximum number of normalized names which are remembered for each direction */
+    private static final int MAX_CACHED_NAMES = 1024;
+
+    private static final ConcurrentMap<String, String> NORMALIZED_TO_XML = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> NORMALIZED_TO_RFC = new ConcurrentHashMap<>();
+
     /**
      * Method rfc2253toXMLdsig
      *
@@ -72,6 +80,114 @@ public class RFC2253Parser {
             return "";
         }
 
+        // The same names are normalized again and again, e.g. the issuer of the
+        // certificates in a store, so the results are remembered
+        ConcurrentMap<String, String> cache = toXml ? NORMALIZED_TO_XML : NORMALIZED_TO_RFC;
+        String normalized = cache.get(dn);
+        if (normalized == null) {
+            normalized = normalizeSimple(dn);
+            if (normalized == null) {
+                normalized = parse(dn, toXml);
+            }
+            if (cache.size() >= MAX_CACHED_NAMES) {
+                cache.clear();
+            }
+            cache.put(dn, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Normalizes a DN without quotes, escapes and hex values in a single pass, which gives the same
+     * result as {@link #parse} for such names.
+     *
+     * @param dn
+     * @return normalized string or null if the DN must be normalized by {@link #parse}
+     */
+    static String normalizeSimple(String dn) {
+        int length = dn.length();
+        StringBuilder sb = new StringBuilder(length);
+        int start = 0;
+        while (true) {
+            // find the attribute type and value up to the next separator
+            int end = start;
+            int equals = -1;
+            char c = 0;
+            while (end < length) {
+                c = dn.charAt(end);
+                if (c == ',' || c == ';' || c == '+') {
+                    break;
+                } else if (c == '"' || c == '\\' || c == '#') {
+                    return null;
+                } else if (c == '=' && equals < 0) {
+                    equals = end;
+                }
+                end++;
+            }
+            if (equals < 0) {
+                return null;
+            }
+
+            int typeStart = start;
+            while (typeStart < equals && dn.charAt(typeStart) <= ' ') {
+                typeStart++;
+            }
+            int typeEnd = equals;
+            while (typeEnd > typeStart && dn.charAt(typeEnd - 1) <= ' ') {
+                typeEnd--;
+            }
+            int valueEnd = end;
+            while (valueEnd > equals + 1 && dn.charAt(valueEnd - 1) <= ' ') {
+                valueEnd--;
+            }
+
+            // see normalizeAT
+            int typeOffset = sb.length();
+            boolean upperCase = true;
+            for (int i = typeStart; i < typeEnd && upperCase; i++) {
+                char t = dn.charAt(i);
+                upperCase = t < 128 && (t < 'a' || t > 'z');
+            }
+            if (upperCase) {
+                sb.append(dn, typeStart, typeEnd);
+            } else {
+                sb.append(dn.substring(typeStart, typeEnd).toUpperCase());
+            }
+            if (sb.length() - typeOffset >= 3 && sb.charAt(typeOffset) == 'O'
+                && sb.charAt(typeOffset + 1) == 'I' && sb.charAt(typeOffset + 2) == 'D') {
+                sb.delete(typeOffset, typeOffset + 3);
+            }
+            if (sb.length() == typeOffset) {
+                return null;
+            }
+            sb.append('=');
+
+            // see parseATAV and normalizeV, the value of an OID is not trimmed
+            int valueStart = equals + 1;
+            char first = sb.charAt(typeOffset);
+            if (first < '0' || first > '9') {
+                while (valueStart < valueEnd && dn.charAt(valueStart) <= ' ') {
+                    valueStart++;
+                }
+            }
+            sb.append(dn, valueStart, valueEnd);
+
+            if (end == length) {
+                return sb.toString();
+            }
+            sb.append(c == '+' ? '+' : ',');
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Normalizes a DN by splitting it into RDNs and attribute type and values.
+     *
+     * @param dn
+     * @param toXml
+     * @return normalized string
+     */
+    private static String parse(String dn, boolean toXml) {
         try {
             String DN = semicolonToComma(dn);
             StringBuilder sb = new StringBuilder();
@@ -26,6 +26,7 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -150,8 +151,24 @@ public final class XMLUtils {
         getSetRec(rootNode, result, exclude, com);
     }
 
+    /**
+     * Adds the same nodes as {@link #getSet(Node, Set, Node, boolean)}, in document order,
+     * to a List, which is much smaller than a Set of the nodes.
+     *
+     * @param rootNode
+     * @param result
+     * @param exclude
+     * @param com whether comments or not
+     */
+    public static void getNodes(Node rootNode, List<Node> result, Node exclude, boolean com) {
+        if (exclude != null && isDescendantOrSelf(exclude, rootNode)) {
+            return;
+        }
+        getSetRec(rootNode, result, exclude, com);
+    }
+
     @SuppressWarnings("fallthrough")
-    private static void getSetRec(final Node rootNode, final Set<Node> result,
+    private static void getSetRec(final Node rootNode, final Collection<Node> result,
                                 final Node exclude, final boolean com) {
         if (rootNode == exclude) {
             return;
@@ -497,10 +514,18 @@ public final class XMLUtils {
     }
 
     public static String encodeToString(byte[] bytes) {
+        return getBase64Encoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return the encoder used by {@link #encodeToString(byte[])}, e.g. to encode a stream
+     *    of data with the same line breaks
+     */
+    public static Base64.Encoder getBase64Encoder() {
         if (ignoreLineBreaks) {
-            return Base64.getEncoder().encodeToString(bytes);
+            return Base64.getEncoder();
         }
-        return Base64.getMimeEncoder().encodeToString(bytes);
+        return Base64.getMimeEncoder();
     }
 
     public static byte[] decode(String encodedString) {
@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils.resolver.implementations;
+
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.xml.security.utils.InstrumentationSupport;
+
+/**
+ * A size-bounded in-memory cache of HTTP resources for {@link ResolverDirectHTTP}.
+ * <p></p>
+ * The Cache-Control (max-age, no-cache, no-store) and Expires response headers determine how long
+ * a resource is used without contacting the server. Once that time has passed, a resource with an
+ * ETag or Last-Modified header is revalidated with a conditional request, so that it is only
+ * transferred again if it has changed. Responses to requests that carried credentials are never cached.
+ * <p></p>
+ * A cache can be shared between resolvers and is thread-safe:
+ * <PRE>
+ * HttpResourceCache cache = new HttpResourceCache(4 * 1024 * 1024);
+ * ResourceResolver.register(new ResolverDirectHTTP(resolverProperties, cache), true);
+ * </PRE>
+ */
+public final class HttpResourceCache {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(HttpResourceCache.class);
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hitCount;
+    private long revalidationCount;
+
+    /**
+     * @param maxBytes the maximum total size of the cached content, the least recently used
+     * resources are evicted first
+     */
+    public HttpResourceCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be > 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the number of resources served without a request to the server
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of resources served after the server confirmed they were not modified
+     */
+    public synchronized long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized Entry get(String uri) {
+        Entry entry = entries.get(uri);
+        if (entry == null) {
+            InstrumentationSupport.recordCacheAccess("HttpResourceCache", false);
+        }
+        return entry;
+    }
+
+    synchronized void recordHit() {
+        InstrumentationSupport.recordCacheAccess("HttpResourceCache", true);
+        hitCount++;
+    }
+
+    /**
+     * Stores the response of the given (completed) connection if it may be reused.
+     */
+    void put(String uri, byte[] content, URLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (hasDirective(cacheControl, "no-store") || content.length > maxBytes) {
+            remove(uri);
+            return;
+        }
+        String etag = connection.getHeaderField("ETag");
+        long lastModified = connection.getLastModified();
+        long expires = now + getFreshnessLifetime(cacheControl, connection);
+        if (expires <= now && etag == null && lastModified == 0) {
+            // could neither be used without nor validated with a request
+            remove(uri);
+            return;
+        }
+
+        Entry entry = new Entry(content, connection.getHeaderField("Content-Type"), etag, lastModified, expires);
+        synchronized (this) {
+            Entry old = entries.put(uri, entry);
+            if (old != null) {
+                totalBytes -= old.content.length;
+            }
+            totalBytes += content.length;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                totalBytes -= iterator.next().content.length;
+                iterator.remove();
+            }
+        }
+        LOG.debug("Cached {} bytes from URI {}", content.length, uri);
+    }
+
+    /**
+     * Refreshes the given entry after the server answered a conditional request with 304 (Not Modified).
+     */
+    Entry revalidated(String uri, Entry entry, URLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        Entry refreshed = new Entry(entry.content, entry.mimeType, entry.etag, entry.lastModified,
+                                    now + getFreshnessLifetime(cacheControl, connection));
+        synchronized (this) {
+            revalidationCount++;
+            if (entries.get(uri) == entry) {
+                entries.put(uri, refreshed);
+            }
+        }
+        return refreshed;
+    }
+
+    private synchronized void remove(String uri) {
+        Entry old = entries.remove(uri);
+        if (old != null) {
+            totalBytes -= old.content.length;
+        }
+    }
+
+    private static long getFreshnessLifetime(String cacheControl, URLConnection connection) {
+        if (hasDirective(cacheControl, "no-cache")) {
+            return 0;
+        }
+        String maxAge = getDirectiveValue(cacheControl, "max-age");
+        if (maxAge != null) {
+            try {
+                return Math.max(0, Long.parseLong(maxAge)) * 1000L;
+            } catch (NumberFormatException ex) {
+                LOG.debug("Ignoring invalid max-age {}", maxAge);
+                return 0;
+            }
+        }
+        long expiration = connection.getExpiration();
+        if (expiration != 0) {
+            long date = connection.getDate();
+            return Math.max(0, expiration - (date != 0 ? date : System.currentTimeMillis()));
+        }
+        return 0;
+    }
+
+    private static boolean hasDirective(String cacheControl, String directive) {
+        return getDirectiveValue(cacheControl, directive) != null;
+    }
+
+    /**
+     * @return the value of the directive, the empty String if it has no value or null if it is not present
+     */
+    private static String getDirectiveValue(String cacheControl, String directive) {
+        if (cacheControl == null) {
+            return null;
+        }
+        for (String token : cacheControl.split(",")) {
+            String trimmed = token.trim();
+            int index = trimmed.indexOf('=');
+            String name = index < 0 ? trimmed : trimmed.substring(0, index).trim();
+            if (name.toLowerCase(Locale.ROOT).equals(directive)) {
+                if (index < 0) {
+                    return "";
+                }
+                String value = trimmed.substring(index + 1).trim();
+                if (value.length() > 1 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    static final class Entry {
+        private final byte[] content;
+        private final String mimeType;
+        private final String etag;
+        private final long lastModified;
+        private final long expires;
+
+        Entry(byte[] content, String mimeType, String etag, long lastModified, long expires) {
+            this.content = content;
+            this.mimeType = mimeType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+        }
+
+        boolean isFresh(long now) {
+            return now < expires;
+        }
+
+        boolean isValidatable() {
+            return etag != null || lastModified != 0;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        String getMimeType() {
+            return mimeType;
+        }
+
+        String getETag() {
+            return etag;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -20,7 +20,6 @@
 package org.apache.xml.security.utils.resolver.implementations;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -54,7 +53,7 @@ public class ResolverAnonymous extends ResourceResolverSpi {
     @Override
     public XMLSignatureInput engineResolveURI(ResourceResolverContext context) throws ResourceResolverException {
         try {
-            XMLSignatureInput input = new XMLSignatureInput(Files.newInputStream(resourcePath));
+            XMLSignatureInput input = new XMLSignatureInput(resourcePath);
             input.setSecureValidation(context.secureValidation);
             return input;
         } catch (IOException e) {
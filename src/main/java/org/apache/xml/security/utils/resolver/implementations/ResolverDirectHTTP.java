@@ -21,6 +21,7 @@ package org.apache.xml.security.utils.resolver.implementations;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URISyntaxException;
@@ -52,6 +53,11 @@ import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
  * resourceResolver.setProperty("http.proxy.username", "proxyuser3");
  * resourceResolver.setProperty("http.proxy.password", "secretca");
  * </PRE>
+ * <BR>
+ * Connect and read timeouts (in milliseconds) can be set with the "http.connect.timeout" and
+ * "http.read.timeout" properties. Connections are kept alive and reused for further requests to
+ * the same server as far as the JDK allows it. Fetched resources are cached if a
+ * {@link HttpResourceCache} is passed to the constructor.
  *
  * @see <A HREF="http://www.javaworld.com/javaworld/javatips/jw-javatip42_p.html">Java Tip 42: Write Java apps that work with proxy-based firewalls</A>
  * @see <A HREF="https://docs.oracle.com/javase/8/docs/technotes/guides/net/properties.html">JDK docs for network properties</A>
@@ -66,7 +72,8 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
     private static final String[] properties = {
                                                  "http.proxy.host", "http.proxy.port",
                                                  "http.proxy.username", "http.proxy.password",
-                                                 "http.basic.username", "http.basic.password"
+                                                 "http.basic.username", "http.basic.password",
+                                                 "http.connect.timeout", "http.read.timeout"
                                                };
 
     /** Field HttpProxyHost */
@@ -87,15 +94,32 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
     /** Field HttpProxyPass */
     private static final int HttpBasicPass = 5;
 
+    /** Field HttpConnectTimeout */
+    private static final int HttpConnectTimeout = 6;
+
+    /** Field HttpReadTimeout */
+    private static final int HttpReadTimeout = 7;
+
     private final Map<String, String> resolverProperties;
 
+    private final HttpResourceCache cache;
+
     public ResolverDirectHTTP() {
-        resolverProperties = Collections.emptyMap();
+        this(null, null);
     }
 
     public ResolverDirectHTTP(Map<String, String> resolverProperties) {
+        this(resolverProperties, null);
+    }
+
+    /**
+     * @param resolverProperties the resolver properties, may be null
+     * @param cache the cache for the fetched resources, may be null
+     */
+    public ResolverDirectHTTP(Map<String, String> resolverProperties, HttpResourceCache cache) {
         this.resolverProperties =
             Collections.unmodifiableMap(resolverProperties != null ? resolverProperties : Collections.emptyMap());
+        this.cache = cache;
     }
 
     /**
@@ -109,7 +133,23 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
             // calculate new URI
             URI uriNew = getNewURI(context.uriToResolve, context.baseUri);
             URL url = uriNew.toURL();
-            URLConnection urlConnection = openConnection(url, context);
+            String uriString = uriNew.toString();
+
+            HttpResourceCache.Entry cached = null;
+            if (cache != null) {
+                cached = cache.get(uriString);
+                if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+                    LOG.debug("Using cached content of URI {}", uriString);
+                    cache.recordHit();
+                    return createInput(cached.getContent().clone(), cached.getMimeType(), uriString, context);
+                }
+                if (cached != null && !cached.isValidatable()) {
+                    cached = null;
+                }
+            }
+
+            URLConnection urlConnection = openConnection(url, context, cached);
+            boolean authenticated = false;
 
             // check if Basic authentication is required
             String auth = urlConnection.getHeaderField("WWW-Authenticate");
@@ -122,7 +162,11 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
                     getProperty(context, ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpBasicPass]);
 
                 if (user != null && pass != null) {
-                    urlConnection = openConnection(url, context);
+                    // consume the first response, so that its connection can be kept alive
+                    drain(urlConnection);
+                    urlConnection = openConnection(url, context, null);
+                    cached = null;
+                    authenticated = true;
 
                     String password = user + ":" + pass;
                     String encodedPassword = XMLUtils.encodeToString(password.getBytes(StandardCharsets.ISO_8859_1));
@@ -133,6 +177,14 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
                 }
             }
 
+            if (cached != null && urlConnection instanceof HttpURLConnection
+                && ((HttpURLConnection)urlConnection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                drain(urlConnection);
+                LOG.debug("URI {} was not modified, using cached content", uriString);
+                cached = cache.revalidated(uriString, cached, urlConnection, System.currentTimeMillis());
+                return createInput(cached.getContent().clone(), cached.getMimeType(), uriString, context);
+            }
+
             String mimeType = urlConnection.getHeaderField("Content-Type");
             try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 InputStream inputStream = urlConnection.getInputStream()) {
@@ -145,15 +197,16 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
                     summarized += read;
                 }
 
-                LOG.debug("Fetched {} bytes from URI {}", summarized, uriNew.toString());
-
-                XMLSignatureInput result = new XMLSignatureInput(baos.toByteArray());
-                result.setSecureValidation(context.secureValidation);
-
-                result.setSourceURI(uriNew.toString());
-                result.setMIMEType(mimeType);
+                LOG.debug("Fetched {} bytes from URI {}", summarized, uriString);
 
-                return result;
+                byte[] content = baos.toByteArray();
+                if (cache != null && !authenticated) {
+                    cache.put(uriString, content.clone(), urlConnection, System.currentTimeMillis());
+                }
+                return createInput(content, mimeType, uriString, context);
+            } catch (IOException ex) {
+                drainErrorStream(urlConnection);
+                throw ex;
             }
 
         } catch (URISyntaxException | IOException | IllegalArgumentException ex) {
@@ -161,7 +214,54 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
         }
     }
 
-    private URLConnection openConnection(URL url, ResourceResolverContext context) throws IOException {
+    private static XMLSignatureInput createInput(byte[] content, String mimeType, String uri,
+                                                 ResourceResolverContext context) {
+        XMLSignatureInput result = new XMLSignatureInput(content);
+        result.setSecureValidation(context.secureValidation);
+
+        result.setSourceURI(uri);
+        result.setMIMEType(mimeType);
+
+        return result;
+    }
+
+    /**
+     * Reads and discards a response that is not used, as the underlying connection can only
+     * be reused for further requests (keep-alive) once the response was read completely.
+     */
+    private static void drain(URLConnection urlConnection) {
+        try (InputStream inputStream = urlConnection.getInputStream()) {
+            discard(inputStream);
+        } catch (IOException ex) {
+            drainErrorStream(urlConnection);
+        }
+    }
+
+    private static void drainErrorStream(URLConnection urlConnection) {
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            return;
+        }
+        try (InputStream errorStream = ((HttpURLConnection)urlConnection).getErrorStream()) {
+            if (errorStream != null) {
+                discard(errorStream);
+            }
+        } catch (IOException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+    }
+
+    private static void discard(InputStream inputStream) throws IOException {
+        byte[] buf = new byte[4096];
+        int read = 0;
+        long discarded = 0;
+        while ((read = inputStream.read(buf)) >= 0) {
+            discarded += read;
+        }
+        LOG.debug("Discarded {} bytes", discarded);
+    }
+
+    private URLConnection openConnection(URL url, ResourceResolverContext context,
+                                         HttpResourceCache.Entry cached) throws IOException {
 
         String proxyHostProp =
             getProperty(context, ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpProxyHost]);
@@ -171,6 +271,10 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
             getProperty(context, ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpProxyUser]);
         String proxyPass =
             getProperty(context, ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpProxyPass]);
+        String connectTimeout =
+            getProperty(context, ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpConnectTimeout]);
+        String readTimeout =
+            getProperty(context, ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpReadTimeout]);
 
         Proxy proxy = null;
         if (proxyHostProp != null && proxyPortProp != null) {
@@ -192,6 +296,22 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
             urlConnection = url.openConnection();
         }
 
+        if (connectTimeout != null) {
+            urlConnection.setConnectTimeout(Integer.parseInt(connectTimeout));
+        }
+        if (readTimeout != null) {
+            urlConnection.setReadTimeout(Integer.parseInt(readTimeout));
+        }
+
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                urlConnection.setRequestProperty("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() != 0) {
+                urlConnection.setIfModifiedSince(cached.getLastModified());
+            }
+        }
+
         return urlConnection;
     }
 
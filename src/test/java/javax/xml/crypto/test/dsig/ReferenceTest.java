@@ -26,6 +26,7 @@ import java.io.*;
 import java.security.MessageDigest;
 import java.security.Security;
 import java.util.*;
+import javax.xml.crypto.NodeSetData;
 import javax.xml.crypto.URIDereferencer;
 import javax.xml.crypto.dsig.*;
 import javax.xml.crypto.dsig.keyinfo.*;
@@ -198,15 +199,119 @@ public class ReferenceTest {
 
     @org.junit.jupiter.api.Test
     public void testvalidate() throws Exception {
-        testvalidate(false);
+        testvalidate(false, null);
     }
 
     @org.junit.jupiter.api.Test
     public void testvalidateWithCaching() throws Exception {
-        testvalidate(true);
+        testvalidate(true, null);
     }
 
-    private void testvalidate(boolean cache) throws Exception {
+    @org.junit.jupiter.api.Test
+    public void testvalidateWithCachingInTempFile() throws Exception {
+        testvalidate(true, 16L);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testvalidateWithInvalidSpillThreshold() throws Exception {
+        // a malformed threshold falls back to the default
+        testvalidate(true, "sixteen");
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testvalidateWithCachingInTempFileNotRead() throws Exception {
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        FilenameFilter filter = (dir, name) -> name.startsWith("xmlsec-reference") && name.endsWith(".tmp");
+        Set<String> before = new HashSet<>(Arrays.asList(tmpDir.list(filter)));
+
+        String type = "http://www.w3.org/2000/09/xmldsig#Object";
+        byte[] in = new byte[200];
+        new Random().nextBytes(in);
+        URIDereferencer dereferrer = new TestUtils.OctetStreamURIDereferencer(in);
+        Document doc = TestUtils.newDocument();
+        XMLSignContext signContext =
+            new DOMSignContext(TestUtils.getPrivateKey(CRYPTO_ALGS[0]), doc);
+        signContext.setURIDereferencer(dereferrer);
+        signContext.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        signContext.setProperty
+            ("org.apache.jcp.xml.dsig.cacheReference.spillThreshold", 16L);
+        Reference ref = fac.newReference(null, dmSHA1, null, type, null);
+        XMLSignature sig = fac.newXMLSignature(fac.newSignedInfo
+            (fac.newCanonicalizationMethod
+             (CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS,
+              (C14NMethodParameterSpec) null),
+            fac.newSignatureMethod(SIG_ALGS[0], null),
+            Collections.singletonList(ref)),
+            kifac.newKeyInfo(Collections.singletonList
+            (kifac.newKeyValue(TestUtils.getPublicKey(CRYPTO_ALGS[0])))));
+        sig.sign(signContext);
+        Set<String> signed = newFiles(tmpDir, filter, before);
+        assertEquals(1, signed.size());
+
+        // digesting the reference again deletes the cache of the signing run
+        XMLValidateContext validateContext = new DOMValidateContext
+            (TestUtils.getPublicKey(CRYPTO_ALGS[0]), doc.getDocumentElement());
+        validateContext.setURIDereferencer(dereferrer);
+        validateContext.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        validateContext.setProperty
+            ("org.apache.jcp.xml.dsig.cacheReference.spillThreshold", 16L);
+        assertTrue(sig.validate(validateContext));
+        Set<String> validated = newFiles(tmpDir, filter, before);
+        assertEquals(1, validated.size());
+        assertFalse(validated.containsAll(signed));
+
+        // closing the digest input without reading it deletes the cache
+        ref.getDigestInputStream().close();
+        assertTrue(newFiles(tmpDir, filter, before).isEmpty());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCachedNodeSet() throws Exception {
+        Document doc = TestUtils.newDocument();
+        org.w3c.dom.Element root = doc.createElementNS(null, "root");
+        doc.appendChild(root);
+        org.w3c.dom.Element data = doc.createElementNS(null, "data");
+        data.setAttributeNS(null, "a", "1");
+        data.appendChild(doc.createTextNode("text"));
+        data.appendChild(doc.createComment("comment"));
+        root.appendChild(data);
+
+        // a node-set which is defined by a subtree
+        URIDereferencer dereferencer = (uriReference, context) -> {
+            org.apache.xml.security.signature.XMLSignatureInput in =
+                new org.apache.xml.security.signature.XMLSignatureInput(data);
+            in.setNodeSet(true);
+            return new org.apache.jcp.xml.dsig.internal.dom.ApacheNodeSetData(in);
+        };
+        XMLSignContext signContext = new DOMSignContext(TestUtils.getPrivateKey(CRYPTO_ALGS[0]), root);
+        signContext.setURIDereferencer(dereferencer);
+        signContext.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        Reference ref = fac.newReference("#data", dmSHA1);
+        XMLSignature sig = fac.newXMLSignature(fac.newSignedInfo
+            (fac.newCanonicalizationMethod
+             (CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+            fac.newSignatureMethod(SIG_ALGS[0], null),
+            Collections.singletonList(ref)), null);
+        sig.sign(signContext);
+
+        Set<org.w3c.dom.Node> expected = new LinkedHashSet<>();
+        org.apache.xml.security.utils.XMLUtils.getSet(data, expected, null, false);
+        List<org.w3c.dom.Node> nodes = new ArrayList<>();
+        Iterator<?> iter = ((NodeSetData) ref.getDereferencedData()).iterator();
+        while (iter.hasNext()) {
+            nodes.add((org.w3c.dom.Node) iter.next());
+        }
+        assertEquals(new ArrayList<>(expected), nodes);
+        assertTrue(digestInputEqual(ref));
+    }
+
+    private static Set<String> newFiles(File dir, FilenameFilter filter, Set<String> before) {
+        Set<String> files = new HashSet<>(Arrays.asList(dir.list(filter)));
+        files.removeAll(before);
+        return files;
+    }
+
+    private void testvalidate(boolean cache, Object spillThreshold) throws Exception {
         Reference ref = null;
         String type = "http://www.w3.org/2000/09/xmldsig#Object";
         byte[] in = new byte[200];
@@ -227,6 +332,10 @@ public class ReferenceTest {
                 signContext.setProperty
                     ("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
             }
+            if (spillThreshold != null) {
+                signContext.setProperty
+                    ("org.apache.jcp.xml.dsig.cacheReference.spillThreshold", spillThreshold);
+            }
             ref = fac.newReference(null, dmSHA1, null, type, null);
             XMLSignature sig = fac.newXMLSignature(fac.newSignedInfo
                 (fac.newCanonicalizationMethod
@@ -255,6 +364,10 @@ public class ReferenceTest {
                     validateContext.setProperty
                         ("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
                 }
+                if (spillThreshold != null) {
+                    validateContext.setProperty
+                        ("org.apache.jcp.xml.dsig.cacheReference.spillThreshold", spillThreshold);
+                }
                 boolean result = sig.validate(validateContext);
                 assertTrue(result);
 
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.xml.crypto.test.dsig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.URIDereferencer;
+import javax.xml.crypto.dom.DOMStructure;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+
+import org.apache.jcp.xml.dsig.internal.dom.TrustAnchorKeySelector;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the indexed lookups and reloading of the TrustAnchorKeySelector.
+ */
+public class TrustAnchorKeySelectorTest {
+
+    private final File dir;
+    private final File certs;
+    private final URIDereferencer ud;
+    private final XMLSignatureFactory fac;
+
+    static {
+        Security.insertProviderAt
+            (new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI(), 1);
+    }
+
+    public TrustAnchorKeySelectorTest() {
+        String fs = System.getProperty("file.separator");
+        String base = System.getProperty("basedir") == null ? "./": System.getProperty("basedir");
+
+        dir = new File(base + fs + "src/test/resources" + fs
+            + "ie" + fs + "baltimore" + fs + "merlin-examples",
+            "merlin-xmldsig-twenty-three");
+        certs = new File(dir, "certs");
+        ud = new LocalHttpCacheURIDereferencer();
+        fac = XMLSignatureFactory.getInstance("DOM", new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI());
+    }
+
+    @Test
+    public void testKeyStore() throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (FileInputStream is = new FileInputStream(new File(certs, "xmldsig.jks"))) {
+            ks.load(is, "changeit".toCharArray());
+        }
+        TrustAnchorKeySelector keySelector = new TrustAnchorKeySelector();
+        keySelector.load(ks);
+        assertEquals(ks.size(), keySelector.size());
+
+        validate(keySelector);
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        TrustAnchorKeySelector keySelector = new TrustAnchorKeySelector();
+        keySelector.load(certs.toPath());
+        assertEquals(9, keySelector.size());
+
+        validate(keySelector);
+    }
+
+    @Test
+    public void testX509Digest() throws Exception {
+        TrustAnchorKeySelector keySelector = new TrustAnchorKeySelector();
+        keySelector.load(certs.toPath());
+        X509Certificate cert = keySelector.select(keyName("Lugh"), KeySelector.Purpose.VERIFY, null, null)
+            .getCertificate();
+
+        Document doc = TestUtils.newDocument();
+        Element digest = doc.createElementNS(Constants.SignatureSpec11NS, "dsig11:X509Digest");
+        digest.setAttributeNS(null, Constants._ATT_ALGORITHM, "http://www.w3.org/2001/04/xmlenc#sha256");
+        digest.setTextContent(
+            XMLUtils.encodeToString(MessageDigest.getInstance("SHA-256").digest(cert.getEncoded())));
+        KeyInfoFactory kifac = fac.getKeyInfoFactory();
+        KeyInfo keyInfo = kifac.newKeyInfo(Collections.singletonList(
+            kifac.newX509Data(Collections.singletonList(new DOMStructure(digest)))));
+
+        assertSame(cert, keySelector.select(keyInfo, KeySelector.Purpose.VERIFY, null, null).getCertificate());
+    }
+
+    @Test
+    public void testReload(@TempDir Path tempDir) throws Exception {
+        Files.copy(new File(certs, "lugh.crt").toPath(), tempDir.resolve("lugh.crt"));
+        TrustAnchorKeySelector keySelector = new TrustAnchorKeySelector();
+        keySelector.load(tempDir);
+        assertEquals(1, keySelector.size());
+        X509Certificate lugh = keySelector.select(keyName("lugh"), KeySelector.Purpose.VERIFY, null, null)
+            .getCertificate();
+        assertThrows(KeySelectorException.class, () ->
+            keySelector.select(keyName("macha"), KeySelector.Purpose.VERIFY, null, null));
+
+        // Unchanged files are not parsed again
+        Files.copy(new File(certs, "macha.crt").toPath(), tempDir.resolve("macha.crt"));
+        keySelector.load(tempDir);
+        assertEquals(2, keySelector.size());
+        assertSame(lugh, keySelector.select(keyName("lugh"), KeySelector.Purpose.VERIFY, null, null)
+            .getCertificate());
+        keySelector.select(keyName("macha"), KeySelector.Purpose.VERIFY, null, null);
+
+        Files.copy(new File(certs, "badb.crt").toPath(), tempDir.resolve("lugh.crt"),
+                   StandardCopyOption.REPLACE_EXISTING);
+        keySelector.load(tempDir);
+        assertTrue(lugh != keySelector.select(keyName("lugh"), KeySelector.Purpose.VERIFY, null, null)
+            .getCertificate());
+    }
+
+    @Test
+    public void testIncompatibleAlgorithm() throws Exception {
+        TrustAnchorKeySelector keySelector = new TrustAnchorKeySelector();
+        keySelector.load(certs.toPath());
+        X509Certificate cert = keySelector.select(keyName("lugh"), KeySelector.Purpose.VERIFY, null, null)
+            .getCertificate();
+        String algorithm = "DSA".equals(cert.getPublicKey().getAlgorithm())
+            ? SignatureMethod.RSA_SHA1 : SignatureMethod.DSA_SHA1;
+        SignatureMethod sm = fac.newSignatureMethod(algorithm, null);
+        assertThrows(KeySelectorException.class, () ->
+            keySelector.select(keyName("lugh"), KeySelector.Purpose.VERIFY, sm, null));
+        assertThrows(KeySelectorException.class, () ->
+            keySelector.select(keyName("lugh"), KeySelector.Purpose.SIGN, null, null));
+    }
+
+    private void validate(KeySelector keySelector) throws Exception {
+        SignatureValidator validator = new SignatureValidator(dir);
+        for (String file : new String[] {"signature-keyname.xml", "signature-x509-crt.xml", "signature-x509-is.xml",
+                                         "signature-x509-ski.xml", "signature-x509-sn.xml"}) {
+            assertTrue(validator.validate(file, keySelector, ud), file);
+        }
+    }
+
+    private KeyInfo keyName(String name) {
+        KeyInfoFactory kifac = fac.getKeyInfoFactory();
+        return kifac.newKeyInfo(Collections.singletonList(kifac.newKeyName(name)));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.xml.crypto.test.dsig.dom;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dom.DOMCryptoContext;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.TransformService;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+
+import org.apache.jcp.xml.dsig.internal.dom.DOMSubTreeData;
+import org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI;
+import org.apache.jcp.xml.dsig.internal.dom.XPathNodeSetData;
+import org.apache.xml.security.utils.JavaUtils;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the lazy node iteration of DOMSubTreeData and the node-sets which are
+ * passed to the canonicalizer without being copied.
+ */
+public class DOMSubTreeDataTest {
+
+    private static final String XML =
+        "<?xml version=\"1.0\"?>\n<!-- comment -->\n"
+        + "<root xmlns=\"urn:test\" xmlns:p=\"urn:p\" a=\"1\">text<!-- c1 -->more"
+        + "<p:child p:b=\"2\">child<?pi data?></p:child>"
+        + "<excluded c=\"3\"><inner>inner</inner></excluded>"
+        + "<last/>tail</root>";
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        Document doc = read();
+        Element excluded = (Element) doc.getElementsByTagNameNS("urn:test", "excluded").item(0);
+        for (Node root : new Node[] {doc, doc.getDocumentElement()}) {
+            for (Node excludeNode : new Node[] {null, excluded}) {
+                for (boolean excludeComments : new boolean[] {true, false}) {
+                    Set<Node> expected = new LinkedHashSet<>();
+                    XMLUtils.getSet(root, expected, excludeNode, !excludeComments);
+
+                    List<Node> actual = new ArrayList<>();
+                    Iterator<Node> iterator = new DOMSubTreeData(root, excludeNode, excludeComments).iterator();
+                    while (iterator.hasNext()) {
+                        actual.add(iterator.next());
+                    }
+                    assertEquals(expected.size(), actual.size());
+                    assertEquals(expected, new LinkedHashSet<>(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNodeSetView() throws Exception {
+        Document doc = read();
+        Element excluded = (Element) doc.getElementsByTagNameNS("urn:test", "excluded").item(0);
+        List<Node> allNodes = new ArrayList<>();
+        XMLUtils.getSet(doc, new LinkedHashSet<Node>() {
+            @Override
+            public boolean add(Node node) {
+                return allNodes.add(node);
+            }
+        }, null, true);
+        allNodes.add(doc);
+
+        for (Node root : new Node[] {doc, doc.getDocumentElement()}) {
+            for (Node excludeNode : new Node[] {null, excluded}) {
+                for (boolean excludeComments : new boolean[] {true, false}) {
+                    Set<Node> expected = new LinkedHashSet<>();
+                    XMLUtils.getSet(root, expected, excludeNode, !excludeComments);
+
+                    Set<Node> nodeSet = new DOMSubTreeData(root, excludeNode, excludeComments).getNodeSet();
+                    assertEquals(expected.size(), nodeSet.size());
+                    for (Node node : allNodes) {
+                        assertEquals(expected.contains(node), nodeSet.contains(node), node.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCanonicalizeSubTreeWithExclusion() throws Exception {
+        Document doc = read();
+        Element excluded = (Element) doc.getElementsByTagNameNS("urn:test", "excluded").item(0);
+        String c14n = canonicalize(new DOMSubTreeData(doc.getDocumentElement(), excluded, true));
+
+        excluded.getParentNode().removeChild(excluded);
+        assertEquals(canonicalize(new DOMSubTreeData(doc.getDocumentElement(), true)), c14n);
+    }
+
+    @Test
+    public void testCanonicalizeXPathNodeSetData() throws Exception {
+        Document doc = read();
+        final Set<Node> nodeSet = new LinkedHashSet<>();
+        XMLUtils.getSet(doc.getDocumentElement(), nodeSet, null, false);
+        XPathNodeSetData data = new XPathNodeSetData() {
+            public Iterator<Node> iterator() {
+                return nodeSet.iterator();
+            }
+
+            public Set<Node> getNodeSet() {
+                return nodeSet;
+            }
+        };
+        assertEquals(canonicalize(new DOMSubTreeData(doc.getDocumentElement(), true)), canonicalize(data));
+    }
+
+    private static Document read() throws Exception {
+        return XMLUtils.read(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    private static String canonicalize(javax.xml.crypto.Data data) throws Exception {
+        TransformService ts =
+            TransformService.getInstance(CanonicalizationMethod.INCLUSIVE, "DOM", new XMLDSigRI());
+        ts.init((TransformParameterSpec) null);
+        OctetStreamData result = (OctetStreamData) ts.transform(data, new DOMCryptoContext() { });
+        return new String(JavaUtils.getBytesFromStream(result.getOctetStream()), StandardCharsets.UTF_8);
+    }
+}
@@ -731,6 +731,69 @@ public class Canonicalizer20010315ExclusiveTest {
         }
     }
 
+    @org.junit.jupiter.api.Test
+    public void testLargeTextNode() throws Exception {
+        StringBuilder text = new StringBuilder(30000);
+        StringBuilder c14nText = new StringBuilder(60000);
+        for (int i = 0; i < 2000; i++) {
+            text.append("abc&<>\r\"xyz\u00e9\ud83d\ude00");
+            c14nText.append("abc&amp;&lt;&gt;&#xD;\"xyz\u00e9\ud83d\ude00");
+        }
+        assertTextCanonicalization(text.toString(), c14nText.toString());
+    }
+
+    /**
+     * Plain ASCII runs longer than the 8192 byte text buffer of the canonicalizer, so that
+     * the buffer is flushed when it is full.
+     */
+    @org.junit.jupiter.api.Test
+    public void testLargeAsciiTextNode() throws Exception {
+        for (int length : new int[] {8192, 8193, 3 * 8192, 20000}) {
+            String text = asciiText(length);
+            assertTextCanonicalization(text, text);
+        }
+    }
+
+    /**
+     * An escaped character just before, at and just after the end of the 8192 byte text buffer.
+     */
+    @org.junit.jupiter.api.Test
+    public void testEscapeAtTextBufferBoundary() throws Exception {
+        for (int length = 8190; length <= 8193; length++) {
+            String prefix = asciiText(length);
+            String suffix = asciiText(9000);
+            assertTextCanonicalization(prefix + "&" + suffix, prefix + "&amp;" + suffix);
+            assertTextCanonicalization(prefix + "\r<" + suffix, prefix + "&#xD;&lt;" + suffix);
+            assertTextCanonicalization(prefix + "\u00e9" + suffix, prefix + "\u00e9" + suffix);
+        }
+    }
+
+    private static String asciiText(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+    private static void assertTextCanonicalization(String text, String c14nText) throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element element = doc.createElementNS("http://example.com", "ns0:text");
+        element.setAttributeNS(Constants.NamespaceSpecNS, "xmlns:ns0", "http://example.com");
+        element.appendChild(doc.createTextNode(text));
+        doc.appendChild(element);
+
+        final String c14nXML =
+                "<ns0:text xmlns:ns0=\"http://example.com\">" + c14nText + "</ns0:text>";
+
+        Canonicalizer20010315ExclOmitComments c14n =
+                new Canonicalizer20010315ExclOmitComments();
+        try (ByteArrayOutputStream writer = new ByteArrayOutputStream()) {
+            c14n.engineCanonicalizeSubTree(doc.getDocumentElement(), writer);
+            assertEquals(c14nXML, new String(writer.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
     private String getAbsolutePath(String path) {
         String basedir = System.getProperty("basedir");
         if (basedir != null && !"".equals(basedir)) {
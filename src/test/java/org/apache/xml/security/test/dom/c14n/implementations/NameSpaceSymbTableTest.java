@@ -208,4 +208,30 @@ public class NameSpaceSymbTableTest {
         ns.addMappingAndRender("ctrl", "http://foo.com/controls", node1);
         ns.addMappingAndRender("wiki", "http://foo.com/samples/wiki", node1);
     }
-}
\ No newline at end of file
+
+    @org.junit.jupiter.api.Test
+    public void testPopRestoresDeepFrames() {
+        NameSpaceSymbTable ns = new NameSpaceSymbTable();
+        ns.push();
+        ns.addMapping("a", "http://a", node1);
+        for (int i = 0; i < 40; i++) {
+            ns.push();
+            ns.addMapping("p" + i, "http://p" + i, node2);
+            assertEquals(node2, ns.getMapping("p" + i));
+            assertNull(ns.getMapping("p" + i));
+        }
+        assertEquals(41, ns.getLevel());
+        assertEquals(node1, ns.getMapping("a"));
+
+        ns.pop();
+        assertEquals(node1, ns.getMappingWithoutRendered("a"));
+        assertNull(ns.getMappingWithoutRendered("p39"));
+        assertNull(ns.getMapping("p38"));
+        for (int i = 38; i >= 0; i--) {
+            ns.pop();
+        }
+        assertEquals(1, ns.getLevel());
+        assertNull(ns.getMappingWithoutRendered("p0"));
+        assertEquals(node1, ns.getMapping("a"));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.c14n.implementations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.parser.XMLParserException;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that octet streams, which are canonicalized from StAX events unless they have a DTD,
+ * give the same result as the canonicalization of the parsed DOM.
+ */
+public class OctetStreamCanonicalizationTest {
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    private static final String[] ALGORITHMS = {
+        Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N_WITH_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N11_WITH_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N_EXCL_WITH_COMMENTS,
+    };
+
+    private static final String DOCUMENT =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<?xml-stylesheet href=\"doc.xsl\"\n   type=\"text/xsl\"   ?>\n"
+        + "<!-- comment before -->\n"
+        + "<a:doc xmlns:a=\"urn:a\" xmlns:b=\"urn:b\" xmlns=\"urn:default\" xml:lang=\"en\">\r\n"
+        + "  <e1   b:attr=\"1\" attr2=\"&lt;&amp;&quot;&#xD;&#10;&#9;\" a:attr=\"2\"/>\n"
+        + "  <e2 xmlns=\"\"><e3 xmlns:b=\"urn:b\">text &amp; &gt; &#xD;<![CDATA[<cdata & more>]]></e3></e2>\n"
+        + "  <b:e4 xmlns:c=\"urn:c\"><?pi data?><!-- inner comment --></b:e4>\n"
+        + "</a:doc>\n"
+        + "<!-- comment after --><?pi-after?>\n";
+
+    private final String prefix;
+
+    public OctetStreamCanonicalizationTest() {
+        String basedir = System.getProperty("basedir");
+        String path = "src/test/resources/org/apache/xml/security/c14n/in/";
+        prefix = basedir != null && !basedir.isEmpty() ? basedir + "/" + path : path;
+    }
+
+    @Test
+    public void testDocument() throws Exception {
+        assertSameResult(DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        assertSameResult(DOCUMENT.getBytes(StandardCharsets.UTF_16));
+    }
+
+    @Test
+    public void testTestVectors() throws Exception {
+        List<byte[]> inputs = new ArrayList<>();
+        for (String name : new File(prefix).list()) {
+            if (name.endsWith(".xml")) {
+                byte[] bytes = Files.readAllBytes(new File(prefix, name).toPath());
+                inputs.add(bytes);
+                // the same document without its DTD is canonicalized from StAX events
+                String text = new String(bytes, StandardCharsets.UTF_8);
+                int doctype = text.indexOf("<!DOCTYPE");
+                if (doctype >= 0 && text.indexOf("<!ENTITY") < 0) {
+                    int end = text.contains("]>") ? text.indexOf("]>", doctype) + 1 : text.indexOf('>', doctype);
+                    String withoutDTD = text.substring(0, doctype) + text.substring(end + 1);
+                    inputs.add(withoutDTD.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        assertTrue(inputs.size() > 10);
+        for (byte[] input : inputs) {
+            assertSameResult(input);
+        }
+    }
+
+    @Test
+    public void testDefaultAttributeFromDTD() throws Exception {
+        byte[] input = "<!DOCTYPE doc [<!ATTLIST e attr CDATA \"default\">]><doc><e/></doc>"
+            .getBytes(StandardCharsets.UTF_8);
+        assertEquals("<doc><e attr=\"default\"></e></doc>",
+                     new String(canonicalize(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS, input),
+                                StandardCharsets.UTF_8));
+        assertSameResult(input);
+    }
+
+    @Test
+    public void testMalformedDocument() throws Exception {
+        byte[] input = "<doc><e></doc>".getBytes(StandardCharsets.UTF_8);
+        for (String algorithm : ALGORITHMS) {
+            assertThrows(XMLParserException.class, () -> canonicalize(algorithm, input));
+        }
+    }
+
+    private static void assertSameResult(byte[] input) throws Exception {
+        for (String algorithm : ALGORITHMS) {
+            byte[] expected;
+            try {
+                Document doc = XMLUtils.read(new ByteArrayInputStream(input), false);
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                Canonicalizer.getInstance(algorithm).canonicalizeSubtree(doc, os);
+                expected = os.toByteArray();
+            } catch (Exception e) {
+                assertThrows(Exception.class, () -> canonicalize(algorithm, input));
+                continue;
+            }
+            assertEquals(new String(expected, StandardCharsets.UTF_8),
+                         new String(canonicalize(algorithm, input), StandardCharsets.UTF_8), algorithm);
+        }
+    }
+
+    private static byte[] canonicalize(String algorithm, byte[] input) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Canonicalizer.getInstance(algorithm).canonicalize(input, os, false);
+        return os.toByteArray();
+    }
+}
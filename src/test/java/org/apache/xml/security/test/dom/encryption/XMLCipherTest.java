@@ -26,12 +26,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.Key;
 import java.security.KeyPairGenerator;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.Security;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -45,7 +48,9 @@ import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.encryption.EncryptionProperties;
 import org.apache.xml.security.encryption.EncryptionProperty;
+import org.apache.xml.security.encryption.UnwrappedKeyCache;
 import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.EncryptedKey;
 import org.apache.xml.security.encryption.EncryptionMethod;
@@ -63,9 +68,13 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 
@@ -910,6 +919,234 @@ public class XMLCipherTest {
         xmlCipher.decryptToByteArray(encryptedData);
     }
 
+    @org.junit.jupiter.api.Test
+    public void testDecryptToStream() throws Exception {
+        byte[] plaintext = new byte[100000];
+        new java.util.Random(1).nextBytes(plaintext);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        Key key = keygen.generateKey();
+
+        for (String algorithm : new String[] {XMLCipher.AES_128, XMLCipher.AES_128_GCM}) {
+            Document d = TestUtils.newDocument();
+            XMLCipher cipher = XMLCipher.getInstance(algorithm);
+            cipher.init(XMLCipher.ENCRYPT_MODE, key);
+            EncryptedData encryptedData =
+                cipher.encryptData(d, EncryptionConstants.TYPE_CONTENT, new ByteArrayInputStream(plaintext));
+            Element ee = cipher.martial(d, encryptedData);
+            d.appendChild(ee);
+
+            XMLCipher decryptCipher = XMLCipher.getInstance();
+            decryptCipher.init(XMLCipher.DECRYPT_MODE, key);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            decryptCipher.decryptToStream(ee, os);
+            assertArrayEquals(plaintext, os.toByteArray());
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDecryptToStreamTamperedGCM() throws Exception {
+        byte[] plaintext = new byte[100000];
+        new java.util.Random(2).nextBytes(plaintext);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        Key key = keygen.generateKey();
+
+        Document d = TestUtils.newDocument();
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        EncryptedData encryptedData =
+            cipher.encryptData(d, EncryptionConstants.TYPE_CONTENT, new ByteArrayInputStream(plaintext));
+        byte[] encryptedBytes = XMLUtils.decode(encryptedData.getCipherData().getCipherValue().getValue());
+        encryptedBytes[encryptedBytes.length / 2] ^= 1;
+        encryptedData.getCipherData().getCipherValue().setValue(XMLUtils.encodeToString(encryptedBytes));
+        Element ee = cipher.martial(d, encryptedData);
+        d.appendChild(ee);
+
+        XMLCipher decryptCipher = XMLCipher.getInstance();
+        decryptCipher.init(XMLCipher.DECRYPT_MODE, key);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertThrows(XMLEncryptionException.class, () -> decryptCipher.decryptToStream(ee, os));
+        assertEquals(0, os.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDecryptToStreamPlaintextStaging() throws Exception {
+        // BouncyCastle releases GCM plaintext before the authentication tag has been verified
+        boolean addedProvider = Security.getProvider("BC") == null;
+        if (addedProvider) {
+            Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+        }
+        Path stagingDirectory = Files.createTempDirectory("xmlsec-staging");
+        try {
+            byte[] plaintext = new byte[100000];
+            new java.util.Random(5).nextBytes(plaintext);
+
+            KeyGenerator keygen = KeyGenerator.getInstance("AES");
+            keygen.init(128);
+            Key key = keygen.generateKey();
+
+            Document d = TestUtils.newDocument();
+            XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+            cipher.init(XMLCipher.ENCRYPT_MODE, key);
+            EncryptedData encryptedData =
+                cipher.encryptData(d, EncryptionConstants.TYPE_CONTENT, new ByteArrayInputStream(plaintext));
+            Element ee = cipher.martial(d, encryptedData);
+            d.appendChild(ee);
+
+            // By default the plaintext is staged in memory, the directory is not used
+            Path missingDirectory = stagingDirectory.resolve("missing");
+            XMLCipher decryptCipher = XMLCipher.getProviderInstance("BC");
+            decryptCipher.init(XMLCipher.DECRYPT_MODE, key);
+            decryptCipher.setPlaintextStaging(missingDirectory, -1);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            decryptCipher.decryptToStream(ee, os);
+            assertArrayEquals(plaintext, os.toByteArray());
+
+            // Beyond the threshold the plaintext is staged in a file in the directory
+            decryptCipher.setPlaintextStaging(missingDirectory, 1000);
+            assertThrows(XMLEncryptionException.class, () -> decryptCipher.decryptToStream(ee, new ByteArrayOutputStream()));
+
+            decryptCipher.setPlaintextStaging(stagingDirectory, 1000);
+            os.reset();
+            decryptCipher.decryptToStream(ee, os);
+            assertArrayEquals(plaintext, os.toByteArray());
+            try (java.util.stream.Stream<Path> files = Files.list(stagingDirectory)) {
+                assertEquals(0, files.count());
+            }
+
+            // Unverified plaintext is neither written nor left behind
+            byte[] encryptedBytes = XMLUtils.decode(encryptedData.getCipherData().getCipherValue().getValue());
+            encryptedBytes[encryptedBytes.length / 2] ^= 1;
+            encryptedData.getCipherData().getCipherValue().setValue(XMLUtils.encodeToString(encryptedBytes));
+            Element tampered = cipher.martial(d, encryptedData);
+            os.reset();
+            assertThrows(XMLEncryptionException.class, () -> decryptCipher.decryptToStream(tampered, os));
+            assertEquals(0, os.size());
+            try (java.util.stream.Stream<Path> files = Files.list(stagingDirectory)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(stagingDirectory);
+            if (addedProvider) {
+                Security.removeProvider("BC");
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDecryptToStreamCipherReference() throws Exception {
+        byte[] plaintext = new byte[100000];
+        new java.util.Random(3).nextBytes(plaintext);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        Key key = keygen.generateKey();
+
+        Document d = TestUtils.newDocument();
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        EncryptedData encryptedData =
+            cipher.encryptData(d, EncryptionConstants.TYPE_CONTENT, new ByteArrayInputStream(plaintext));
+        byte[] encryptedBytes = XMLUtils.decode(encryptedData.getCipherData().getCipherValue().getValue());
+
+        File cipherText = File.createTempFile("xmlsec-ciphertext", ".bin");
+        try {
+            Files.write(cipherText.toPath(), encryptedBytes);
+
+            EncryptedData referenceData =
+                cipher.createEncryptedData(CipherData.REFERENCE_TYPE, cipherText.toURI().toString());
+            referenceData.setEncryptionMethod(cipher.createEncryptionMethod(XMLCipher.AES_128));
+            Element ee = cipher.martial(d, referenceData);
+            d.appendChild(ee);
+
+            XMLCipher decryptCipher = XMLCipher.getInstance();
+            decryptCipher.init(XMLCipher.DECRYPT_MODE, key);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            decryptCipher.decryptToStream(ee, os);
+            assertArrayEquals(plaintext, os.toByteArray());
+        } finally {
+            Files.delete(cipherText.toPath());
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testEncryptToStream() throws Exception {
+        byte[] plaintext = new byte[1000000];
+        new java.util.Random(4).nextBytes(plaintext);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        Key key = keygen.generateKey();
+
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        Document d = TestUtils.newDocument();
+        KeyInfo keyInfo = new KeyInfo(d);
+        keyInfo.addKeyName("streaming-key");
+        cipher.getEncryptedData().setKeyInfo(keyInfo);
+        cipher.getEncryptedData().setId("ED-1");
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        cipher.encryptData(d, EncryptionConstants.TYPE_CONTENT, new ByteArrayInputStream(plaintext), os);
+
+        Document encrypted = XMLUtils.read(new ByteArrayInputStream(os.toByteArray()), false);
+        Element ee = encrypted.getDocumentElement();
+        assertEquals(EncryptionConstants._TAG_ENCRYPTEDDATA, ee.getLocalName());
+        assertEquals("ED-1", ee.getAttributeNS(null, "Id"));
+        assertEquals(EncryptionConstants.TYPE_CONTENT, ee.getAttributeNS(null, "Type"));
+
+        XMLCipher decryptCipher = XMLCipher.getInstance();
+        decryptCipher.init(XMLCipher.DECRYPT_MODE, key);
+        assertEquals("streaming-key",
+                     decryptCipher.loadEncryptedData(encrypted, ee).getKeyInfo().itemKeyName(0).getKeyName());
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        decryptCipher.decryptToStream(ee, decrypted);
+        assertArrayEquals(plaintext, decrypted.toByteArray());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testEncryptToXMLStreamWriter() throws Exception {
+        byte[] plaintext = "<data>A test encrypted secret</data>".getBytes(StandardCharsets.UTF_8);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        Key key = keygen.generateKey();
+
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+
+        java.io.StringWriter stringWriter = new java.io.StringWriter();
+        javax.xml.stream.XMLStreamWriter writer =
+            javax.xml.stream.XMLOutputFactory.newInstance().createXMLStreamWriter(stringWriter);
+        writer.writeStartDocument();
+        writer.writeStartElement("root");
+        cipher.encryptData(TestUtils.newDocument(), EncryptionConstants.TYPE_ELEMENT,
+                           new ByteArrayInputStream(plaintext), writer);
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+
+        Document encrypted = XMLUtils.read(
+            new ByteArrayInputStream(stringWriter.toString().getBytes(StandardCharsets.UTF_8)), false);
+        Element ee = (Element) encrypted.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+        assertNotNull(ee);
+
+        // the CipherValue has the same line breaks as one encoded with XMLUtils.encodeToString
+        String cipherValue = encrypted.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_CIPHERVALUE).item(0).getTextContent();
+        assertEquals(XMLUtils.encodeToString(XMLUtils.decode(cipherValue)), cipherValue);
+
+        XMLCipher decryptCipher = XMLCipher.getInstance();
+        decryptCipher.init(XMLCipher.DECRYPT_MODE, key);
+        decryptCipher.doFinal(encrypted, ee);
+        assertEquals("A test encrypted secret",
+                     encrypted.getDocumentElement().getFirstChild().getTextContent());
+    }
+
     @org.junit.jupiter.api.Test
     public void testMultipleKEKs() throws Exception {
 
@@ -979,6 +1216,96 @@ public class XMLCipherTest {
         }
     }
 
+    @org.junit.jupiter.api.Test
+    public void testUnwrappedKeyCache() throws Exception {
+        Assumptions.assumeTrue(haveISOPadding);
+
+        Document d = document(); // source
+        Element e = (Element) d.getElementsByTagName(element()).item(index());
+        String source = toString(d);
+
+        KeyPairGenerator rsaKeygen = KeyPairGenerator.getInstance("RSA");
+        KeyPair kp = rsaKeygen.generateKeyPair();
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        Key key = keygen.generateKey();
+
+        cipher = XMLCipher.getInstance(XMLCipher.RSA_OAEP);
+        cipher.init(XMLCipher.WRAP_MODE, kp.getPublic());
+        EncryptedKey encryptedKey = cipher.encryptKey(d, key);
+
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        KeyInfo builderKeyInfo = new KeyInfo(d);
+        cipher.getEncryptedData().setKeyInfo(builderKeyInfo);
+        builderKeyInfo.add(encryptedKey);
+        String encrypted = toString(cipher.doFinal(d, e));
+
+        // decrypt the same EncryptedKey twice with a shared cache
+        UnwrappedKeyCache cache = new UnwrappedKeyCache(10, 60000L);
+        for (int i = 0; i < 2; i++) {
+            Document ed = XMLUtils.read(new ByteArrayInputStream(encrypted.getBytes(StandardCharsets.UTF_8)), false);
+            Element ee = (Element) ed.getElementsByTagNameNS(
+                EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+            cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+            cipher.init(XMLCipher.DECRYPT_MODE, null);
+            cipher.setKEK(kp.getPrivate());
+            cipher.setUnwrappedKeyCache(cache);
+            assertEquals(source, toString(cipher.doFinal(ed, ee)));
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testUnwrappedKeyCacheEviction() throws Exception {
+        UnwrappedKeyCache cache = new UnwrappedKeyCache(1, 60000L);
+        Key kek = KeyGenerator.getInstance("AES").generateKey();
+        DestroyableKey key1 = new DestroyableKey();
+        DestroyableKey key2 = new DestroyableKey();
+
+        Object cacheKey1 = cache.createKey(kek, XMLCipher.AES_128_KeyWrap, null, null, null, "AES", new byte[] {1});
+        Object cacheKey2 = cache.createKey(kek, XMLCipher.AES_128_KeyWrap, null, null, null, "AES", new byte[] {2});
+        cache.put(cacheKey1, key1);
+        // every caller gets its own copy of the key
+        Key hit = cache.get(cacheKey1);
+        assertEquals(key1, hit);
+        assertNotSame(key1, hit);
+        assertNotSame(hit, cache.get(cacheKey1));
+
+        cache.put(cacheKey2, key2);
+        assertNull(cache.get(cacheKey1));
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        // only the copies held by the cache are destroyed, not the keys of the callers
+        assertFalse(key1.isDestroyed());
+        assertFalse(key2.isDestroyed());
+        assertEquals(key1, hit);
+    }
+
+    private static class DestroyableKey extends SecretKeySpec {
+        private static final long serialVersionUID = 1L;
+        private boolean destroyed;
+
+        DestroyableKey() {
+            super(new byte[16], "AES");
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+
     private String toString (Node n) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Canonicalizer c14n = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.keys.content.x509;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import org.apache.xml.security.keys.content.x509.X509CertificateCache;
+import org.apache.xml.security.keys.content.x509.XMLX509Certificate;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that parsed certificates are reused.
+ */
+public class X509CertificateCacheTest {
+
+    private static final String BASEDIR =
+        System.getProperty("basedir") == null ? "./": System.getProperty("basedir");
+    private static final String CERTS =
+        "src/test/resources/ie/baltimore/merlin-examples/merlin-xmldsig-twenty-three/certs/";
+
+    @Test
+    public void testCache() throws Exception {
+        byte[] lugh = read("lugh.crt");
+        byte[] macha = read("macha.crt");
+
+        X509CertificateCache cache = new X509CertificateCache(1);
+        X509Certificate cert = cache.get(lugh);
+        assertSame(cert, cache.get(lugh.clone()));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        // The oldest certificate is evicted
+        X509Certificate other = cache.get(macha);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(other, cache.get(macha));
+        assertEquals(cert, cache.get(lugh));
+        assertEquals(3, cache.getMissCount());
+
+        byte[] truncated = Arrays.copyOf(lugh, lugh.length / 2);
+        assertThrows(CertificateException.class, () -> cache.get(truncated));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDefaultCache() throws Exception {
+        X509CertificateCache defaultCache = X509CertificateCache.getDefault();
+        X509CertificateCache cache = new X509CertificateCache(16);
+        X509CertificateCache.setDefault(cache);
+        try {
+            XMLX509Certificate xmlCert = new XMLX509Certificate(TestUtils.newDocument(), read("lugh.crt"));
+            X509Certificate cert = xmlCert.getX509Certificate();
+            assertSame(cert, xmlCert.getX509Certificate());
+            assertEquals(1, cache.getHitCount());
+
+            X509CertificateCache.setDefault(null);
+            assertEquals(cert, xmlCert.getX509Certificate());
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        } finally {
+            X509CertificateCache.setDefault(defaultCache);
+        }
+    }
+
+    private static byte[] read(String fileName) throws Exception {
+        return Files.readAllBytes(new File(BASEDIR, CERTS + fileName).toPath());
+    }
+
+    @Test
+    public void testInvalidCacheSizeProperty() throws Exception {
+        Method getDefaultMaxEntries = X509CertificateCache.class.getDeclaredMethod("getDefaultMaxEntries");
+        getDefaultMaxEntries.setAccessible(true);
+        String property = "org.apache.xml.security.certificateCacheSize";
+        String oldValue = System.getProperty(property);
+        try {
+            System.setProperty(property, "12");
+            assertEquals(12, getDefaultMaxEntries.invoke(null));
+            // a malformed value must not prevent the class from being initialized
+            System.setProperty(property, "large");
+            assertEquals(256, getDefaultMaxEntries.invoke(null));
+        } finally {
+            if (oldValue == null) {
+                System.clearProperty(property);
+            } else {
+                System.setProperty(property, oldValue);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.signature;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.signature.ReferenceDigestCache;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.ElementProxy;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that digest values of References shared by several signatures are reused.
+ */
+public class ReferenceDigestCacheTest {
+
+    private static final String NS = "http://ns.example.org/";
+
+    private final SecretKey key =
+        new SecretKeySpec("secret-secret-secret".getBytes(StandardCharsets.US_ASCII), "HmacSHA256");
+
+    public ReferenceDigestCacheTest() throws Exception {
+        Init.init();
+        ElementProxy.setDefaultPrefix(Constants.SignatureSpecNS, "ds");
+    }
+
+    @Test
+    public void testSharedReference() throws Exception {
+        Document doc = createSignedDocument();
+        NodeList signatures = doc.getElementsByTagNameNS(Constants.SignatureSpecNS, "Signature");
+        assertEquals(2, signatures.getLength());
+
+        ReferenceDigestCache cache = new ReferenceDigestCache(16);
+        XMLSignature signature = null;
+        for (int i = 0; i < signatures.getLength(); i++) {
+            signature = new XMLSignature((Element) signatures.item(i), "", false);
+            signature.setReferenceDigestCache(cache);
+            assertTrue(signature.checkSignatureValue(key));
+            assertNotNull(signature.getSignedInfo().item(0).getTransformsOutput());
+        }
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // the transforms output is also available if the digest value was cached
+        XMLSignatureInput transformsOutput = signature.getSignedInfo().item(0).getTransformsOutput();
+        assertEquals("<obj xmlns=\"" + NS + "\" Id=\"obj\">Hello World!</obj>",
+                     new String(transformsOutput.getBytes(), StandardCharsets.UTF_8));
+
+        // Once the content has changed the cached digest must not be used for another document
+        Document tampered = createSignedDocument();
+        Element obj = (Element) tampered.getElementsByTagNameNS(NS, "obj").item(0);
+        obj.setTextContent("tampered");
+        signature = new XMLSignature(
+            (Element) tampered.getElementsByTagNameNS(Constants.SignatureSpecNS, "Signature").item(0), "", false);
+        signature.setReferenceDigestCache(cache);
+        assertFalse(signature.checkSignatureValue(key));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testSecureValidation() throws Exception {
+        Document doc = createSignedDocument();
+        NodeList signatures = doc.getElementsByTagNameNS(Constants.SignatureSpecNS, "Signature");
+
+        ReferenceDigestCache cache = new ReferenceDigestCache(16);
+        for (int i = 0; i < signatures.getLength(); i++) {
+            XMLSignature signature = new XMLSignature((Element) signatures.item(i), "", true);
+            signature.setReferenceDigestCache(cache);
+            assertTrue(signature.checkSignatureValue(key));
+        }
+        assertEquals(0, cache.size());
+
+        cache.setSecureValidationAllowed(true);
+        for (int i = 0; i < signatures.getLength(); i++) {
+            XMLSignature signature = new XMLSignature((Element) signatures.item(i), "", true);
+            signature.setReferenceDigestCache(cache);
+            assertTrue(signature.checkSignatureValue(key));
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testSharedReferenceJSR105() throws Exception {
+        Document doc = createSignedDocument();
+        NodeList signatures = doc.getElementsByTagNameNS(Constants.SignatureSpecNS, "Signature");
+
+        ReferenceDigestCache cache = new ReferenceDigestCache(16);
+        cache.setSecureValidationAllowed(true);
+        XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM", new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI());
+        for (int i = 0; i < signatures.getLength(); i++) {
+            DOMValidateContext vc =
+                new DOMValidateContext(KeySelector.singletonKeySelector(key), signatures.item(i));
+            vc.setProperty("org.apache.jcp.xml.dsig.referenceDigestCache", cache);
+            assertTrue(fac.unmarshalXMLSignature(vc).validate(vc));
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testExternalResource() throws Exception {
+        ReferenceDigestCache cache = new ReferenceDigestCache(16);
+        XMLSignatureInput input = new XMLSignatureInput("Hello World!".getBytes(StandardCharsets.UTF_8));
+        input.setSourceURI("http://www.example.org/hello.txt");
+        assertNull(cache.createKey(input, null, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256));
+    }
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ReferenceDigestCache(0));
+    }
+
+    private Document createSignedDocument() throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(NS, "root");
+        doc.appendChild(root);
+        Element obj = doc.createElementNS(NS, "obj");
+        obj.setAttributeNS(null, "Id", "obj");
+        obj.setIdAttributeNS(null, "Id", true);
+        obj.setTextContent("Hello World!");
+        root.appendChild(obj);
+
+        for (int i = 0; i < 2; i++) {
+            XMLSignature sig = new XMLSignature(doc, "", XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+            root.appendChild(sig.getElement());
+            Transforms transforms = new Transforms(doc);
+            transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+            sig.addDocument("#obj", transforms, Constants.ALGO_ID_DIGEST_SHA1);
+            sig.sign(key);
+        }
+        return doc;
+    }
+}
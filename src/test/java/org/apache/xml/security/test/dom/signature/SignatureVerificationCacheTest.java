@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.signature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.signature.SignatureVerificationCache;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.ElementProxy;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the SignatureValue check of a previously verified SignedInfo is reused.
+ */
+public class SignatureVerificationCacheTest {
+
+    private static final String NS = "http://ns.example.org/";
+
+    private final KeyPair keyPair;
+
+    public SignatureVerificationCacheTest() throws Exception {
+        Init.init();
+        ElementProxy.setDefaultPrefix(Constants.SignatureSpecNS, "ds");
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        keyPair = kpg.generateKeyPair();
+    }
+
+    @Test
+    public void testRepeatedVerification() throws Exception {
+        Document doc = createDocument();
+        Element sigElement = sign(doc, XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256, keyPair.getPrivate());
+
+        SignatureVerificationCache cache = new SignatureVerificationCache(16, 60000L);
+        for (int i = 0; i < 3; i++) {
+            XMLSignature signature = new XMLSignature(sigElement, "");
+            signature.setSignatureVerificationCache(cache);
+            assertTrue(signature.checkSignatureValue(keyPair.getPublic()));
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+
+        // The References are still verified
+        doc.getDocumentElement().getFirstChild().setTextContent("tampered");
+        XMLSignature signature = new XMLSignature(sigElement, "");
+        signature.setSignatureVerificationCache(cache);
+        assertFalse(signature.checkSignatureValue(keyPair.getPublic()));
+        assertEquals(3, cache.getHitCount());
+
+        // A different key doesn't match
+        KeyPair otherKeyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        signature = new XMLSignature(sigElement, "");
+        signature.setSignatureVerificationCache(cache);
+        assertFalse(signature.checkSignatureValue(otherKeyPair.getPublic()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testRepeatedVerificationJSR105() throws Exception {
+        Document doc = createDocument();
+        Element sigElement = sign(doc, XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256, keyPair.getPrivate());
+
+        SignatureVerificationCache cache = new SignatureVerificationCache(16, 60000L);
+        XMLSignatureFactory fac =
+            XMLSignatureFactory.getInstance("DOM", new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI());
+        for (int i = 0; i < 2; i++) {
+            DOMValidateContext vc =
+                new DOMValidateContext(KeySelector.singletonKeySelector(keyPair.getPublic()), sigElement);
+            vc.setProperty("org.apache.jcp.xml.dsig.signatureVerificationCache", cache);
+            assertTrue(fac.unmarshalXMLSignature(vc).validate(vc));
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testHMACIsNotCached() throws Exception {
+        SecretKey key =
+            new SecretKeySpec("secret-secret-secret".getBytes(StandardCharsets.US_ASCII), "HmacSHA256");
+        Document doc = createDocument();
+        Element sigElement = sign(doc, XMLSignature.ALGO_ID_MAC_HMAC_SHA256, key);
+
+        SignatureVerificationCache cache = new SignatureVerificationCache(16, 60000L);
+        XMLSignature signature = new XMLSignature(sigElement, "");
+        signature.setSignatureVerificationCache(cache);
+        assertTrue(signature.checkSignatureValue(key));
+        assertEquals(0, cache.size());
+    }
+
+    private static Document createDocument() throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(NS, "root");
+        doc.appendChild(root);
+        Element data = doc.createElementNS(NS, "data");
+        data.setTextContent("Hello World!");
+        root.appendChild(data);
+        return doc;
+    }
+
+    private static Element sign(Document doc, String algorithm, java.security.Key key) throws Exception {
+        XMLSignature sig = new XMLSignature(doc, "", algorithm);
+        doc.getDocumentElement().appendChild(sig.getElement());
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        sig.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        sig.sign(key);
+        return sig.getElement();
+    }
+}
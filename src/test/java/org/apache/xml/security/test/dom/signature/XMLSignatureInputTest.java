@@ -23,12 +23,26 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.InvalidCanonicalizerException;
+import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.signature.XMLSignatureException;
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.utils.DigesterOutputStream;
+import org.apache.xml.security.utils.resolver.implementations.ResolverAnonymous;
+import org.w3c.dom.Document;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -165,4 +179,80 @@ public class XMLSignatureInputTest {
         }
     }
 
+    @org.junit.jupiter.api.Test
+    public void testFileIsDigestedFromChannel() throws Exception {
+        byte[] content = new byte[300 * 1024];
+        new Random(42).nextBytes(content);
+        Path file = Files.createTempFile("xmlsignatureinput", ".bin");
+        try {
+            Files.write(file, content);
+            XMLSignatureInput input = new XMLSignatureInput(file);
+            assertTrue(input.isOctetStream());
+            assertTrue(input.isFile());
+
+            MessageDigestAlgorithm mda =
+                MessageDigestAlgorithm.getInstance(TestUtils.newDocument(), MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+            try (DigesterOutputStream diOs = new DigesterOutputStream(mda)) {
+                input.updateOutputStream(diOs);
+                assertEquals(content.length, diOs.getByteCount());
+                assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), diOs.getDigestValue());
+            }
+            assertFalse(input.isFile());
+            assertEquals(-1, input.getOctetStream().read());
+            input.getOctetStreamReal().close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testFileIsCopiedAfterRead() throws Exception {
+        Path file = Files.createTempFile("xmlsignatureinput", ".txt");
+        try {
+            Files.write(file, _octetStreamTextInput.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            XMLSignatureInput input = new XMLSignatureInput(file);
+            assertEquals('K', input.getOctetStream().read());
+            assertFalse(input.isFile());
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            input.updateOutputStream(baos);
+            assertEquals(_octetStreamTextInput.substring(1),
+                         new String(baos.toByteArray(), java.nio.charset.StandardCharsets.UTF_8));
+            input.getOctetStreamReal().close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDetachedFileReference() throws Exception {
+        byte[] content = new byte[100 * 1024];
+        new Random(7).nextBytes(content);
+        Path file = Files.createTempFile("xmlsignatureinput", ".bin");
+        try {
+            Files.write(file, content);
+            Document doc = TestUtils.newDocument();
+            XMLSignature sig = new XMLSignature(doc, "", XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+            doc.appendChild(sig.getElement());
+            sig.addResourceResolver(new ResolverAnonymous(file));
+            sig.addDocument(null, null, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+            SecretKey key = new SecretKeySpec(new byte[32], "HmacSHA256");
+            sig.sign(key);
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content),
+                              sig.getSignedInfo().item(0).getDigestValue());
+
+            XMLSignature signature = new XMLSignature(sig.getElement(), "");
+            signature.addResourceResolver(new ResolverAnonymous(file));
+            assertTrue(signature.checkSignatureValue(key));
+
+            content[0]++;
+            Files.write(file, content);
+            signature = new XMLSignature(sig.getElement(), "");
+            signature.addResourceResolver(new ResolverAnonymous(file));
+            assertFalse(signature.checkSignatureValue(key));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
 }
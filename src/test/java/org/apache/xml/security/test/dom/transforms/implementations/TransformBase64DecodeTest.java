@@ -30,12 +30,14 @@ import javax.xml.xpath.XPathFactory;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.test.dom.DSNamespaceContext;
 import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Unit test for {@link org.apache.xml.security.transforms.implementations.TransformBase64Decode}
@@ -137,6 +139,17 @@ public class TransformBase64DecodeTest {
         );
     }
 
+    @org.junit.jupiter.api.Test
+    public void testDataAfterPadding() throws Exception {
+        Document doc = TransformBase64DecodeTest.createDocument();
+        Transforms t = new Transforms(doc);
+        doc.appendChild(t.getElement());
+        t.addTransform(Transforms.TRANSFORM_BASE64_DECODE);
+
+        XMLSignatureInput in = new XMLSignatureInput("QQ==QUJD".getBytes());
+        assertThrows(TransformationException.class, () -> t.performTransforms(in));
+    }
+
     private static Document createDocument() throws ParserConfigurationException {
         Document doc = TestUtils.newDocument();
 
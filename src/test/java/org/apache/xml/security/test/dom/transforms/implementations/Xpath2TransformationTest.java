@@ -20,9 +20,13 @@ package org.apache.xml.security.test.dom.transforms.implementations;
 
 
 import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.xml.security.Init;
 import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.transforms.params.XPath2FilterContainer;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Element;
@@ -156,4 +160,26 @@ public class Xpath2TransformationTest {
         }
     }
 
-}
\ No newline at end of file
+    @org.junit.jupiter.api.Test
+    public void testIntersectSubtractUnion() throws Exception {
+        String xml = "<root><a id=\"1\"><b>x</b><c><d>y</d></c></a><e><f>z</f></e><g>w</g></root>";
+        org.w3c.dom.Document doc = null;
+        try (ByteArrayInputStream is = new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))) {
+            doc = XMLUtils.read(is, false);
+        }
+
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_XPATH2FILTER, XPath2FilterContainer.newInstances(doc,
+            new String[][] {
+                {"intersect", "//a | //e"},
+                {"subtract", "//c"},
+                {"union", "//d"},
+            }));
+        transforms.addTransform(Transforms.TRANSFORM_C14N_OMIT_COMMENTS);
+        XMLSignatureInput output = transforms.performTransforms(new XMLSignatureInput(doc));
+
+        assertEquals("<a id=\"1\"><b>x</b><d>y</d></a><e><f>z</f></e>",
+                     new String(output.getBytes(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.xml.security.utils.Base64DecodingOutputStream;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Base64DecodingOutputStreamTest {
+
+    @Test
+    public void testSplitWrites() throws Exception {
+        Random random = new Random(42);
+        for (int length = 0; length < 5000; length += 1 + length / 4) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = XMLUtils.encodeToString(data);
+            byte[] encodedBytes = encoded.getBytes(StandardCharsets.US_ASCII);
+            char[] encodedChars = encoded.toCharArray();
+
+            for (int split = 1; split < 6; split++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ByteArrayOutputStream chars = new ByteArrayOutputStream();
+                Base64DecodingOutputStream byteDecoder = new Base64DecodingOutputStream(bytes);
+                Base64DecodingOutputStream charDecoder = new Base64DecodingOutputStream(chars);
+                for (int i = 0; i < encoded.length(); i += split) {
+                    int len = Math.min(split, encoded.length() - i);
+                    byteDecoder.write(encodedBytes, i, len);
+                    charDecoder.write(encodedChars, i, len);
+                }
+                byteDecoder.close();
+                charDecoder.finish();
+                assertArrayEquals(data, bytes.toByteArray());
+                assertArrayEquals(data, chars.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testLineBreaksAndPadding() throws Exception {
+        byte[] data = new byte[200];
+        new Random(7).nextBytes(data);
+        String encoded = XMLUtils.encodeToString(data);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (Base64DecodingOutputStream decoder = new Base64DecodingOutputStream(os)) {
+            decoder.write("\n" + encoded.substring(0, 10) + "\r\n  ");
+            decoder.write(encoded.substring(10) + "\n");
+        }
+        assertArrayEquals(XMLUtils.decode(encoded), os.toByteArray());
+
+        // data after the padding is rejected, like the MIME decoder does
+        Base64DecodingOutputStream decoder = new Base64DecodingOutputStream(new ByteArrayOutputStream());
+        decoder.write(encoded + "\n");
+        assertThrows(IOException.class, () -> decoder.write("QUJD"));
+    }
+
+    @Test
+    public void testInvalidPadding() throws Exception {
+        for (String invalid : new String[] {"QQ==QUJD", "QQ=", "QQ=\n=", "QUJD\n=QUJD", "=", "QUJDR=", "QQ=A"}) {
+            assertThrows(IllegalArgumentException.class, () -> XMLUtils.decode(invalid), invalid);
+            Base64DecodingOutputStream decoder = new Base64DecodingOutputStream(new ByteArrayOutputStream());
+            assertThrows(IOException.class, () -> {
+                decoder.write(invalid);
+                decoder.finish();
+            }, invalid);
+        }
+        for (String valid : new String[] {"QQ==", "QQ==\n", "QUI=", "QUI= \r\n", "QUJD", "QQ"}) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            try (Base64DecodingOutputStream decoder = new Base64DecodingOutputStream(os)) {
+                decoder.write(valid);
+            }
+            assertArrayEquals(XMLUtils.decode(valid), os.toByteArray(), valid);
+        }
+    }
+
+    @Test
+    public void testIncompleteQuantum() throws Exception {
+        Base64DecodingOutputStream decoder = new Base64DecodingOutputStream(new ByteArrayOutputStream());
+        decoder.write("QUJDR");
+        assertThrows(IOException.class, decoder::finish);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.utils.Base64TextInputStream;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Base64TextInputStreamTest {
+
+    @Test
+    public void testSplitTextNodes() throws Exception {
+        Random random = new Random(42);
+        for (int length = 0; length < 70; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = XMLUtils.encodeToString(data);
+
+            for (int split = 1; split < 6; split++) {
+                Element element = createElement(encoded, split);
+                for (int bufferSize = 1; bufferSize < 5; bufferSize++) {
+                    assertArrayEquals(data, read(new Base64TextInputStream(element), bufferSize));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLineBreaksAndComments() throws Exception {
+        byte[] data = new byte[200];
+        new Random(7).nextBytes(data);
+        String encoded = XMLUtils.encodeToString(data);
+
+        Document doc = TestUtils.newDocument();
+        Element element = doc.createElementNS(null, "CipherValue");
+        element.appendChild(doc.createTextNode("\n" + encoded.substring(0, 10) + "\r\n  "));
+        element.appendChild(doc.createComment("ignored"));
+        element.appendChild(doc.createTextNode(encoded.substring(10) + "\n"));
+
+        assertArrayEquals(data, read(new Base64TextInputStream(element), 16));
+        assertArrayEquals(XMLUtils.decode(XMLUtils.getFullTextChildrenFromNode(element)),
+                          read(new Base64TextInputStream(element), 1024));
+    }
+
+    @Test
+    public void testIncompleteQuantum() throws Exception {
+        Element element = createElement("QUJDR", 1);
+        assertThrows(IOException.class, () -> read(new Base64TextInputStream(element), 16));
+    }
+
+    @Test
+    public void testInvalidPadding() throws Exception {
+        for (String invalid : new String[] {"QQ==QUJD", "QQ=", "QQ=\n=", "QUJD\n=QUJD", "=", "QUJDR=", "QQ=A"}) {
+            for (int split = 1; split < 4; split++) {
+                Element element = createElement(invalid, split);
+                assertThrows(IOException.class, () -> read(new Base64TextInputStream(element), 16), invalid);
+            }
+        }
+        for (String valid : new String[] {"QQ==", "QQ==\n", "QUI=", "QUI= \r\n", "QUJD", "QQ"}) {
+            for (int split = 1; split < 4; split++) {
+                Element element = createElement(valid, split);
+                assertArrayEquals(XMLUtils.decode(valid), read(new Base64TextInputStream(element), 1), valid);
+            }
+        }
+    }
+
+    private static Element createElement(String text, int split) throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element element = doc.createElementNS(null, "CipherValue");
+        for (int i = 0; i < text.length(); i += split) {
+            element.appendChild(doc.createTextNode(text.substring(i, Math.min(text.length(), i + split))));
+        }
+        return element;
+    }
+
+    private static byte[] read(InputStream is, int bufferSize) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buf = new byte[bufferSize];
+        int read;
+        while ((read = is.read(buf)) != -1) {
+            os.write(buf, 0, read);
+        }
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.Instrumentation;
+import org.apache.xml.security.utils.Instrumentation.Phase;
+import org.apache.xml.security.utils.InstrumentationSupport;
+import org.apache.xml.security.utils.JFRInstrumentation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the processing phases are reported to the registered Instrumentation.
+ */
+public class InstrumentationTest {
+
+    private static final String NS = "urn:example:instrumentation";
+
+    public InstrumentationTest() {
+        Init.init();
+    }
+
+    @AfterEach
+    public void reset() {
+        InstrumentationSupport.setInstrumentation(null);
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        RecordingInstrumentation instrumentation = new RecordingInstrumentation();
+        InstrumentationSupport.setInstrumentation(instrumentation);
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair keyPair = kpg.generateKeyPair();
+        Element sigElement = sign(createDocument(), keyPair);
+        assertEquals(1, instrumentation.count(Phase.SIGNATURE));
+
+        XMLSignature signature = new XMLSignature(sigElement, "");
+        assertTrue(signature.checkSignatureValue(keyPair.getPublic()));
+
+        assertEquals(2, instrumentation.count(Phase.SIGNATURE));
+        assertEquals(2, instrumentation.count(Phase.DIGEST));
+        assertEquals(2, instrumentation.count(Phase.DEREFERENCE));
+        assertEquals(4, instrumentation.count(Phase.TRANSFORM));
+        assertTrue(instrumentation.count(Phase.CANONICALIZATION) >= 4);
+        assertEquals(1, instrumentation.count(Phase.BASE64));
+        assertTrue(instrumentation.bytes(Phase.DIGEST) > 0);
+        assertTrue(instrumentation.algorithms.contains(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256));
+        assertTrue(instrumentation.algorithms.contains(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256));
+    }
+
+    @Test
+    public void testEncryption() throws Exception {
+        RecordingInstrumentation instrumentation = new RecordingInstrumentation();
+        InstrumentationSupport.setInstrumentation(instrumentation);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        SecretKey key = keygen.generateKey();
+        Document doc = createDocument();
+
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        cipher.doFinal(doc, doc.getDocumentElement());
+        assertEquals(1, instrumentation.count(Phase.CIPHER));
+
+        Element encryptedData = (Element) doc.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        cipher.doFinal(doc, encryptedData);
+
+        assertEquals(2, instrumentation.count(Phase.CIPHER));
+        assertTrue(instrumentation.bytes(Phase.CIPHER) > 0);
+        assertTrue(instrumentation.cacheAccesses.containsKey("XMLCipher.bufferPool"));
+    }
+
+    @Test
+    public void testJFRInstrumentation() throws Exception {
+        InstrumentationSupport.setInstrumentation(new JFRInstrumentation());
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair keyPair = kpg.generateKeyPair();
+
+        Path file = Files.createTempFile("xmlsec-instrumentation", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("org.apache.xml.security.Phase");
+                recording.start();
+                sign(createDocument(), keyPair);
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<String> phases = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if ("org.apache.xml.security.Phase".equals(event.getEventType().getName())) {
+                    phases.add(event.getString("phase"));
+                }
+            }
+            assertTrue(phases.contains(Phase.SIGNATURE.name()));
+            assertTrue(phases.contains(Phase.DIGEST.name()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static Document createDocument() throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(NS, "root");
+        doc.appendChild(root);
+        Element data = doc.createElementNS(NS, "data");
+        data.setTextContent("Hello World!");
+        root.appendChild(data);
+        return doc;
+    }
+
+    private static Element sign(Document doc, KeyPair keyPair) throws Exception {
+        XMLSignature sig = new XMLSignature(doc, "", XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+        doc.getDocumentElement().appendChild(sig.getElement());
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        sig.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        sig.sign(keyPair.getPrivate());
+        return sig.getElement();
+    }
+
+    private static final class RecordingInstrumentation implements Instrumentation {
+        private final Map<Phase, AtomicLong> counts = new ConcurrentHashMap<>();
+        private final Map<Phase, AtomicLong> bytes = new ConcurrentHashMap<>();
+        private final List<String> algorithms = new ArrayList<>();
+        private final Map<String, Boolean> cacheAccesses = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean isEnabled(Phase phase) {
+            return true;
+        }
+
+        @Override
+        public synchronized void record(Phase phase, String algorithm, long nanos, long bytes) {
+            assertTrue(nanos >= 0);
+            counts.computeIfAbsent(phase, p -> new AtomicLong()).incrementAndGet();
+            if (bytes > 0) {
+                this.bytes.computeIfAbsent(phase, p -> new AtomicLong()).addAndGet(bytes);
+            }
+            algorithms.add(algorithm);
+        }
+
+        @Override
+        public void recordCacheAccess(String name, boolean hit) {
+            cacheAccesses.put(name, hit);
+        }
+
+        long count(Phase phase) {
+            AtomicLong count = counts.get(phase);
+            return count == null ? 0 : count.get();
+        }
+
+        long bytes(Phase phase) {
+            AtomicLong count = bytes.get(phase);
+            return count == null ? 0 : count.get();
+        }
+    }
+}
@@ -108,4 +108,24 @@ public class RFC2253ParserTest {
         StringBuilder sb = new StringBuilder("Lu\uc48di\uc487");
         assertEquals(RFC2253Parser.xmldsigtoRFC2253("SN=" + sb.toString()), "SN=Lu\uc48di\uc487");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNormalize() throws Exception {
+        assertEquals("CN=Steve Kille,O=Isode Limited,C=GB",
+                     RFC2253Parser.normalize(" cn = Steve Kille ; o=Isode Limited,\tC=GB "));
+        assertEquals("OU=Sales+CN=J. Smith,O=Widget Inc.,C=US",
+                     RFC2253Parser.normalize("OU=Sales + CN=J. Smith, O=Widget Inc., C=US"));
+        assertEquals("2.5.4.3= Steve,CN=Kille", RFC2253Parser.normalize("2.5.4.3= Steve ,oidCN=Kille"));
+        assertEquals("CN=a=b,O=Test", RFC2253Parser.normalize("CN=a=b,O=Test"));
+        // names which are not handled in a single pass
+        assertEquals("CN=Steve\\, Kille,O=Test", RFC2253Parser.normalize("CN=\"Steve, Kille\", O=Test"));
+        assertEquals("CN=a,", RFC2253Parser.normalize("CN=a,"));
+        assertEquals("CN=\\#a", RFC2253Parser.normalize("CN=#a"));
+        assertEquals("CN=#a", RFC2253Parser.normalize("CN=\\#a", false));
+
+        // repeated calls give the same results
+        assertEquals("CN=Steve Kille,O=Isode Limited,C=GB",
+                     RFC2253Parser.normalize(" cn = Steve Kille ; o=Isode Limited,\tC=GB "));
+        assertEquals("CN=\\#a", RFC2253Parser.normalize("CN=#a"));
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils.resolver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.utils.resolver.ResourceResolverContext;
+import org.apache.xml.security.utils.resolver.ResourceResolverException;
+import org.apache.xml.security.utils.resolver.implementations.HttpResourceCache;
+import org.apache.xml.security.utils.resolver.implementations.ResolverDirectHTTP;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the caching of HTTP resources by ResolverDirectHTTP against a local server.
+ */
+public class ResolverDirectHTTPCacheTest {
+
+    private static final String CONTENT = "<doc>content</doc>";
+    private static final String ETAG = "\"v1\"";
+
+    private static Server httpServer;
+    private static String baseURL;
+    private static final AtomicInteger requestCount = new AtomicInteger();
+    private static final AtomicInteger notModifiedCount = new AtomicInteger();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        Init.init();
+        httpServer = new Server(0);
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(new CachingServlet()), "/*");
+        httpServer.setHandler(context);
+        httpServer.start();
+        baseURL = "http://localhost:" + ((ServerConnector)httpServer.getConnectors()[0]).getLocalPort() + "/";
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        httpServer.stop();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        requestCount.set(0);
+        notModifiedCount.set(0);
+    }
+
+    @Test
+    public void testFreshResourceIsNotRequestedAgain() throws Exception {
+        HttpResourceCache cache = new HttpResourceCache(1024);
+        ResolverDirectHTTP resolver = new ResolverDirectHTTP(null, cache);
+
+        for (int i = 0; i < 3; i++) {
+            XMLSignatureInput input = resolver.engineResolveURI(createContext(baseURL + "max-age.xml", null));
+            assertEquals(CONTENT, new String(input.getBytes(), StandardCharsets.UTF_8));
+            assertEquals("text/xml", input.getMIMEType());
+        }
+        assertEquals(1, requestCount.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.size());
+        assertEquals(CONTENT.length(), cache.getTotalBytes());
+    }
+
+    @Test
+    public void testConditionalRequest() throws Exception {
+        HttpResourceCache cache = new HttpResourceCache(1024);
+        ResolverDirectHTTP resolver = new ResolverDirectHTTP(null, cache);
+
+        for (int i = 0; i < 3; i++) {
+            XMLSignatureInput input = resolver.engineResolveURI(createContext(baseURL + "no-cache.xml", null));
+            assertEquals(CONTENT, new String(input.getBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(3, requestCount.get());
+        assertEquals(2, notModifiedCount.get());
+        assertEquals(2, cache.getRevalidationCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testNoStore() throws Exception {
+        HttpResourceCache cache = new HttpResourceCache(1024);
+        ResolverDirectHTTP resolver = new ResolverDirectHTTP(null, cache);
+
+        resolver.engineResolveURI(createContext(baseURL + "no-store.xml", null));
+        resolver.engineResolveURI(createContext(baseURL + "no-store.xml", null));
+        assertEquals(2, requestCount.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCacheSizeLimit() throws Exception {
+        HttpResourceCache cache = new HttpResourceCache(CONTENT.length() + 1L);
+        ResolverDirectHTTP resolver = new ResolverDirectHTTP(null, cache);
+
+        resolver.engineResolveURI(createContext(baseURL + "max-age.xml", null));
+        resolver.engineResolveURI(createContext(baseURL + "max-age2.xml", null));
+        assertEquals(1, cache.size());
+        resolver.engineResolveURI(createContext(baseURL + "max-age2.xml", null));
+        resolver.engineResolveURI(createContext(baseURL + "max-age.xml", null));
+        assertEquals(3, requestCount.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        Map<String, String> resolverProperties = new HashMap<>();
+        resolverProperties.put("http.read.timeout", "100");
+        ResolverDirectHTTP resolver = new ResolverDirectHTTP(resolverProperties);
+
+        assertThrows(ResourceResolverException.class, () ->
+            resolver.engineResolveURI(createContext(baseURL + "slow.xml", null)));
+    }
+
+    private static ResourceResolverContext createContext(String url, Map<String, String> properties)
+        throws Exception {
+        Document doc = TestUtils.newDocument();
+        Attr uri = doc.createAttribute("URI");
+        uri.setNodeValue(url);
+        return new ResourceResolverContext(uri, url, false, properties);
+    }
+
+    static class CachingServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 2286553524580306627L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            requestCount.incrementAndGet();
+            String path = req.getPathInfo();
+            if (path.startsWith("/max-age")) {
+                resp.setHeader("Cache-Control", "max-age=60");
+            } else if (path.startsWith("/no-cache")) {
+                resp.setHeader("Cache-Control", "no-cache");
+                resp.setHeader("ETag", ETAG);
+                if (ETAG.equals(req.getHeader("If-None-Match"))) {
+                    notModifiedCount.incrementAndGet();
+                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+            } else if (path.startsWith("/no-store")) {
+                resp.setHeader("Cache-Control", "no-store");
+                resp.setHeader("ETag", ETAG);
+            } else if (path.startsWith("/slow")) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            resp.setContentType("text/xml");
+            resp.getOutputStream().write(CONTENT.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -157,6 +157,42 @@ public class InputProcessorChainTest {
         assertEquals(inputProcessorChain.getProcessors().get(5), inputProcessor2);
     }
 
+    @Test
+    public void testRemoveAndAddProcessorPhase() {
+        InputProcessorChainImpl inputProcessorChain = new InputProcessorChainImpl(new InboundSecurityContextImpl());
+
+        AbstractInputProcessor inputProcessor1 = new AbstractInputProcessor() {
+        };
+        inputProcessor1.setPhase(XMLSecurityConstants.Phase.PREPROCESSING);
+        inputProcessorChain.addProcessor(inputProcessor1);
+
+        AbstractInputProcessor inputProcessor2 = new AbstractInputProcessor() {
+        };
+        inputProcessorChain.addProcessor(inputProcessor2);
+
+        AbstractInputProcessor inputProcessor3 = new AbstractInputProcessor() {
+        };
+        inputProcessor3.setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
+        inputProcessorChain.addProcessor(inputProcessor3);
+
+        inputProcessorChain.removeProcessor(inputProcessor2);
+        assertEquals(2, inputProcessorChain.getProcessors().size());
+
+        AbstractInputProcessor inputProcessor4 = new AbstractInputProcessor() {
+        };
+        inputProcessorChain.addProcessor(inputProcessor4);
+
+        AbstractInputProcessor inputProcessor5 = new AbstractInputProcessor() {
+        };
+        inputProcessor5.setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
+        inputProcessorChain.addProcessor(inputProcessor5);
+
+        assertEquals(inputProcessorChain.getProcessors().get(0), inputProcessor5);
+        assertEquals(inputProcessorChain.getProcessors().get(1), inputProcessor3);
+        assertEquals(inputProcessorChain.getProcessors().get(2), inputProcessor4);
+        assertEquals(inputProcessorChain.getProcessors().get(3), inputProcessor1);
+    }
+
     @Test
     public void testAddProcessorBefore1() {
         InputProcessorChainImpl inputProcessorChain = new InputProcessorChainImpl(new InboundSecurityContextImpl());
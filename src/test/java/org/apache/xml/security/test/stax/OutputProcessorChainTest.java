@@ -165,6 +165,42 @@ public class OutputProcessorChainTest {
         assertEquals(outputProcessorChain.getProcessors().get(5), outputProcessor4);
     }
 
+    @Test
+    public void testRemoveAndAddProcessorPhase() {
+        OutputProcessorChainImpl outputProcessorChain = new OutputProcessorChainImpl(new OutboundSecurityContextImpl());
+
+        AbstractOutputProcessor outputProcessor1 = new AbstractOutputProcessor() {
+        };
+        outputProcessor1.setPhase(XMLSecurityConstants.Phase.PREPROCESSING);
+        outputProcessorChain.addProcessor(outputProcessor1);
+
+        AbstractOutputProcessor outputProcessor2 = new AbstractOutputProcessor() {
+        };
+        outputProcessorChain.addProcessor(outputProcessor2);
+
+        AbstractOutputProcessor outputProcessor3 = new AbstractOutputProcessor() {
+        };
+        outputProcessor3.setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
+        outputProcessorChain.addProcessor(outputProcessor3);
+
+        outputProcessorChain.removeProcessor(outputProcessor2);
+        assertEquals(2, outputProcessorChain.getProcessors().size());
+
+        AbstractOutputProcessor outputProcessor4 = new AbstractOutputProcessor() {
+        };
+        outputProcessorChain.addProcessor(outputProcessor4);
+
+        AbstractOutputProcessor outputProcessor5 = new AbstractOutputProcessor() {
+        };
+        outputProcessor5.setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
+        outputProcessorChain.addProcessor(outputProcessor5);
+
+        assertEquals(outputProcessorChain.getProcessors().get(0), outputProcessor1);
+        assertEquals(outputProcessorChain.getProcessors().get(1), outputProcessor4);
+        assertEquals(outputProcessorChain.getProcessors().get(2), outputProcessor3);
+        assertEquals(outputProcessorChain.getProcessors().get(3), outputProcessor5);
+    }
+
     @Test
     public void testAddProcessorBefore1() {
         OutputProcessorChainImpl outputProcessorChain = new OutputProcessorChainImpl(new OutboundSecurityContextImpl());
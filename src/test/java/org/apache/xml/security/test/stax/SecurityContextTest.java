@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.xml.security.stax.impl.OutboundSecurityContextImpl;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SecurityContextTest {
+
+    @Test
+    public void testNullKeys() throws Exception {
+        OutboundSecurityContextImpl securityContext = new OutboundSecurityContextImpl();
+        securityContext.put(null, "value");
+        assertEquals("value", securityContext.get(null));
+        assertEquals("value", securityContext.remove(null));
+        assertNull(securityContext.get(null));
+
+        securityContext.putAsList(null, "a");
+        securityContext.putList(null, Collections.singletonList("b"));
+        assertEquals(Arrays.asList("a", "b"), securityContext.getAsList(null));
+        securityContext.remove(null);
+
+        securityContext.putAsMap(null, "key", "value");
+        assertEquals(Collections.singletonMap("key", "value"), securityContext.getAsMap(null));
+    }
+}
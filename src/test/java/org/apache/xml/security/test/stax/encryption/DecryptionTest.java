@@ -50,6 +50,7 @@ import javax.xml.xpath.XPathFactory;
 import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.EncryptedKey;
 import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.UnwrappedKeyCache;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.keys.KeyInfo;
 import org.apache.xml.security.keys.content.X509Data;
@@ -475,6 +476,66 @@ public class DecryptionTest {
                   "http://www.w3.org/2001/04/xmlenc#rsa-1_5");
     }
 
+    @Test
+    public void testAES256ElementRSAKWCipherUsingKEKInboundCachedKey() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        Document document = XMLUtils.read(sourceDocument, false);
+
+        // Set up the Key
+        KeyPairGenerator rsaKeygen = KeyPairGenerator.getInstance("RSA");
+        KeyPair kp = rsaKeygen.generateKeyPair();
+        PrivateKey priv = kp.getPrivate();
+        PublicKey pub = kp.getPublic();
+
+        // Generate a traffic key
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(256);
+        SecretKey secretKey = keygen.generateKey();
+
+        // Encrypt using DOM
+        List<String> localNames = new ArrayList<>();
+        localNames.add("PaymentInfo");
+        encryptUsingDOM(
+            "http://www.w3.org/2001/04/xmlenc#aes256-cbc", secretKey,
+            "http://www.w3.org/2009/xmlenc11#rsa-oaep", pub, document, localNames, true
+        );
+
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+
+        // Decrypt the same message twice, the EncryptedKey is only unwrapped once
+        UnwrappedKeyCache unwrappedKeyCache = new UnwrappedKeyCache(10, 60000L);
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setDecryptionKey(priv);
+        properties.setUnwrappedKeyCache(unwrappedKeyCache);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+
+        for (int i = 0; i < 2; i++) {
+            XMLStreamReader xmlStreamReader = null;
+            try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+               xmlStreamReader = xmlInputFactory.createXMLStreamReader(is);
+            }
+            TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+            XMLStreamReader securityStreamReader =
+                    inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+            Document decrypted = StAX2DOM.readDoc(securityStreamReader);
+
+            // Check the CreditCard decrypted ok
+            NodeList nodeList = decrypted.getElementsByTagNameNS("urn:example:po", "CreditCard");
+            assertEquals(1, nodeList.getLength());
+            checkEncryptionToken(securityEventListener, null, secretKey,
+                    SecurityTokenConstants.KeyIdentifier_EncryptedKey,
+                    "http://www.w3.org/2001/04/xmlenc#aes256-cbc");
+        }
+        assertEquals(1, unwrappedKeyCache.getMissCount());
+        assertEquals(1, unwrappedKeyCache.getHitCount());
+    }
+
     @Test
     public void testAES256ElementRSAKWCipherUsingKEKInboundIncludeEKKeyInfo() throws Exception {
         // Read in plaintext document
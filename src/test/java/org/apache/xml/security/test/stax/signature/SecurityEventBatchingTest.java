@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax.signature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.test.stax.utils.StAX2DOM;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the batched delivery of SecurityEvents during Signature verification.
+ */
+public class SecurityEventBatchingTest extends AbstractSignatureVerificationTest {
+
+    private X509Certificate cert;
+
+    @Test
+    public void testEventsAreDeliveredAtEndOfDocument() throws Exception {
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setSecurityEventBatching(true);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader =
+            inboundXMLSec.processInMessage(createSignedDocument(), null, securityEventListener);
+
+        int eventType = securityStreamReader.getEventType();
+        while (eventType != XMLStreamConstants.END_DOCUMENT) {
+            assertTrue(securityEventListener.getSecurityEvents().isEmpty());
+            eventType = securityStreamReader.next();
+        }
+        securityStreamReader.close();
+
+        checkSecurityEvents(securityEventListener);
+        checkSignedElementSecurityEvents(securityEventListener);
+        checkSignatureToken(securityEventListener, cert, null,
+                            SecurityTokenConstants.KeyIdentifier_X509KeyIdentifier);
+        assertEquals(7, securityEventListener.getSecurityEvents().size());
+    }
+
+    @Test
+    public void testEventsAreDeliveredOnExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            XMLSecurityProperties properties = new XMLSecurityProperties();
+            properties.setSecurityEventExecutor(executor);
+            InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+            List<Thread> threads = new ArrayList<>();
+            TestSecurityEventListener securityEventListener = new TestSecurityEventListener() {
+                @Override
+                public void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+                    threads.add(Thread.currentThread());
+                    super.registerSecurityEvent(securityEvent);
+                }
+            };
+            XMLStreamReader securityStreamReader =
+                inboundXMLSec.processInMessage(createSignedDocument(), null, securityEventListener);
+            StAX2DOM.readDoc(securityStreamReader);
+
+            checkSecurityEvents(securityEventListener);
+            checkSignedElementSecurityEvents(securityEventListener);
+            assertEquals(7, securityEventListener.getSecurityEvents().size());
+            assertEquals(7, threads.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedEventIsReportedAtEndOfDocument() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            XMLSecurityProperties properties = new XMLSecurityProperties();
+            properties.setSecurityEventExecutor(executor);
+            InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+            TestSecurityEventListener securityEventListener = new TestSecurityEventListener() {
+                @Override
+                public void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+                    if (securityEvent.getSecurityEventType() == SecurityEventConstants.SignedElement) {
+                        throw new XMLSecurityException("empty", new Object[] {"SignedElement not allowed"});
+                    }
+                    super.registerSecurityEvent(securityEvent);
+                }
+            };
+            XMLStreamReader securityStreamReader =
+                inboundXMLSec.processInMessage(createSignedDocument(), null, securityEventListener);
+
+            XMLStreamException exception =
+                assertThrows(XMLStreamException.class, () -> StAX2DOM.readDoc(securityStreamReader));
+            assertTrue(exception.getCause() instanceof XMLSecurityException);
+            assertEquals("SignedElement not allowed", exception.getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private XMLStreamReader createSignedDocument() throws Exception {
+        Document document = XMLUtils.read(
+            this.getClass().getClassLoader().getResourceAsStream(
+                "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml"), false);
+
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        cert = (X509Certificate)keyStore.getCertificate("transmitter");
+
+        List<String> localNames = new ArrayList<>();
+        localNames.add("PaymentInfo");
+        XMLSignature sig = signUsingDOM(
+            "http://www.w3.org/2000/09/xmldsig#rsa-sha1", document, localNames, key
+        );
+        sig.addKeyInfo(cert);
+
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+        return xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+    }
+}
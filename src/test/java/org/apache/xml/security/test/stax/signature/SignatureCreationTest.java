@@ -29,6 +29,10 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -714,6 +718,68 @@ public class SignatureCreationTest extends AbstractSignatureCreationTest {
         }
     }
 
+    @Test
+    public void testReuseOutboundXMLSecConcurrently() throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+
+        // Set the key up
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        properties.setSignatureKey(key);
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+        properties.setSignatureCerts(new X509Certificate[]{cert});
+
+        SecurePart securePart =
+               new SecurePart(new QName("urn:example:po", "PaymentInfo"), SecurePart.Modifier.Content);
+        properties.addSignaturePart(securePart);
+
+        final OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                        XMLStreamWriter xmlStreamWriter =
+                            outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+
+                        InputStream sourceDocument =
+                                this.getClass().getClassLoader().getResourceAsStream(
+                                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+                        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+
+                        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+                        xmlStreamWriter.close();
+                        return baos.toByteArray();
+                    }
+                }));
+            }
+
+            for (Future<byte[]> result : results) {
+                Document document = null;
+                try (InputStream is = new ByteArrayInputStream(result.get())) {
+                    document = XMLUtils.read(is, false);
+                }
+
+                // Verify using DOM
+                verifyUsingDOM(document, cert, properties.getSignatureSecureParts());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     @Test
     public void testHMACSignatureCreation() throws Exception {
         // Set up the Configuration
@@ -24,23 +24,36 @@ import java.io.File;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.stax.config.Init;
 import org.apache.xml.security.stax.ext.InboundXMLSec;
 import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.impl.resourceResolvers.ResolverHttp;
+import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.test.stax.utils.HttpRequestRedirectorProxy;
 import org.apache.xml.security.test.stax.utils.StAX2DOM;
 import org.apache.xml.security.utils.XMLUtils;
@@ -51,6 +64,10 @@ import org.junit.jupiter.api.Test;
 
 import org.w3c.dom.Document;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
 /**
  * These are separated out from SignatureVerificationReferenceURIResolverTest as we have to change the default configuration to set
  *  * "AllowNotSameDocumentReferences" to "true".
@@ -199,6 +216,139 @@ public class SignatureVerificationReferenceURIResolverRemoteReferenceTest extend
         StAX2DOM.readDoc(securityStreamReader);
     }
 
+    @Test
+    public void testSignatureVerificationWithConcurrentExternalReferences() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        Document document = XMLUtils.read(sourceDocument, false);
+
+        // Set up the Key
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+                this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+                "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        X509Certificate cert = (X509Certificate) keyStore.getCertificate("transmitter");
+
+        // Sign using DOM, with an external XML, an external binary and a modifiable binary Reference
+        List<String> localNames = new ArrayList<>();
+        localNames.add("PaymentInfo");
+        File xmlFile = new File(BASEDIR +
+                "/src/test/resources/ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml").getCanonicalFile();
+        File binaryFile = new File(BASEDIR +
+                "/target/test-classes/org/apache/xml/security/test/stax/signature/SignatureVerificationReferenceURIResolverTest.class").getCanonicalFile();
+        File modifiedFile = File.createTempFile("external-reference", ".bin");
+        try {
+            Files.write(modifiedFile.toPath(), "original".getBytes(StandardCharsets.UTF_8));
+
+            List<ReferenceInfo> referenceInfos = new ArrayList<>();
+            referenceInfos.add(new ReferenceInfo(
+                    xmlFile.toURI().toString(),
+                    new String[]{"http://www.w3.org/2001/10/xml-exc-c14n#"},
+                    "http://www.w3.org/2000/09/xmldsig#sha1",
+                    false
+            ));
+            referenceInfos.add(new ReferenceInfo(
+                    binaryFile.toURI().toString(), null, "http://www.w3.org/2000/09/xmldsig#sha1", true));
+            referenceInfos.add(new ReferenceInfo(
+                    modifiedFile.toURI().toString(), null, "http://www.w3.org/2000/09/xmldsig#sha1", true));
+
+            XMLSignature sig = signUsingDOM(
+                    "http://www.w3.org/2000/09/xmldsig#rsa-sha1",
+                    document,
+                    localNames,
+                    key,
+                    referenceInfos
+            );
+
+            // Add KeyInfo
+            sig.addKeyInfo(cert);
+
+            // Convert Document to a Stream Reader
+            javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            transformer.transform(new DOMSource(document), new StreamResult(baos));
+
+            // Verify signature sequentially and concurrently, the SecurityEvents must be the same,
+            // only the digest algorithms of the external references are registered earlier
+            List<SecurityEvent> sequentialEvents = verify(baos.toByteArray(), cert, null);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                List<SecurityEvent> concurrentEvents = verify(baos.toByteArray(), cert, executor);
+                assertEquals(getEventTypes(sequentialEvents), getEventTypes(concurrentEvents));
+
+                // A modified external resource is still detected
+                Files.write(modifiedFile.toPath(), "modified".getBytes(StandardCharsets.UTF_8));
+                try {
+                    verify(baos.toByteArray(), cert, executor);
+                    fail("Failure expected on a modified external reference");
+                } catch (XMLStreamException ex) {
+                    assertTrue(ex.getCause() instanceof XMLSecurityException);
+                }
+
+                // A policy rejecting the digest algorithm sees it before the external resources are fetched
+                AtomicInteger started = new AtomicInteger();
+                Executor countingExecutor = command -> {
+                    started.incrementAndGet();
+                    executor.execute(command);
+                };
+                try {
+                    verify(baos.toByteArray(), cert, countingExecutor, securityEvent -> {
+                        if (securityEvent instanceof AlgorithmSuiteSecurityEvent
+                            && XMLSecurityConstants.SigDig.equals(
+                                ((AlgorithmSuiteSecurityEvent) securityEvent).getAlgorithmUsage())) {
+                            throw new XMLSecurityException("empty", new Object[] {"Digest algorithm rejected"});
+                        }
+                    });
+                    fail("Failure expected on a rejected digest algorithm");
+                } catch (XMLStreamException ex) {
+                    assertEquals("Digest algorithm rejected", ex.getCause().getMessage());
+                }
+                assertEquals(0, started.get());
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            Files.delete(modifiedFile.toPath());
+        }
+    }
+
+    private static List<String> getEventTypes(List<SecurityEvent> securityEvents) {
+        List<String> eventTypes = new ArrayList<>(securityEvents.size());
+        for (SecurityEvent securityEvent : securityEvents) {
+            eventTypes.add(securityEvent.getSecurityEventType().toString());
+        }
+        Collections.sort(eventTypes);
+        return eventTypes;
+    }
+
+    private List<SecurityEvent> verify(byte[] signedDocument, X509Certificate cert, Executor executor)
+        throws Exception {
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        verify(signedDocument, cert, executor, securityEventListener);
+        return securityEventListener.getSecurityEvents();
+    }
+
+    private void verify(byte[] signedDocument, X509Certificate cert, Executor executor,
+                        SecurityEventListener securityEventListener) throws Exception {
+        XMLStreamReader xmlStreamReader = null;
+        try (InputStream is = new ByteArrayInputStream(signedDocument)) {
+           xmlStreamReader = xmlInputFactory.createXMLStreamReader(is);
+        }
+
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setSignatureVerificationKey(cert.getPublicKey());
+        properties.setExternalReferenceExecutor(executor);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        XMLStreamReader securityStreamReader =
+            inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+        StAX2DOM.readDoc(securityStreamReader);
+    }
+
     @Test
     public void testSignatureVerificationWithExternalHttpReference() throws Exception {
 
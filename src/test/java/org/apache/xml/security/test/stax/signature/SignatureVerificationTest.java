@@ -33,6 +33,7 @@ import java.util.Map;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerFactory;
@@ -64,6 +65,7 @@ import org.apache.xml.security.stax.securityEvent.X509TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.test.stax.utils.StAX2DOM;
 import org.apache.xml.security.transforms.Transform;
+import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.transforms.implementations.TransformC14N;
 import org.apache.xml.security.utils.XMLUtils;
 
@@ -244,6 +246,64 @@ public class SignatureVerificationTest extends AbstractSignatureVerificationTest
                 signatureSecurityEvents.size() + signedElementSecurityEvents1.size() + signedElementSecurityEvents2.size());
     }
 
+    @Test
+    public void testIdAttributeNS() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        Document document = XMLUtils.read(sourceDocument, false);
+
+        // Set up the Key
+        byte[] hmacKey = "secret".getBytes(StandardCharsets.US_ASCII);
+        SecretKey key = new SecretKeySpec(hmacKey, "http://www.w3.org/2000/09/xmldsig#hmac-sha1");
+
+        // Sign using DOM, with two References to the same element via the "ID" attribute
+        // and one via the default "Id" attribute
+        Element paymentInfo = (Element)document.getElementsByTagNameNS("urn:example:po", "PaymentInfo").item(0);
+        paymentInfo.setAttributeNS(null, "ID", "payment");
+        paymentInfo.setIdAttributeNS(null, "ID", true);
+        Element shippingAddress =
+            (Element)document.getElementsByTagNameNS("urn:example:po", "ShippingAddress").item(0);
+        shippingAddress.setAttributeNS(null, "Id", "shipping");
+        shippingAddress.setIdAttributeNS(null, "Id", true);
+
+        XMLSignature sig = new XMLSignature(document, "", "http://www.w3.org/2000/09/xmldsig#hmac-sha1",
+                                            "http://www.w3.org/2001/10/xml-exc-c14n#");
+        document.getDocumentElement().appendChild(sig.getElement());
+        for (String uri : new String[] {"#payment", "#xpointer(id('payment'))", "#shipping"}) {
+            Transforms transforms = new Transforms(document);
+            transforms.addTransform("http://www.w3.org/2001/10/xml-exc-c14n#");
+            sig.addDocument(uri, transforms, "http://www.w3.org/2000/09/xmldsig#sha1");
+        }
+        sig.sign(key);
+
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+
+        XMLStreamReader xmlStreamReader = null;
+        try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+           xmlStreamReader = xmlInputFactory.createXMLStreamReader(is);
+        }
+
+        // Verify signature
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setSignatureVerificationKey(key);
+        properties.setIdAttributeNS(new QName(null, "ID"));
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader =
+            inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+        StAX2DOM.readDoc(securityStreamReader);
+
+        List<SignedElementSecurityEvent> signedElementSecurityEventList =
+            securityEventListener.getSecurityEvents(SecurityEventConstants.SignedElement);
+        assertEquals(3, signedElementSecurityEventList.size());
+    }
+
     @Test
     public void testMultipleSignatures() throws Exception {
         // Read in plaintext document